@@ -0,0 +1,167 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.NoSuchCacheElementException;
+import cpen221.mp3.wikimediator.Page;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of Cache.get and Cache.put under uniform and Zipfian request
+ * distributions, for several capacities, from one thread, several threads,
+ * and mixed groups of readers and writers.
+ *
+ * Run with ./gradlew jmh; the gc profiler configured in build.gradle adds
+ * the bytes allocated per operation (gc.alloc.rate.norm) to each result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CacheBenchmark {
+
+    /* the number of requests generated up front, a power of two */
+    private static final int REQUESTS = 1 << 20;
+
+    @Param({"1000", "100000"})
+    public int capacity;
+
+    @Param({"uniform", "zipf"})
+    public String distribution;
+
+    private Cache<Page> cache;
+    private Page[] pages;
+    private int[] requests;
+
+    /**
+     * Create the pages (four times as many as fit in the cache), the
+     * sequence of requests, and a cache filled by replaying the requests.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        int titles = 4 * capacity;
+        pages = new Page[titles];
+        for (int i = 0; i < titles; i++) {
+            pages[i] = new Page("text of page " + i, "page" + i);
+        }
+
+        Random random = new Random(221);
+        requests = new int[REQUESTS];
+        double[] cdf = "zipf".equals(distribution) ? zipfCdf(titles, 0.99) : null;
+        for (int i = 0; i < REQUESTS; i++) {
+            if (cdf == null) {
+                requests[i] = random.nextInt(titles);
+            } else {
+                int rank = Arrays.binarySearch(cdf, random.nextDouble());
+                requests[i] = Math.min(titles - 1, rank < 0 ? -rank - 1 : rank);
+            }
+        }
+
+        cache = new Cache<>(capacity, 3600);
+        for (int request : requests) {
+            cache.put(pages[request]);
+        }
+    }
+
+    /**
+     * The position of a thread in the sequence of requests. Each thread
+     * starts at a random position so that threads do not request the same
+     * pages in lockstep.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = ThreadLocalRandom.current().nextInt(REQUESTS);
+
+        int next() {
+            return next++ & (REQUESTS - 1);
+        }
+    }
+
+    @Benchmark
+    public Page get(Cursor cursor) {
+        return readThrough(cursor.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Page get8Threads(Cursor cursor) {
+        return readThrough(cursor.next());
+    }
+
+    @Benchmark
+    public boolean put(Cursor cursor) {
+        return cache.put(pages[requests[cursor.next()]]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean put8Threads(Cursor cursor) {
+        return cache.put(pages[requests[cursor.next()]]);
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(6)
+    public Page readMostlyGet(Cursor cursor) {
+        return readThrough(cursor.next());
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(2)
+    public boolean readMostlyPut(Cursor cursor) {
+        return cache.put(pages[requests[cursor.next()]]);
+    }
+
+    /**
+     * Request a page, putting it in the cache if it misses.
+     *
+     * @param position the position of the request in requests
+     * @return the page requested
+     */
+    private Page readThrough(int position) {
+        Page page = pages[requests[position]];
+        try {
+            return cache.get(page.id());
+        } catch (NoSuchCacheElementException e) {
+            cache.put(page);
+            return page;
+        }
+    }
+
+    /**
+     * Compute the cumulative distribution of a Zipf distribution.
+     *
+     * @param n the number of items
+     * @param skew the exponent of the distribution
+     * @return cdf where cdf[i] is the probability of picking an item of rank
+     *         at most i
+     */
+    private static double[] zipfCdf(int n, double skew) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            cdf[i] = total;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+}
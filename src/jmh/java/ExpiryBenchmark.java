@@ -0,0 +1,62 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.Cache;
+import cpen221.mp3.wikimediator.Page;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of putting a stream of distinct pages when they leave the cache by
+ * timing out rather than by eviction. With a one second timeout the cache
+ * never fills, and every put also removes the pages put a second earlier
+ * through the timer wheel; with a one hour timeout the cache fills within
+ * a few seconds and every put evicts a page instead. Both allocate the same new page per
+ * operation, so the difference is the cost of expiry against eviction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ExpiryBenchmark {
+
+    /* enough for several seconds of puts, so a one second timeout expires
+       pages long before they would be evicted */
+    private static final int CAPACITY = 1 << 22;
+
+    @Param({"1", "3600"})
+    public int timeout;
+
+    private Cache<Page> cache;
+    private long next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        cache = new Cache<>(CAPACITY, timeout);
+    }
+
+    @Benchmark
+    public boolean putDistinct() {
+        return cache.put(new Page("", Long.toString(next++)));
+    }
+
+    /**
+     * Put a distinct page and touch the one put 1024 operations earlier,
+     * rescheduling it in the timer wheel.
+     */
+    @Benchmark
+    public boolean putAndTouch() {
+        cache.put(new Page("", Long.toString(next)));
+        return cache.touch(Long.toString(next++ - 1024));
+    }
+
+}
@@ -0,0 +1,200 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.ArcPolicy;
+import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.EvictionPolicy;
+import cpen221.mp3.cache.FifoPolicy;
+import cpen221.mp3.cache.LfuPolicy;
+import cpen221.mp3.cache.LruPolicy;
+import cpen221.mp3.cache.NoSuchCacheElementException;
+import cpen221.mp3.cache.WTinyLfuPolicy;
+import cpen221.mp3.wikimediator.Page;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit counts and throughput of a Cache of 500 pages under each eviction
+ * policy, replaying a trace of requests over and over and putting each
+ * page that misses. The hit rate of a run is hits / (hits + misses).
+ *
+ * The built-in traces are "zipf" (Zipf-distributed requests over 5000
+ * titles), "zipf-scans" (the same, interrupted every 5000 requests by a
+ * sweep over 1000 titles requested only once) and "loop" (600 titles
+ * requested in order). Any other value of trace is the path of a recorded
+ * trace: a text file with one requested title per line, such as the
+ * titles of a server's getPage requests. Replay one with
+ * ./gradlew jmh after adding benchmarkParameters = [trace: ['path']] to
+ * the jmh block of build.gradle, or with JMH's -p trace=path option.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PolicyBenchmark {
+
+    @Param({"LRU", "FIFO", "LFU", "ARC", "W-TinyLFU"})
+    public String policy;
+
+    @Param({"zipf", "zipf-scans", "loop"})
+    public String trace;
+
+    private Cache<Page> cache;
+    private String[] requests;
+    private int next;
+
+    /**
+     * The requests that hit and missed in an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counts {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    /**
+     * Create the trace and an empty cache with the policy.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        requests = requests(trace).toArray(new String[0]);
+        cache = new Cache<>(500, 3600, policy(policy));
+        next = 0;
+    }
+
+    @Benchmark
+    public Page replay(Counts counts) {
+        String id = requests[next];
+        next = next + 1 == requests.length ? 0 : next + 1;
+        try {
+            Page page = cache.get(id);
+            counts.hits++;
+            return page;
+        } catch (NoSuchCacheElementException e) {
+            counts.misses++;
+            Page page = new Page("", id);
+            cache.put(page);
+            return page;
+        }
+    }
+
+    private static EvictionPolicy<String> policy(String name) {
+        switch (name) {
+            case "LRU":
+                return new LruPolicy<>();
+            case "FIFO":
+                return new FifoPolicy<>();
+            case "LFU":
+                return new LfuPolicy<>();
+            case "ARC":
+                return new ArcPolicy<>();
+            case "W-TinyLFU":
+                return new WTinyLfuPolicy<>();
+            default:
+                throw new IllegalArgumentException("unknown policy " + name);
+        }
+    }
+
+    /**
+     * Generate a built-in trace of 100000 requests, or read a recorded one.
+     *
+     * @param name the name of a built-in trace, or the path of a file with
+     *             one requested title per line
+     * @return the titles requested, in order
+     */
+    private static List<String> requests(String name) {
+        Random random = new Random(221);
+        List<String> trace = new ArrayList<>();
+        switch (name) {
+            case "zipf":
+                double[] cdf = zipfCdf(5000, 0.9);
+                while (trace.size() < 100000) {
+                    trace.add("page" + rank(cdf, random));
+                }
+                return trace;
+            case "zipf-scans":
+                double[] scanCdf = zipfCdf(5000, 0.9);
+                int sweep = 0;
+                while (trace.size() < 100000) {
+                    if (trace.size() % 5000 == 4999) {
+                        for (int i = 0; i < 1000; i++) {
+                            trace.add("sweep" + sweep + "-" + i);
+                        }
+                        sweep++;
+                    } else {
+                        trace.add("page" + rank(scanCdf, random));
+                    }
+                }
+                return trace;
+            case "loop":
+                for (int i = 0; i < 100000; i++) {
+                    trace.add("page" + i % 600);
+                }
+                return trace;
+            default:
+                try {
+                    for (String line : Files.readAllLines(Paths.get(name))) {
+                        if (!line.isEmpty()) {
+                            trace.add(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (trace.isEmpty()) {
+                    throw new IllegalArgumentException("empty trace " + name);
+                }
+                return trace;
+        }
+    }
+
+    private static int rank(double[] cdf, Random random) {
+        int rank = Arrays.binarySearch(cdf, random.nextDouble());
+        return rank < 0 ? -rank - 1 : rank;
+    }
+
+    /**
+     * Compute the cumulative distribution of a Zipf distribution.
+     *
+     * @param n the number of items
+     * @param skew the exponent of the distribution
+     * @return cdf where cdf[i] is the probability of picking an item of rank
+     *         at most i
+     */
+    private static double[] zipfCdf(int n, double skew) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            cdf[i] = total;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+}
@@ -0,0 +1,112 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.NoSuchCacheElementException;
+import cpen221.mp3.cache.StripedCache;
+import cpen221.mp3.wikimediator.Page;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of hits in a StripedCache against a Cache, whose every
+ * operation holds one monitor, from 1, 2, 4 and 8 threads reading pages
+ * that are all in the cache. The StripedCache's throughput should grow
+ * with the number of threads, up to the number of cores, while the
+ * Cache's stays flat or drops.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StripedCacheBenchmark {
+
+    /* the number of pages read, a power of two */
+    private static final int PAGES = 4096;
+
+    @Param({"Cache", "StripedCache"})
+    public String implementation;
+
+    private Read read;
+    private String[] ids;
+
+    /**
+     * A read from the cache under test.
+     */
+    private interface Read {
+        Page get(String id) throws NoSuchCacheElementException;
+    }
+
+    /**
+     * Fill the cache with every page. Segments evict independently, so the
+     * cache holds twice as many pages to leave headroom for uneven hashing.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        ids = new String[PAGES];
+        for (int i = 0; i < PAGES; i++) {
+            ids[i] = Integer.toString(i);
+        }
+
+        if ("StripedCache".equals(implementation)) {
+            StripedCache<Page> cache = new StripedCache<>(2 * PAGES, 3600);
+            for (String id : ids) {
+                cache.put(new Page("test", id));
+            }
+            read = cache::get;
+        } else {
+            Cache<Page> cache = new Cache<>(2 * PAGES, 3600);
+            for (String id : ids) {
+                cache.put(new Page("test", id));
+            }
+            read = cache::get;
+        }
+    }
+
+    /**
+     * The position of a thread among the pages. Each thread starts at a
+     * random position so that threads do not read the same pages in
+     * lockstep.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = ThreadLocalRandom.current().nextInt(PAGES);
+
+        int next() {
+            return next++ & (PAGES - 1);
+        }
+    }
+
+    @Benchmark
+    public Page hit(Cursor cursor) throws NoSuchCacheElementException {
+        return read.get(ids[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Page hit2Threads(Cursor cursor) throws NoSuchCacheElementException {
+        return read.get(ids[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Page hit4Threads(Cursor cursor) throws NoSuchCacheElementException {
+        return read.get(ids[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Page hit8Threads(Cursor cursor) throws NoSuchCacheElementException {
+        return read.get(ids[cursor.next()]);
+    }
+
+}
@@ -0,0 +1,188 @@
+package cpen221.mp3.cache;
+
+import java.util.HashMap;
+
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha): balances recency against
+ * frequency by splitting the cache into values requested once since they
+ * were inserted (T1) and values requested again (T2), each in LRU order.
+ *
+ * The identifiers of values recently evicted from T1 and T2 to make room
+ * are remembered in ghost lists (B1 and B2); values removed for any other
+ * reason, such as timing out, are forgotten, since inserting them again
+ * says nothing about the size of T1. Inserting a value found in B1 means T1 was too
+ * small, so its target size p grows; one found in B2 means T2 was too small,
+ * so p shrinks. Values found in a ghost list go straight to T2. The victim
+ * is taken from T1 while it is larger than p, and from T2 otherwise.
+ *
+ * The policy does not know the capacity of the cache, so it uses the largest
+ * number of values it has seen recorded at once, and keeps at most that many
+ * ghosts.
+ *
+ * @param <K> the type of the identifiers of the cached values
+ */
+public class ArcPolicy<K> implements EvictionPolicy<K> {
+
+    private static final byte T1 = 0;
+    private static final byte T2 = 1;
+    private static final byte B1 = 2;
+    private static final byte B2 = 3;
+
+    private final HashMap<K, Node<K>> nodes = new HashMap<>();
+    private final Node<K>[] lists;
+    private final int[] sizes = new int[4];
+    private int capacity;
+    private double target;
+
+    /**
+     * ArcPolicy Rep Invariants
+     *
+     * nodes does not contain null values and node.key equals its key in nodes
+     * lists[i] is the sentinel of a circular doubly-linked list holding the
+     *     nodes whose list is i, and sizes[i] is its length
+     * sizes[T1] + sizes[T2] <= capacity
+     * sizes[B1] + sizes[B2] <= capacity
+     * 0 <= target <= capacity
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * ArcPolicy Abstraction Functions
+     *
+     * nodes -> the identifiers of the values in the cache (in T1 or T2) and
+     *          of the values recently evicted (in B1 or B2)
+     * lists[T1] -> values requested once since they were inserted, least
+     *              recently requested first
+     * lists[T2] -> values requested at least twice, least recently
+     *              requested first
+     * lists[B1], lists[B2] -> identifiers of values evicted from T1 and T2,
+     *                         least recently evicted first
+     * capacity -> the largest number of values the cache has held
+     * target -> the number of values T1 should hold
+     */
+
+    /**
+     * Create an ArcPolicy for an empty cache.
+     */
+    public ArcPolicy() {
+        lists = newLists(4);
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = new Node<>(null, (byte) i);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K> Node<K>[] newLists(int length) {
+        return (Node<K>[]) new Node[length];
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            node = new Node<>(key, T1);
+            nodes.put(key, node);
+        } else {
+            double b1 = sizes[B1];
+            double b2 = sizes[B2];
+            if (node.list == B1) {
+                target = Math.min(capacity, target + Math.max(b2 / b1, 1));
+            } else {
+                target = Math.max(0, target - Math.max(b1 / b2, 1));
+            }
+            unlink(node);
+            node.list = T2;
+        }
+
+        link(node);
+        capacity = Math.max(capacity, sizes[T1] + sizes[T2]);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        Node<K> node = nodes.get(key);
+        if (node == null || node.list > T2) {
+            return;
+        }
+
+        unlink(node);
+        node.list = T2;
+        link(node);
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        Node<K> node = nodes.get(key);
+        if (node == null || node.list > T2) {
+            return;
+        }
+
+        unlink(node);
+        nodes.remove(key);
+    }
+
+    @Override
+    public void recordEviction(K key) {
+        Node<K> node = nodes.get(key);
+        if (node == null || node.list > T2) {
+            return;
+        }
+
+        unlink(node);
+        node.list = node.list == T1 ? B1 : B2;
+        link(node);
+
+        while (sizes[B1] + sizes[B2] > capacity) {
+            byte oldest = sizes[B1] > 0 && (sizes[B2] == 0 || sizes[T1] + sizes[B1] >= capacity) ? B1 : B2;
+            Node<K> ghost = (Node<K>) lists[oldest].next;
+            unlink(ghost);
+            nodes.remove(ghost.key);
+        }
+    }
+
+    @Override
+    public K victim() {
+        if (sizes[T1] > 0 && (sizes[T1] > target || sizes[T2] == 0)) {
+            return lists[T1].next.key;
+        }
+        return lists[T2].next.key;
+    }
+
+    /**
+     * Add a node to the most recent end of the list it belongs to.
+     *
+     * @param node a node that is not in any list
+     */
+    private void link(Node<K> node) {
+        node.linkBefore(lists[node.list]);
+        sizes[node.list]++;
+    }
+
+    /**
+     * Remove a node from the list it is in.
+     *
+     * @param node a node that is in its list
+     */
+    private void unlink(Node<K> node) {
+        node.unlink();
+        sizes[node.list]--;
+    }
+
+    /**
+     * An identifier together with the list it is in.
+     */
+    private static final class Node<K> extends LruPolicy.Node<K> {
+        private byte list;
+
+        /**
+         * Create a Node that is not linked to any other node.
+         *
+         * @param key the identifier it holds, or null for a sentinel
+         * @param list the list it belongs to
+         */
+        private Node(K key, byte list) {
+            super(key);
+            this.list = list;
+        }
+    }
+
+}
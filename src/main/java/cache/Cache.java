@@ -1,50 +1,85 @@
 package cpen221.mp3.cache;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-public class Cache <T extends Cacheable> {
+public class Cache <T extends Cacheable> extends KeyedCache<String, T> {
 
-    /* the default cache size is 32 objects */
-    private static final int DSIZE = 32;
+    /* the first bytes of a snapshot file, "WMCS", and its format version */
+    private static final int SNAPSHOT_MAGIC = 0x574D4353;
+    private static final int SNAPSHOT_VERSION = 1;
 
-    /* the default timeout value is 3600s */
-    private static final int DTIMEOUT = 3600;
+    /* the number of evicted values that may wait for the default writer
+       before new ones are dropped */
+    private static final int SPILL_QUEUE_SIZE = 4096;
 
-    private final int capacity;
-    private final int timeout;
+    /* writes evicted values to second tiers that were added without an
+       executor */
+    private static final Executor SPILL_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(SPILL_QUEUE_SIZE), r -> {
+                Thread thread = new Thread(r, "cache-disk-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
 
-    private ConcurrentHashMap<CacheObject<T>, Boolean> data;
-    private final long t0 = System.nanoTime();
+    private volatile SecondTier<T> secondTier;
+    private final ConcurrentHashMap<String, Spill<T>> spilling = new ConcurrentHashMap<>();
 
     /**
      * Cache Rep Invariants
      *
-     * capacity >= 0
-     * timeout >= 0
-     * data is not null and does not contain null elements
-     * t0 >= 0
-     *
-     * CacheObject Rep Invariants
-     *
-     * t is not null
-     * lastAccessed >= 0
-     * lastUpdated >= 0
+     * every value is stored under its id()
+     * spilling is not null
      *
      * ---------------------------------------------------------------------------
      *
      * Cache Abstraction Functions
      *
-     * data -> a set of the elements stored in the cache
-     * capacity -> the maximum number of total elements allowed in the cache at
-     *             any given instant
-     * timeout  -> the maximum amount of time an element is allowed to stay in
-     *             the cache without being accessed before being removed
+     * a KeyedCache from the identifier of every element stored in the cache
+     * to the element
+     * secondTier -> where elements evicted to make room are written and
+     *               the executor that writes them, and where loads look
+     *               before calling the loader, or null if evicted elements
+     *               are dropped
+     * spilling -> the elements evicted to make room that are waiting to be
+     *             written to the second tier, by identifier; an element
+     *             is in at most one of the cache, spilling and the second
+     *             tier, except for stale copies, in spilling or the second
+     *             tier, of an element stored again since it was evicted
+     *
+     * ---------------------------------------------------------------------------
      *
-     * CacheObject Abstraction Functions
+     * Thread Safety Arguments
      *
-     * t -> a value/element stored in the cache
-     * lastUpdated -> the time the value was most recently updated
-     * lastAccessed -> the time the value was most recently accessed
+     * Besides the guarantees of KeyedCache, secondTier is volatile and
+     * replaced as a whole, so a writer always sees a store together with
+     * its executor. spilling is a ConcurrentHashMap. Its entries are removed
+     * with remove(key, value) by the task that wrote them or failed to be
+     * queued, and by loads that put them back in the cache, so a newer
+     * spill of the same element is kept; invalidation removes them outright.
+     * A write checks that its element is still in spilling while holding
+     * the store's lock, and invalidation removes an element from spilling
+     * before removing it from the store, so an invalidated element is
+     * never written after it was removed from the store.
      */
 
     /**
@@ -57,204 +92,390 @@ public class Cache <T extends Cacheable> {
      *                 before it times out
      */
     public Cache(int capacity, int timeout) {
-        if (capacity < 0 || timeout < 0) {
-            throw new IllegalArgumentException("Negative capacity or timeout");
-        }
+        super(capacity, timeout);
+    }
+
+    /**
+     * Create a cache with a fixed capacity, a timeout value and a policy that
+     * decides which object to remove when the cache is full.
+     * Objects in the cache that have not been refreshed within the timeout period
+     * are removed from the cache.
+     *
+     * @param capacity the number of objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     * @param policy   a new eviction policy that is not used by any other cache
+     */
+    public Cache(int capacity, int timeout, EvictionPolicy<String> policy) {
+        super(capacity, timeout, policy);
+    }
 
-        this.capacity = capacity;
-        this.timeout = timeout;
-        this.data = new ConcurrentHashMap<>();
+    /**
+     * Create a cache bounded by the total weight of its objects rather than
+     * their number, for example the estimated number of bytes they occupy.
+     * Objects in the cache that have not been refreshed within the timeout
+     * period are removed from the cache.
+     *
+     * @param maximumWeight the total weight of the objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     * @param weigher  computes the weight of each object
+     */
+    public Cache(long maximumWeight, int timeout, Weigher<? super T> weigher) {
+        super(maximumWeight, timeout, weigher);
+    }
+
+    /**
+     * Create a cache bounded by the total weight of its objects, with a
+     * policy that decides which objects to remove when the cache is full.
+     * Objects in the cache that have not been refreshed within the timeout
+     * period are removed from the cache.
+     *
+     * @param maximumWeight the total weight of the objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     * @param weigher  computes the weight of each object
+     * @param policy   a new eviction policy that is not used by any other cache
+     */
+    public Cache(long maximumWeight, int timeout, Weigher<? super T> weigher,
+                 EvictionPolicy<String> policy) {
+        super(maximumWeight, timeout, weigher, policy);
     }
 
     /**
      * Create a cache with default capacity and timeout values.
      */
     public Cache() {
-        this(DSIZE, DTIMEOUT);
+        super();
     }
 
     /**
-     * Add a value to the cache.
-     * If the cache is full then remove the least recently accessed object to
-     * make room for the new object. Update the value if it is already in
-     * the cache.
+     * Add a value to the cache under its identifier.
+     * If the cache is then over capacity, remove the objects chosen by the
+     * eviction policy (by default the least recently accessed) until it is
+     * not. Update the value if it is already in the cache.
      *
      * @param t the value to store in the cache
-     * @return true if the value was successfully stored and not previously in
-     *         the cache, false otherwise
+     * @return true if the value was successfully stored, false otherwise
+     *         (including when t alone weighs more than the cache can hold,
+     *         or the eviction policy chose t itself)
      */
-    public synchronized boolean put(T t) {
-        CacheObject<T> val = new CacheObject<>(t);
-
-        expire();
-        if (this.data.containsKey(val)) {
-            return update(t);
-        } else if (this.data.size() >= this.capacity) {
-            removeLeastRecentlyRequested();
-            if (this.capacity == 0) {
-                return false;
-            } else {
-                this.data.put(val, true);
-                return true;
-            }
-        } else {
-            this.data.put(val, true);
-            return true;
-        }
+    public boolean put(T t) {
+        return put(t.id(), t);
     }
 
     /**
-     * Retrieve a value from the cache.
+     * Add several values to the cache under their identifiers, taking the
+     * cache's lock and removing timed out values once for all of them.
+     * Values are stored in the iteration order of values, as if by put(t)
+     * for each.
      *
-     * @param id the identifier of the object to be retrieved
-     * @return the value that matches the identifier from the cache
-     * @throws NoSuchCacheElementException if the cache does not contain
-     *         the value with identifier id
+     * @param values the values to store in the cache
+     * @return the number of values stored
      */
-    public synchronized T get(String id) throws NoSuchCacheElementException {
-        expire();
-        for (CacheObject<T> c : this.data.keySet()) {
-            if (c.t.id().equals(id)) {
-                c.lastAccessed = currentTime();
-                return c.t;
-            }
+    public int putAll(Collection<? extends T> values) {
+        Map<String, T> byId = new LinkedHashMap<>();
+        for (T t : values) {
+            byId.remove(t.id());
+            byId.put(t.id(), t);
         }
+        return putAll(byId);
+    }
 
-        throw new NoSuchCacheElementException();
+    /**
+     * Update the data held by and creation time of the specified object
+     * in the cache. Does not count as accessing the object. If the new data
+     * weighs more than the old and the cache is then over capacity, the
+     * objects chosen by the eviction policy are removed until it is not.
+     *
+     * @param t the object to update
+     * @return true if successful and false otherwise; if t alone weighs more
+     *         than the cache can hold, or the eviction policy chose the
+     *         updated object itself, the object is removed and the update
+     *         fails
+     */
+    public boolean update(T t) {
+        return update(t.id(), t);
     }
 
     /**
-     * Update the last refresh time for the object with the provided id.
-     * Does not count as accessing the object.
+     * Write the values evicted to make room for others to a DiskStore, and
+     * look for missing values there before loading them. Values found in the
+     * store are moved back to the cache and keep the time they had left
+     * before timing out, and values removed from the cache explicitly are
+     * removed from the store as well. Values that timed out are not
+     * written. Values are written
+     * on a single background thread shared by all caches, so evictions do
+     * not wait for the disk; values waiting to be written are still found
+     * by loads, and are dropped if too many are waiting. A value that cannot
+     * be written or read is treated as if it was not in the store.
      *
-     * @param id the identifier of the object to "touch"
-     * @return true if successful and false otherwise
+     * @param store the store for evicted values, which is not used by any
+     *              other cache, or null to drop evicted values
      */
-    public synchronized boolean touch(String id) {
-        expire();
-        for (CacheObject c : this.data.keySet()) {
-            if (c.t.id().equals(id)) {
-                c.lastUpdated = currentTime();
-                return true;
-            }
-        }
+    public void spillTo(DiskStore<T> store) {
+        spillTo(store, SPILL_EXECUTOR);
+    }
 
-        return false;
+    /**
+     * Write the values evicted to make room for others to a DiskStore on an
+     * executor, and look for missing values there before loading them, as
+     * spillTo(store) does. Values are written in the order executor runs
+     * the writes, so it should run them in the order they are submitted.
+     *
+     * @param store the store for evicted values, which is not used by any
+     *              other cache, or null to drop evicted values
+     * @param executor writes evicted values to store, and should not run
+     *                 them on the calling thread, which holds the cache's
+     *                 lock
+     * @throws IllegalArgumentException if store is not null and executor is
+     *         null
+     */
+    public void spillTo(DiskStore<T> store, Executor executor) {
+        if (store != null && executor == null) {
+            throw new IllegalArgumentException("Null executor");
+        }
+        this.secondTier = store == null ? null : new SecondTier<>(store, executor);
     }
 
     /**
-     * Update the data held by and creation time of the specified object
-     * in the cache. Does not count as accessing the object.
+     * Write the values in the cache that have not timed out to a file, so
+     * that a new cache can be filled with them by readSnapshot. For each
+     * value the file holds how long it has left before it times out, how
+     * long ago it was accessed and its encoding, ordered from the least to
+     * the most recently accessed. The file is written next to file and then
+     * moved over it, so an existing snapshot is only replaced by a complete
+     * one. The values are encoded without holding the cache's lock.
      *
-     * @param t the object to update
-     * @return true if successful and false otherwise
+     * @param file the file to write, which is replaced if it exists
+     * @param codec encodes the values
+     * @throws IOException if the file cannot be written
      */
-    public synchronized boolean update(T t) {
-        ConcurrentHashMap<CacheObject<T>, Boolean> values = new ConcurrentHashMap<>(this.data);
-        CacheObject<T> updatedItem = new CacheObject<>(t);
-
-        boolean updated = false;
-        for (CacheObject<T> c : values.keySet()) {
-            if (c.equals(updatedItem)) {
-                updatedItem.lastAccessed = c.lastAccessed;
-                this.data.remove(c);
-                this.data.put(updatedItem, true);
-                updated = true;
-                break;
+    public void writeSnapshot(Path file, Codec<? super T> codec) throws IOException {
+        List<Entry<String, T>> entries = entries();
+
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(entries.size());
+                for (Entry<String, T> e : entries) {
+                    byte[] payload = codec.encode(e.value);
+                    out.writeLong(e.remaining);
+                    out.writeLong(e.idle);
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                }
             }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
         }
+    }
+
+    /**
+     * Add the values in a file written by writeSnapshot to the cache, keeping
+     * the time they had left before timing out (but no more than this cache's
+     * timeout) and restoring them in the order they were accessed. Values
+     * that timed out since the snapshot was written are skipped, and values
+     * already in the cache are replaced. The file is memory-mapped and must
+     * be smaller than 2 GiB.
+     *
+     * @param file the file to read
+     * @param codec decodes the values, the counterpart of the codec the
+     *              snapshot was written with
+     * @return the number of values stored, including any that were then
+     *         evicted to make room for more recently accessed ones
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public int readSnapshot(Path file, Codec<? extends T> codec) throws IOException {
+        int restored = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != SNAPSHOT_MAGIC
+                    || buffer.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
 
-        return updated;
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                long remaining = buffer.getLong();
+                long idle = buffer.getLong();
+                byte[] payload = new byte[buffer.getInt()];
+                buffer.get(payload);
+
+                T t = codec.decode(payload);
+                if (remaining > 0 && restore(t.id(), t, remaining, idle)) {
+                    restored++;
+                }
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Truncated cache snapshot: " + file, e);
+        }
+        return restored;
     }
 
     /**
-     * Remove the least recently requested value in the cache, if
-     * one exists.
+     * Queue an evicted value to be written to the second tier, if there is
+     * one and the value has not timed out. Does not wait for the write.
+     *
+     * @param id the identifier of the value
+     * @param t the value that was evicted
+     * @param remaining the number of nanoseconds t had left before timing out
      */
-    private synchronized void removeLeastRecentlyRequested() {
-        if (this.data.isEmpty()) {
+    @Override
+    void evicted(String id, T t, long remaining) {
+        SecondTier<T> tier = this.secondTier;
+        if (tier == null || remaining < 0) {
             return;
         }
 
-        CacheObject<T> least = null;
-        long leastRecentlyRequested = Long.MAX_VALUE;
-        for (CacheObject<T> c : this.data.keySet()) {
-            if (c.lastAccessed < leastRecentlyRequested) {
-                least = c;
-                leastRecentlyRequested = c.lastAccessed;
-            }
+        Spill<T> spill = new Spill<>(t, System.currentTimeMillis() + remaining / 1000000);
+        this.spilling.put(id, spill);
+        try {
+            tier.executor.execute(() -> write(tier.store, id, spill));
+        } catch (RejectedExecutionException e) {
+            // the writer is behind; the value is dropped, as it would be
+            // without a second tier
+            this.spilling.remove(id, spill);
         }
-
-        this.data.remove(least);
     }
 
     /**
-     * Remove all values in the cache that have not been refreshed within
-     * the timeout period
+     * Write an evicted value to a store, and stop looking for it among the
+     * values waiting to be written. Does nothing if the value was put back
+     * in the cache or invalidated while it waited.
+     *
+     * @param store the store to write to
+     * @param id the identifier of the value
+     * @param spill the value and when it expires
      */
-    private synchronized void expire() {
-        ConcurrentHashMap<CacheObject<T>, Boolean> values = new ConcurrentHashMap<>(this.data);
-        for (CacheObject<T> c : values.keySet()) {
-            if (c.lastUpdated + this.timeout * 1000000000 < currentTime()) {
-                this.data.remove(c);
+    private void write(DiskStore<T> store, String id, Spill<T> spill) {
+        try {
+            synchronized (store) {
+                if (this.spilling.get(id) == spill) {
+                    store.put(spill.value, spill.expiresAt);
+                }
             }
+        } catch (UncheckedIOException e) {
+            // the value is dropped, as it would be without a second tier
+        } finally {
+            this.spilling.remove(id, spill);
         }
     }
 
     /**
-     * Get the time since the cache was created.
+     * Look for a value in the second tier and move it back to the cache, so
+     * that the cache holds the only copy and the second tier cannot return
+     * an older version later.
      *
-     * @return the number of nanoseconds since the cache was created.
+     * @param id the identifier of the value
+     * @return the value with identifier id, or null if there is no second
+     *         tier or it does not hold the value
      */
-    private synchronized long currentTime() {
-        return System.nanoTime() - t0;
+    @Override
+    T loadMissing(String id) {
+        SecondTier<T> tier = this.secondTier;
+        if (tier == null) {
+            return null;
+        }
+
+        // a value still waiting to be written is not in the store yet;
+        // taking it out of spilling cancels the write
+        Spill<T> spill = this.spilling.get(id);
+        T value = null;
+        long expiresAt = 0;
+        if (spill != null && this.spilling.remove(id, spill)) {
+            value = spill.value;
+            expiresAt = spill.expiresAt;
+        } else {
+            try {
+                DiskStore.Hit<T> hit = tier.store.take(id);
+                if (hit != null) {
+                    value = hit.value;
+                    expiresAt = hit.expiresAt;
+                }
+            } catch (UncheckedIOException e) {
+                // treated as a miss
+            }
+        }
+
+        long remaining = (expiresAt - System.currentTimeMillis()) * 1000000;
+        if (value == null || remaining <= 0) {
+            this.stats.recordSecondTierMiss();
+            return null;
+        }
+        this.stats.recordSecondTierHit();
+        restore(id, value, remaining, 0);
+        return value;
     }
 
     /**
-     * An object that holds the values in the cache along with their
-     * associated metadata (time of last access and number of requests)
+     * Remove explicitly invalidated values from the values waiting to be
+     * written and from the second tier, so that later loads do not find
+     * them there.
+     *
+     * @param ids the identifiers of the values removed, or null if every
+     *            value was removed
      */
-    private class CacheObject<S extends T> {
-        private T t;
-        private long lastUpdated;
-        private long lastAccessed;
-
-        /**
-         * Create a CacheObject
-         *
-         * @param t the value to store
-         */
-        private CacheObject(T t) {
-            this.t = t;
-            this.lastUpdated = currentTime();
-            this.lastAccessed = currentTime();
+    @Override
+    void invalidated(Collection<? extends String> ids) {
+        SecondTier<T> tier = this.secondTier;
+        if (ids == null) {
+            this.spilling.clear();
+        } else {
+            for (String id : ids) {
+                this.spilling.remove(id);
+            }
         }
-
-        /**
-         * Make a hashcode for the CacheObject
-         *
-         * @return the hashcode
-         */
-        @Override
-        public int hashCode() {
-            return t.id().hashCode();
+        if (tier == null) {
+            return;
         }
 
-        /**
-         * Determine if this and another CacheObject are equal
-         *
-         * @param o other CacheObject to compare to
-         * @return true if this and o are equal, false otherwise
-         */
-        @Override
-        public synchronized boolean equals(Object o) {
-            if (o instanceof CacheObject) {
-                CacheObject c = (CacheObject<?>) o;
-                if (this.t.id().equals(c.t.id())) {
-                    return true;
+        try {
+            if (ids == null) {
+                tier.store.clear();
+            } else {
+                for (String id : ids) {
+                    tier.store.remove(id);
                 }
             }
-            return false;
+        } catch (UncheckedIOException e) {
+            // the values are gone from the store even if its files are not
+        }
+    }
+
+    /**
+     * A DiskStore together with the executor that writes to it.
+     *
+     * @param <T> the type of the values stored
+     */
+    private static final class SecondTier<T extends Cacheable> {
+        private final DiskStore<T> store;
+        private final Executor executor;
+
+        private SecondTier(DiskStore<T> store, Executor executor) {
+            this.store = store;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * An evicted value waiting to be written, with the time (in
+     * milliseconds since the epoch) it expires at.
+     *
+     * @param <T> the type of the value
+     */
+    private static final class Spill<T> {
+        private final T value;
+        private final long expiresAt;
+
+        private Spill(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
         }
     }
 
@@ -0,0 +1,184 @@
+package cpen221.mp3.cache;
+
+/**
+ * The statistics of a cache at one point in time. Counts start at zero when
+ * the cache is created and only grow.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long updateCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long l2HitCount;
+    private final long l2MissCount;
+    private final long[] loadTimes;
+    private final long[] lockWaits;
+
+    /**
+     * CacheStats Rep Invariants
+     *
+     * all counts and totalLoadTime are non-negative
+     * loadTimes and lockWaits have LatencyHistogram.BUCKETS non-negative
+     *     elements and are never modified
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * CacheStats Abstraction Functions
+     *
+     * hitCount, missCount -> the number of lookups that found or did not
+     *                        find a value in the cache
+     * putCount -> the number of values added to the cache
+     * updateCount -> the number of times a value in the cache was replaced
+     * evictionCount -> the number of values removed to make room for others
+     * expirationCount -> the number of values removed because they timed out
+     * loadSuccessCount, loadFailureCount -> the number of loads (including
+     *                                       background refreshes) that
+     *                                       returned or threw
+     * totalLoadTime -> the nanoseconds spent in all of those loads
+     * l2HitCount, l2MissCount -> the number of lookups in the second tier
+     *                            of a Cache, made after a miss and before
+     *                            loading, that found or did not find a value
+     * loadTimes, lockWaits -> LatencyHistogram snapshots of the time taken
+     *                         by each load, and of the time callers waited
+     *                         to acquire the cache's lock
+     */
+
+    CacheStats(long hitCount, long missCount, long putCount, long updateCount,
+               long evictionCount, long expirationCount, long loadSuccessCount,
+               long loadFailureCount, long totalLoadTime, long l2HitCount, long l2MissCount,
+               long[] loadTimes, long[] lockWaits) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.updateCount = updateCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.l2HitCount = l2HitCount;
+        this.l2MissCount = l2MissCount;
+        this.loadTimes = loadTimes;
+        this.lockWaits = lockWaits;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of lookups, hits and misses together
+     */
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return the fraction of lookups that found a value, or 1 if there
+     *         were none
+     */
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long putCount() {
+        return putCount;
+    }
+
+    public long updateCount() {
+        return updateCount;
+    }
+
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    public long expirationCount() {
+        return expirationCount;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * @return the total number of nanoseconds spent loading values
+     */
+    public long totalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * @return the number of values that missed in the cache and were found
+     *         in its second tier, or 0 if it has none
+     */
+    public long l2HitCount() {
+        return l2HitCount;
+    }
+
+    /**
+     * @return the number of values that missed in the cache and were not
+     *         found in its second tier either, or 0 if it has none
+     */
+    public long l2MissCount() {
+        return l2MissCount;
+    }
+
+    /**
+     * @return the average number of nanoseconds a load took, or 0 if there
+     *         were none
+     */
+    public double averageLoadPenalty() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads == 0 ? 0.0 : (double) totalLoadTime / loads;
+    }
+
+    /**
+     * Estimate a percentile of the time loads took.
+     *
+     * @param quantile between 0 and 1, for example 0.99
+     * @return a number of nanoseconds, accurate to within a factor of two,
+     *         that at least that fraction of loads took no longer than
+     */
+    public long loadTimePercentile(double quantile) {
+        return LatencyHistogram.percentile(loadTimes, quantile);
+    }
+
+    /**
+     * Estimate a percentile of the time callers waited to acquire the
+     * cache's lock.
+     *
+     * @param quantile between 0 and 1, for example 0.99
+     * @return a number of nanoseconds, accurate to within a factor of two,
+     *         that at least that fraction of callers waited no longer than
+     */
+    public long lockWaitPercentile(double quantile) {
+        return LatencyHistogram.percentile(lockWaits, quantile);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheStats{hits=%d, misses=%d, hitRate=%.3f, puts=%d, updates=%d, "
+                        + "evictions=%d, expirations=%d, loads=%d, loadFailures=%d, "
+                        + "l2Hits=%d, l2Misses=%d, loadP99=%dns, lockWaitP99=%dns}",
+                hitCount, missCount, hitRate(), putCount, updateCount, evictionCount,
+                expirationCount, loadSuccessCount, loadFailureCount, l2HitCount, l2MissCount,
+                loadTimePercentile(0.99), lockWaitPercentile(0.99));
+    }
+
+}
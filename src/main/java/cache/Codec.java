@@ -0,0 +1,21 @@
+package cpen221.mp3.cache;
+
+public interface Codec<T> {
+
+    /**
+     * Encode a value as bytes, so that it can be stored outside the heap.
+     *
+     * @param t the value to encode
+     * @return bytes from which decode produces a value equal to t
+     */
+    byte[] encode(T t);
+
+    /**
+     * Decode a value encoded by encode.
+     *
+     * @param bytes the bytes returned by encode
+     * @return the value that was encoded
+     */
+    T decode(byte[] bytes);
+
+}
@@ -0,0 +1,614 @@
+package cpen221.mp3.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * A store of values on disk, used as a second tier beneath a Cache. Values
+ * are appended to segment files in a directory and found through an index
+ * kept in memory, so writing a value never moves other values. Storing a
+ * value again leaves its old record behind as garbage; once a full segment
+ * is mostly garbage, its live values are copied to the newest segment and
+ * the file is deleted. When the files take up more than the store's
+ * capacity, the oldest segment is deleted along with the values in it.
+ *
+ * The segments left in the directory are read back when a store is opened
+ * on it, so the values survive restarts. Every record carries a CRC32 of
+ * its contents, so a record that was torn or zero-filled by a crash is
+ * found and discarded rather than decoded.
+ *
+ * @param <T> the type of the values stored
+ */
+public class DiskStore<T extends Cacheable> {
+
+    /* the default segment size is 16 MiB */
+    private static final long DSEGMENT = 16L * 1024 * 1024;
+
+    /* the size of a record without its identifier and value */
+    private static final int HEADER = 20;
+
+    /* the position in a record of the CRC32 of the rest of the record */
+    private static final int CHECKSUM = 16;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long maximumBytes;
+    private final long segmentBytes;
+    private final Codec<T> codec;
+    private final HashMap<String, Location> index = new HashMap<>();
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long totalBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * DiskStore Rep Invariants
+     *
+     * directory, codec, index and segments are not null
+     * maximumBytes >= 0 and segmentBytes > 0
+     * segments is ordered by increasing segment number and is not empty;
+     *     only its last segment (the active one) is appended to
+     * every location in index points to a complete record for its key in
+     *     a segment of segments whose checksum matched when it was written
+     *     or recovered, and it is the most recent record for that key in
+     *     the files
+     * for every segment, liveBytes is the total length of the records in
+     *     it that index points to, and liveBytes <= size
+     * totalBytes is the sum of the sizes of the segments
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * DiskStore Abstraction Functions
+     *
+     * index -> the identifier of every value in the store, with where its
+     *          record is and when it expires
+     * segments -> the files holding the records, from oldest to newest; a
+     *             record is [id length, value length, expiry, checksum, id,
+     *             value], where checksum is the CRC32 of the other fields
+     * maximumBytes -> the total size of the files above which the oldest
+     *                 segment is deleted
+     * segmentBytes -> the size at which a new segment is started
+     * hits, misses -> the number of lookups that found or did not find a
+     *                 value that had not expired
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * Every method that touches index, segments or the files is
+     * synchronized, so records are never read while their segment is being
+     * compacted or deleted. hits and misses are LongAdders that can be
+     * updated and read from any thread.
+     */
+
+    /**
+     * Open a store in a directory with 16 MiB segments, reading back the
+     * values left there by a previous store.
+     *
+     * @param directory the directory holding the segment files, which is
+     *                  created if needed and must not be used by any other
+     *                  store at the same time
+     * @param maximumBytes the total size of the files the store keeps
+     * @param codec encodes the values
+     * @throws IOException if the directory cannot be created or read
+     */
+    public DiskStore(Path directory, long maximumBytes, Codec<T> codec) throws IOException {
+        this(directory, maximumBytes, DSEGMENT, codec);
+    }
+
+    /**
+     * Open a store in a directory, reading back the values left there by a
+     * previous store. A record cut short or corrupted (by a crash while it
+     * was written) and anything after it in its segment is discarded.
+     *
+     * @param directory the directory holding the segment files, which is
+     *                  created if needed and must not be used by any other
+     *                  store at the same time
+     * @param maximumBytes the total size of the files the store keeps
+     * @param segmentBytes the size at which a segment is closed and a new
+     *                     one started
+     * @param codec encodes the values
+     * @throws IOException if the directory cannot be created or read
+     * @throws IllegalArgumentException if maximumBytes is negative,
+     *         segmentBytes is not positive, or codec is null
+     */
+    public DiskStore(Path directory, long maximumBytes, long segmentBytes, Codec<T> codec)
+            throws IOException {
+        if (maximumBytes < 0 || segmentBytes <= 0 || codec == null) {
+            throw new IllegalArgumentException("Invalid capacity, segment size or codec");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.maximumBytes = maximumBytes;
+        this.segmentBytes = segmentBytes;
+        this.codec = codec;
+
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            }
+        }
+        numbers.sort(null);
+
+        for (long number : numbers) {
+            Segment segment = new Segment(number);
+            this.segments.addLast(segment);
+            recover(segment);
+            this.totalBytes += segment.size;
+        }
+        if (this.segments.isEmpty()) {
+            this.segments.addLast(new Segment(0));
+        }
+        trim();
+    }
+
+    /**
+     * Store a value, replacing any value with the same identifier.
+     *
+     * @param t the value to store
+     * @param expiresAt the time (in milliseconds since the epoch) after which
+     *                  the value is no longer returned
+     * @throws UncheckedIOException if the value cannot be written
+     */
+    public synchronized void put(T t, long expiresAt) {
+        try {
+            boolean rolled = roll();
+            append(t.id(), this.codec.encode(t), expiresAt);
+            if (rolled) {
+                compact();
+            }
+            trim();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Retrieve a value from the store.
+     *
+     * @param id the identifier of the value
+     * @return the value with identifier id, or null if there is none or it
+     *         has expired
+     * @throws UncheckedIOException if the value cannot be read
+     */
+    public T get(String id) {
+        Hit<T> hit = lookup(id);
+        return hit == null ? null : hit.value;
+    }
+
+    /**
+     * Remove a value from the store. Its record is left in its segment as
+     * garbage, so a store opened later on the same directory may read it
+     * back until it expires.
+     *
+     * @param id the identifier of the value
+     * @return true if the store held a value with identifier id
+     */
+    public synchronized boolean remove(String id) {
+        Location location = this.index.remove(id);
+        if (location == null) {
+            return false;
+        }
+        location.segment.liveBytes -= location.length;
+        return true;
+    }
+
+    /**
+     * Remove every value from the store and delete its segment files. The
+     * values are removed even if a file cannot be deleted; such a file is
+     * deleted with the next compaction instead.
+     *
+     * @throws UncheckedIOException if a file cannot be created or deleted
+     */
+    public synchronized void clear() {
+        this.index.clear();
+        for (Segment segment : this.segments) {
+            segment.liveBytes = 0;
+        }
+
+        try {
+            this.segments.addLast(new Segment(this.segments.getLast().number + 1));
+            while (this.segments.size() > 1) {
+                delete(this.segments.getFirst());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the number of values in the store, including ones that have
+     *         expired but have not been removed yet
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /**
+     * @return the total size in bytes of the segment files
+     */
+    public synchronized long sizeInBytes() {
+        return this.totalBytes;
+    }
+
+    /**
+     * @return the number of lookups that found a value
+     */
+    public long hitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find a value
+     */
+    public long missCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Close the segment files. The store must not be used afterwards; the
+     * values in it can be read back by opening a new store on its directory.
+     *
+     * @throws IOException if a file cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        for (Segment segment : this.segments) {
+            segment.channel.close();
+        }
+    }
+
+    /**
+     * Retrieve a value from the store along with when it expires.
+     *
+     * @param id the identifier of the value
+     * @return the value with identifier id and its expiry, or null if there
+     *         is none or it has expired
+     * @throws UncheckedIOException if the value cannot be read
+     */
+    synchronized Hit<T> lookup(String id) {
+        Location location = this.index.get(id);
+        if (location == null || location.expiresAt < System.currentTimeMillis()) {
+            if (location != null) {
+                this.index.remove(id);
+                location.segment.liveBytes -= location.length;
+            }
+            this.misses.increment();
+            return null;
+        }
+
+        try {
+            ByteBuffer record = read(location);
+            if (record.getInt(CHECKSUM) != checksum(record)) {
+                // the file changed under us; forget the value
+                this.index.remove(id);
+                location.segment.liveBytes -= location.length;
+                this.misses.increment();
+                return null;
+            }
+            record.position(HEADER + record.getInt(0));
+            byte[] payload = new byte[record.remaining()];
+            record.get(payload);
+
+            this.hits.increment();
+            return new Hit<>(this.codec.decode(payload), location.expiresAt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Retrieve a value from the store along with when it expires, and
+     * remove it from the store.
+     *
+     * @param id the identifier of the value
+     * @return the value with identifier id and its expiry, or null if there
+     *         is none or it has expired
+     * @throws UncheckedIOException if the value cannot be read
+     */
+    synchronized Hit<T> take(String id) {
+        Hit<T> hit = lookup(id);
+        if (hit != null) {
+            remove(id);
+        }
+        return hit;
+    }
+
+    /**
+     * Start a new segment if the active one is full.
+     *
+     * @return true if a new segment was started
+     * @throws IOException if the new segment cannot be created
+     */
+    private boolean roll() throws IOException {
+        if (this.segments.getLast().size < this.segmentBytes) {
+            return false;
+        }
+
+        this.segments.addLast(new Segment(this.segments.getLast().number + 1));
+        return true;
+    }
+
+    /**
+     * Append a record to the active segment, starting a new segment first
+     * if it is full.
+     *
+     * @param id the identifier of the value
+     * @param payload the encoded value
+     * @param expiresAt the time the value expires at
+     * @throws IOException if the record cannot be written
+     */
+    private void append(String id, byte[] payload, long expiresAt) throws IOException {
+        roll();
+
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER + key.length + payload.length);
+        record.putInt(key.length).putInt(payload.length).putLong(expiresAt).putInt(0)
+                .put(key).put(payload);
+        record.flip();
+        record.putInt(CHECKSUM, checksum(record));
+
+        Segment segment = this.segments.getLast();
+        long offset = segment.size;
+        while (record.hasRemaining()) {
+            segment.channel.write(record, offset + record.position());
+        }
+        segment.size += record.limit();
+        this.totalBytes += record.limit();
+
+        index(id, new Location(segment, offset, record.limit(), expiresAt));
+    }
+
+    /**
+     * Point the index at a new record for a value, making its previous
+     * record garbage.
+     *
+     * @param id the identifier of the value
+     * @param location the new record
+     */
+    private void index(String id, Location location) {
+        Location previous = this.index.put(id, location);
+        if (previous != null) {
+            previous.segment.liveBytes -= previous.length;
+        }
+        location.segment.liveBytes += location.length;
+    }
+
+    /**
+     * Copy the live records out of the segments (other than the active one)
+     * that are at least half garbage, and delete those segments.
+     *
+     * @throws IOException if a record cannot be copied or a file deleted
+     */
+    private void compact() throws IOException {
+        Segment active = this.segments.getLast();
+        List<Segment> sparse = new ArrayList<>();
+        for (Segment segment : this.segments) {
+            if (segment != active && segment.liveBytes * 2 <= segment.size) {
+                sparse.add(segment);
+            }
+        }
+
+        for (Segment segment : sparse) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, Location> entry : new ArrayList<>(this.index.entrySet())) {
+                Location location = entry.getValue();
+                if (location.segment != segment) {
+                    continue;
+                }
+                if (location.expiresAt < now) {
+                    this.index.remove(entry.getKey());
+                    continue;
+                }
+
+                ByteBuffer record = read(location);
+                record.position(HEADER + record.getInt(0));
+                byte[] payload = new byte[record.remaining()];
+                record.get(payload);
+                append(entry.getKey(), payload, location.expiresAt);
+            }
+            delete(segment);
+        }
+    }
+
+    /**
+     * Delete the oldest segments while the files are larger than the
+     * capacity, forgetting the values in them. The active segment is
+     * emptied instead of deleted if it is the only one.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    private void trim() throws IOException {
+        while (this.totalBytes > this.maximumBytes) {
+            Segment oldest = this.segments.getFirst();
+            if (oldest == this.segments.getLast()) {
+                this.segments.addLast(new Segment(oldest.number + 1));
+            }
+            delete(oldest);
+        }
+    }
+
+    /**
+     * Delete a segment file and remove the values whose records are in it
+     * from the index.
+     *
+     * @param segment a segment other than the active one
+     * @throws IOException if the file cannot be deleted
+     */
+    private void delete(Segment segment) throws IOException {
+        Iterator<Location> locations = this.index.values().iterator();
+        while (locations.hasNext()) {
+            if (locations.next().segment == segment) {
+                locations.remove();
+            }
+        }
+
+        this.segments.remove(segment);
+        this.totalBytes -= segment.size;
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+    }
+
+    /**
+     * Read the records of a segment left by a previous store into the
+     * index, truncating the segment before its first record that is cut
+     * short or does not match its checksum.
+     *
+     * @param segment the segment to read, which has just been opened
+     * @throws IOException if the segment cannot be read or truncated
+     */
+    private void recover(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+
+        while (offset + HEADER <= fileSize) {
+            header.clear();
+            readFully(segment.channel, header, offset);
+            int keyLength = header.getInt(0);
+            int payloadLength = header.getInt(4);
+            long length = (long) HEADER + keyLength + payloadLength;
+            if (keyLength < 0 || payloadLength < 0 || offset + length > fileSize
+                    || length > Integer.MAX_VALUE) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate((int) length);
+            readFully(segment.channel, record, offset);
+            record.flip();
+            if (record.getInt(CHECKSUM) != checksum(record)) {
+                break;
+            }
+
+            String id = new String(record.array(), HEADER, keyLength, StandardCharsets.UTF_8);
+            index(id, new Location(segment, offset, (int) length, record.getLong(8)));
+            offset += length;
+        }
+
+        segment.size = offset;
+        segment.channel.truncate(offset);
+    }
+
+    /**
+     * Read a whole record.
+     *
+     * @param location the record to read
+     * @return a buffer holding the record, positioned at its start
+     * @throws IOException if the record cannot be read
+     */
+    private ByteBuffer read(Location location) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        readFully(location.segment.channel, record, location.offset);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Compute the checksum of a record: the CRC32 of all of it but its
+     * checksum field.
+     *
+     * @param record a whole record, from position 0 to its limit
+     * @return the checksum the record should hold
+     */
+    private static int checksum(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = record.array();
+        crc.update(bytes, 0, CHECKSUM);
+        crc.update(bytes, HEADER, record.limit() - HEADER);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Fill a buffer from a file.
+     *
+     * @param channel the file to read
+     * @param buffer the buffer to fill
+     * @param offset the position in the file to read from
+     * @throws IOException if the file cannot be read or ends first
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * A value found in the store, with the time it expires at.
+     *
+     * @param <T> the type of the value
+     */
+    static final class Hit<T> {
+        final T value;
+        final long expiresAt;
+
+        private Hit(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Where the record of a value is, and when the value expires.
+     */
+    private final class Location {
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private final long expiresAt;
+
+        private Location(Segment segment, long offset, int length, long expiresAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * An open segment file.
+     */
+    private final class Segment {
+        private final long number;
+        private final Path file;
+        private final FileChannel channel;
+        private long size;
+        private long liveBytes;
+
+        /**
+         * Open or create the segment file with the given number.
+         *
+         * @param number the number of the segment
+         * @throws IOException if the file cannot be opened
+         */
+        private Segment(long number) throws IOException {
+            this.number = number;
+            this.file = directory.resolve(PREFIX + String.format("%012d", number) + SUFFIX);
+            this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package cpen221.mp3.cache;
+
+/**
+ * Decides which value a cache removes when it is full.
+ *
+ * A cache reports every change to its contents to its policy, and asks the
+ * policy for a victim whenever it needs room. An instance keeps state about
+ * a single cache and must not be shared between caches.
+ *
+ * @param <K> the type of the identifiers of the cached values
+ */
+public interface EvictionPolicy<K> {
+
+    /**
+     * Record that a value was added to the cache.
+     *
+     * @param key the identifier of the value, which is not currently
+     *            recorded by this policy
+     */
+    void recordInsert(K key);
+
+    /**
+     * Record that a value in the cache was requested.
+     *
+     * @param key the identifier of the value, which is currently recorded
+     *            by this policy
+     */
+    void recordAccess(K key);
+
+    /**
+     * Record that a value was removed from the cache for any reason other
+     * than to make room, such as timing out or being invalidated.
+     *
+     * @param key the identifier of the value, which is currently recorded
+     *            by this policy
+     */
+    void recordRemoval(K key);
+
+    /**
+     * Record that a value was removed from the cache to make room, whether
+     * it was chosen by victim() or weighed more than the cache can hold.
+     * Policies that learn from their evictions override this; by default
+     * an eviction is recorded like any other removal.
+     *
+     * @param key the identifier of the value, which is currently recorded
+     *            by this policy
+     */
+    default void recordEviction(K key) {
+        recordRemoval(key);
+    }
+
+    /**
+     * Choose the value the cache should remove next. The cache asks after
+     * recording an insert or an update that took it over its capacity, so
+     * the victim may be the value that was just inserted or updated. The
+     * chosen value stays recorded until the cache calls recordEviction.
+     *
+     * @return the identifier of a recorded value, or null if no value is
+     *         recorded
+     */
+    K victim();
+
+}
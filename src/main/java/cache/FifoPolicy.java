@@ -0,0 +1,58 @@
+package cpen221.mp3.cache;
+
+import java.util.HashMap;
+
+/**
+ * Evicts the value that was inserted first, regardless of how often or how
+ * recently it was requested.
+ *
+ * @param <K> the type of the identifiers of the cached values
+ */
+public class FifoPolicy<K> implements EvictionPolicy<K> {
+
+    private final HashMap<K, LruPolicy.Node<K>> nodes = new HashMap<>();
+    private final LruPolicy.Node<K> insertionOrder = new LruPolicy.Node<>(null);
+
+    /**
+     * FifoPolicy Rep Invariants
+     *
+     * nodes does not contain null values and node.key equals its key in nodes
+     * insertionOrder is a sentinel of a circular doubly-linked list that
+     *     holds exactly the values of nodes, each once
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * FifoPolicy Abstraction Functions
+     *
+     * nodes -> the identifiers of the values in the cache
+     * insertionOrder -> the values ordered from least recently inserted
+     *                   (insertionOrder.next) to most recently inserted
+     *                   (insertionOrder.prev)
+     */
+
+    @Override
+    public void recordInsert(K key) {
+        LruPolicy.Node<K> node = new LruPolicy.Node<>(key);
+        nodes.put(key, node);
+        node.linkBefore(insertionOrder);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        // requests do not change the order values are evicted in
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        LruPolicy.Node<K> node = nodes.remove(key);
+        if (node != null) {
+            node.unlink();
+        }
+    }
+
+    @Override
+    public K victim() {
+        return insertionOrder.next.key;
+    }
+
+}
@@ -0,0 +1,170 @@
+package cpen221.mp3.cache;
+
+/**
+ * A count-min sketch that estimates how often each item has been seen
+ * recently, using four 4-bit counters per item.
+ *
+ * Counters saturate at 15. After a number of increments proportional to
+ * the capacity of the sketch, every counter is halved, so that items which
+ * were popular a long time ago are gradually forgotten.
+ */
+class FrequencySketch {
+
+    /* the largest value a counter can hold */
+    private static final int MAX_COUNT = 15;
+
+    /* clears the top bit of each counter after shifting right by one */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /* seeds of the four hash functions */
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * FrequencySketch Rep Invariants
+     *
+     * table.length is a power of two and tableMask = table.length - 1
+     * sampleSize > 0
+     * 0 <= size < sampleSize
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * FrequencySketch Abstraction Functions
+     *
+     * table -> sixteen 4-bit counters per long; an item's estimated frequency
+     *          is the minimum of the four counters its hashes select
+     * size -> the number of increments since the counters were last halved
+     * sampleSize -> the number of increments after which the counters are
+     *               halved
+     */
+
+    /**
+     * Create a sketch sized for a small number of items.
+     */
+    FrequencySketch() {
+        ensureCapacity(16);
+    }
+
+    /**
+     * Grow the sketch so that it estimates frequencies accurately for up to
+     * maximumSize distinct items. Growing keeps every frequency: the old
+     * table is repeated to fill the new one, and since an item's index in
+     * the new table, masked by the old table's mask, is its index in the old
+     * one, each item starts out with the counters it had.
+     *
+     * @param maximumSize the number of items the sketch should track
+     */
+    void ensureCapacity(long maximumSize) {
+        int maximum = (int) Math.min(Math.max(maximumSize, 1), Integer.MAX_VALUE >>> 2);
+        if (this.table != null && this.table.length >= maximum) {
+            return;
+        }
+
+        int length = Math.max(Integer.highestOneBit(maximum - 1) << 1, 8);
+        long[] grown = new long[length];
+        if (this.table != null) {
+            for (int i = 0; i < length; i += this.table.length) {
+                System.arraycopy(this.table, 0, grown, i, this.table.length);
+            }
+        }
+        this.table = grown;
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    /**
+     * Estimate how often an item has been seen recently.
+     *
+     * @param hashCode the hash code of the item
+     * @return the estimated frequency, between 0 and 15
+     */
+    int frequency(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record that an item was seen, halving every counter if enough items
+     * have been recorded since the last time they were halved.
+     *
+     * @param hashCode the hash code of the item
+     */
+    void increment(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && ++this.size == this.sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Increment one counter unless it is saturated.
+     *
+     * @param index the long holding the counter
+     * @param counter which of the sixteen counters in the long to increment
+     * @return true if the counter was incremented, false if it is saturated
+     */
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((this.table[index] & mask) != mask) {
+            this.table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halve every counter.
+     */
+    private void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.size >>>= 1;
+    }
+
+    /**
+     * Select the long holding one of an item's counters.
+     *
+     * @param hash the spread hash of the item
+     * @param i which of the four hash functions to use
+     * @return an index into table
+     */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & this.tableMask;
+    }
+
+    /**
+     * Mix the bits of a hash code so that similar hash codes select
+     * unrelated counters.
+     *
+     * @param x a hash code
+     * @return the mixed hash
+     */
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+}
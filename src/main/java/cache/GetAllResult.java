@@ -0,0 +1,55 @@
+package cpen221.mp3.cache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of looking up several keys in a cache at once: the values
+ * that were found, and the keys that were not, which the caller can then
+ * fetch together.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class GetAllResult<K, V> {
+
+    private final Map<K, V> hits;
+    private final Set<K> misses;
+
+    /**
+     * GetAllResult Rep Invariants
+     *
+     * hits and misses are not null, unmodifiable and share no keys
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * GetAllResult Abstraction Functions
+     *
+     * hits -> the keys that were found, in the order they were requested,
+     *         and their values
+     * misses -> the keys that were not found or had timed out, in the order
+     *           they were requested
+     */
+
+    GetAllResult(Map<K, V> hits, Set<K> misses) {
+        this.hits = Collections.unmodifiableMap(hits);
+        this.misses = Collections.unmodifiableSet(misses);
+    }
+
+    /**
+     * @return the keys that were found and their values, in the order the
+     *         keys were requested
+     */
+    public Map<K, V> hits() {
+        return this.hits;
+    }
+
+    /**
+     * @return the keys that were not found, in the order they were requested
+     */
+    public Set<K> misses() {
+        return this.misses;
+    }
+
+}
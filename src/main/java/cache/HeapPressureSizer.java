@@ -0,0 +1,287 @@
+package cpen221.mp3.cache;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Grows and shrinks the maximum weight of a cache with the occupancy of the
+ * old generation of the heap, so that a cache weighed in bytes uses memory
+ * that would otherwise sit idle but gives it back before the collector has
+ * to work hard for it.
+ *
+ * After every garbage collection the sizer reads how full the old
+ * generation was left. Above the high threshold it shrinks the cache by
+ * SHRINK_FACTOR, which evicts values right away; below the low threshold
+ * it grows the cache by GROW_FACTOR. A collection that leaves the reading
+ * as it was, such as a young collection, which does not touch the old
+ * generation, is ignored, so the cache shrinks once per collection of the
+ * old generation rather than on every collection. The maximum weight
+ * always stays within the bounds given when the sizer is created.
+ */
+public class HeapPressureSizer {
+
+    /* the default occupancy of the old generation above which the cache shrinks */
+    private static final double DHIGH = 0.75;
+
+    /* the default occupancy of the old generation below which the cache grows */
+    private static final double DLOW = 0.5;
+
+    /* how much the maximum weight is multiplied by when shrinking and growing */
+    private static final double SHRINK_FACTOR = 0.75;
+    private static final double GROW_FACTOR = 1.25;
+
+    /* the notification type of the garbage collector beans of HotSpot */
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+    private final WeakReference<KeyedCache<?, ?>> cache;
+    private final long minimumWeight;
+    private final long maximumWeight;
+    private final double high;
+    private final double low;
+    private final DoubleSupplier occupancy;
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = this::handleNotification;
+    private double lastReading = Double.NaN;
+
+    /**
+     * HeapPressureSizer Rep Invariants
+     *
+     * cache and occupancy are not null
+     * 0 <= minimumWeight <= maximumWeight
+     * 0 <= low < high <= 1
+     * emitters holds the beans listener is registered with, which is empty
+     *     unless the sizer has been started
+     * lastReading is NaN or between 0 and 1
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * HeapPressureSizer Abstraction Functions
+     *
+     * cache -> the cache being sized; it is only weakly reachable from the
+     *          sizer, so a sizer left running does not keep the cache alive
+     * minimumWeight, maximumWeight -> the bounds of the cache's maximum weight
+     * high, low -> the occupancies of the old generation above which the
+     *              cache shrinks and below which it grows
+     * occupancy -> reads the current occupancy of the old generation, as a
+     *              fraction of its maximum size
+     * lastReading -> the occupancy the cache was last adjusted for, or NaN
+     *                if it has not been adjusted
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * The cache is thread-safe and only its synchronized methods are called.
+     * adjust reads and then sets the cache's maximum weight without holding
+     * its lock, so two adjustments running at the same time may both act on
+     * the same reading; either result stays within the bounds. emitters is
+     * only accessed in synchronized methods, and lastReading only while
+     * holding the sizer's lock.
+     */
+
+    /**
+     * Create a sizer that shrinks the cache when the old generation is more
+     * than 75% full after a collection and grows it when it is less than 50%
+     * full. The sizer does nothing until it is started.
+     *
+     * @param cache the cache to size
+     * @param minimumWeight the smallest maximum weight the cache is given
+     * @param maximumWeight the largest maximum weight the cache is given
+     * @throws IllegalArgumentException if the bounds are negative or
+     *         minimumWeight > maximumWeight
+     */
+    public HeapPressureSizer(KeyedCache<?, ?> cache, long minimumWeight, long maximumWeight) {
+        this(cache, minimumWeight, maximumWeight, DHIGH, DLOW, HeapPressureSizer::oldGenOccupancy);
+    }
+
+    /**
+     * Create a sizer with custom thresholds and a custom reading of the
+     * occupancy of the heap, for example to size a cache by the occupancy of
+     * the whole heap instead. The sizer does nothing until it is started or
+     * adjust is called.
+     *
+     * @param cache the cache to size
+     * @param minimumWeight the smallest maximum weight the cache is given
+     * @param maximumWeight the largest maximum weight the cache is given
+     * @param high the occupancy above which the cache shrinks
+     * @param low the occupancy below which the cache grows
+     * @param occupancy reads the occupancy of the heap, between 0 and 1
+     * @throws IllegalArgumentException if the bounds are negative,
+     *         minimumWeight > maximumWeight, or not 0 <= low < high <= 1
+     */
+    public HeapPressureSizer(KeyedCache<?, ?> cache, long minimumWeight, long maximumWeight,
+                             double high, double low, DoubleSupplier occupancy) {
+        if (cache == null || occupancy == null) {
+            throw new IllegalArgumentException("Cache and occupancy cannot be null");
+        }
+        if (minimumWeight < 0 || minimumWeight > maximumWeight) {
+            throw new IllegalArgumentException("Invalid capacity bounds");
+        }
+        if (!(0 <= low && low < high && high <= 1)) {
+            throw new IllegalArgumentException("Invalid occupancy thresholds");
+        }
+
+        this.cache = new WeakReference<>(cache);
+        this.minimumWeight = minimumWeight;
+        this.maximumWeight = maximumWeight;
+        this.high = high;
+        this.low = low;
+        this.occupancy = occupancy;
+    }
+
+    /**
+     * Adjust the cache after every garbage collection from now on, and
+     * bring its maximum weight within the bounds now. Does nothing if the
+     * sizer is already started.
+     */
+    public synchronized void start() {
+        if (!this.emitters.isEmpty()) {
+            return;
+        }
+
+        KeyedCache<?, ?> c = this.cache.get();
+        if (c != null) {
+            c.setMaximumWeight(clamp(c.maximumWeight()));
+        }
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(this.listener, null, null);
+                this.emitters.add(emitter);
+            }
+        }
+    }
+
+    /**
+     * Stop adjusting the cache. The cache keeps its current maximum weight.
+     */
+    public synchronized void stop() {
+        for (NotificationEmitter emitter : this.emitters) {
+            try {
+                emitter.removeNotificationListener(this.listener);
+            } catch (ListenerNotFoundException e) {
+                // already removed
+            }
+        }
+        this.emitters.clear();
+    }
+
+    /**
+     * Read the occupancy of the heap and shrink or grow the cache if it is
+     * past a threshold. Shrinking evicts values from the cache before this
+     * returns.
+     *
+     * @return the maximum weight of the cache afterwards, or -1 if the cache
+     *         is no longer in use
+     */
+    public long adjust() {
+        double used = this.occupancy.getAsDouble();
+        synchronized (this) {
+            this.lastReading = used;
+        }
+        return adjust(used);
+    }
+
+    /**
+     * Shrink or grow the cache if an occupancy is past a threshold.
+     *
+     * @param used the occupancy of the heap, between 0 and 1
+     * @return the maximum weight of the cache afterwards, or -1 if the cache
+     *         is no longer in use
+     */
+    private long adjust(double used) {
+        KeyedCache<?, ?> c = this.cache.get();
+        if (c == null) {
+            stop();
+            return -1;
+        }
+
+        long current = c.maximumWeight();
+        long target = current;
+        if (used > this.high) {
+            target = clamp((long) (current * SHRINK_FACTOR));
+        } else if (used < this.low) {
+            // grow by at least one so that a cache sized 0 can recover
+            target = clamp(Math.max((long) (current * GROW_FACTOR), current + 1));
+        }
+
+        if (target != current) {
+            c.setMaximumWeight(target);
+        }
+        return target;
+    }
+
+    /**
+     * Adjust the cache after a garbage collection, unless the occupancy is
+     * the one the cache was last adjusted for. The collection usage of the
+     * old generation only changes when the old generation is collected, so
+     * young collections leave the cache alone, and a cache that was shrunk
+     * is not shrunk again until there is a new reading showing it was not
+     * enough.
+     *
+     * @param notification a notification from a garbage collector bean
+     * @param handback unused
+     */
+    void handleNotification(Notification notification, Object handback) {
+        if (!GC_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+
+        double used = this.occupancy.getAsDouble();
+        synchronized (this) {
+            if (used == this.lastReading) {
+                return;
+            }
+            this.lastReading = used;
+        }
+        adjust(used);
+    }
+
+    /**
+     * Bring a maximum weight within the bounds of the sizer.
+     *
+     * @param weight the maximum weight
+     * @return the closest weight within [minimumWeight, maximumWeight]
+     */
+    private long clamp(long weight) {
+        return Math.max(this.minimumWeight, Math.min(this.maximumWeight, weight));
+    }
+
+    /**
+     * Read how full the old generation was left by the last collection, or
+     * how full the heap is if there is no separate old generation.
+     *
+     * @return the occupancy, as a fraction of the maximum size
+     */
+    static double oldGenOccupancy() {
+        MemoryPoolMXBean oldGen = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+                String name = pool.getName();
+                if (oldGen == null || name.contains("Old") || name.contains("Tenured")) {
+                    oldGen = pool;
+                }
+            }
+        }
+
+        MemoryUsage usage = oldGen == null ? null : oldGen.getCollectionUsage();
+        if (usage == null) {
+            usage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        }
+        long max = usage.getMax() > 0 ? usage.getMax() : Runtime.getRuntime().maxMemory();
+        return (double) usage.getUsed() / max;
+    }
+
+}
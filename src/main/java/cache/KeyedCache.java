@@ -0,0 +1,1320 @@
+package cpen221.mp3.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A cache of values of any type stored under keys of any type, for values
+ * that do not carry their own identifier or that are looked up by something
+ * other than a String, such as a page ID. Cache is the specialization for
+ * Cacheable values stored under their id().
+ *
+ * @param <K> the type of the keys, which must have consistent equals and
+ *            hashCode and must not change while in the cache
+ * @param <V> the type of the values
+ */
+public class KeyedCache<K, V> {
+
+    /* the default cache size is 32 objects */
+    private static final int DSIZE = 32;
+
+    /* the default timeout value is 3600s */
+    private static final int DTIMEOUT = 3600;
+
+    /* the number of removal notifications that may wait for the default
+       listener executor before new ones are dropped */
+    private static final int LISTENER_QUEUE_SIZE = 4096;
+
+    /* runs removal listeners that were added without an executor */
+    private static final Executor LISTENER_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(LISTENER_QUEUE_SIZE), r -> {
+                Thread thread = new Thread(r, "cache-removal-listener");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private long maximumWeight;
+    private final Weigher<? super V> weigher;
+    private final int timeout;
+    private final long timeoutNanos;
+    private long refreshNanos = Long.MAX_VALUE;
+    private Executor refreshExecutor;
+    private long weightedSize;
+
+    private final HashMap<K, CacheObject<V>> data;
+    private final EvictionPolicy<K> policy;
+    private final TimerWheel<CacheObject<V>> expiry;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading;
+    private final List<Registration<? super K, ? super V>> listeners = new CopyOnWriteArrayList<>();
+    final StatsCounter stats = new StatsCounter();
+    private final long t0 = System.nanoTime();
+
+    /**
+     * KeyedCache Rep Invariants
+     *
+     * maximumWeight >= 0
+     * weigher is not null
+     * timeout >= 0
+     * timeoutNanos = timeout * 10^9
+     * refreshNanos > 0, and refreshExecutor is not null if
+     *     refreshNanos < Long.MAX_VALUE
+     * data is not null and does not contain null keys or values
+     * weightedSize is the sum of the weight of every value in data
+     * weightedSize <= maximumWeight
+     * for every entry (key, c) in data, c.key.equals(key)
+     * policy is not null and has recorded exactly the keys of data
+     * expiry is not null and holds exactly the values of data
+     * loading is not null and holds only futures that have not completed
+     *     or are about to be removed by the thread that completed them
+     * listeners is not null and does not contain null
+     * stats is not null
+     * t0 >= 0
+     *
+     * CacheObject Rep Invariants
+     *
+     * key and value are not null
+     * weight = weigher.weigh(value) and 0 <= weight <= maximumWeight
+     * lastAccessed <= the current time
+     * lastUpdated <= the current time (both may be negative for values
+     *     restored from a snapshot that are older than the cache)
+     * deadline = lastUpdated + timeoutNanos
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * KeyedCache Abstraction Functions
+     *
+     * data -> an index from the key of every element stored in the cache to
+     *         the element and its metadata
+     * policy -> decides which element is removed when the cache is full
+     * loading -> the keys of the elements that are being loaded, and the
+     *            result every caller waiting for each of them receives
+     * listeners -> who is told about every value removed from the cache,
+     *              and the executor each of them runs on
+     * stats -> what has happened to the cache since it was created,
+     *          including to the other stores of subclasses
+     * expiry -> the elements in the cache grouped by when they time out;
+     *           elements whose deadline has passed may remain in data until
+     *           the wheel reaches them, but are never returned
+     * maximumWeight -> the maximum total weight of the elements allowed in
+     *                  the cache at any given instant; when every element
+     *                  weighs 1 this is the maximum number of elements. It
+     *                  may be changed while the cache is in use, for example
+     *                  by a HeapPressureSizer
+     * weigher -> how much of maximumWeight each element takes up
+     * refreshNanos -> the age (since its last update) after which an element
+     *                 read through get(key, loader) is reloaded in the
+     *                 background by refreshExecutor, or Long.MAX_VALUE if
+     *                 elements are never refreshed
+     * timeout  -> the maximum amount of time an element is allowed to stay in
+     *             the cache without being accessed before being removed
+     *
+     * CacheObject Abstraction Functions
+     *
+     * key -> the key the value is stored under
+     * value -> a value/element stored in the cache
+     * weight -> how much of the cache's maximum weight the value takes up
+     * lastUpdated -> the time the value was most recently updated
+     * lastAccessed -> the time the value was most recently accessed
+     * deadline -> the time the value times out
+     */
+
+    /**
+     * Create a cache with a fixed capacity and a timeout value.
+     * Objects in the cache that have not been refreshed within the timeout period
+     * are removed from the cache.
+     *
+     * @param capacity the number of objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     */
+    public KeyedCache(int capacity, int timeout) {
+        this(capacity, timeout, new LruPolicy<>());
+    }
+
+    /**
+     * Create a cache with a fixed capacity, a timeout value and a policy that
+     * decides which object to remove when the cache is full.
+     * Objects in the cache that have not been refreshed within the timeout period
+     * are removed from the cache.
+     *
+     * @param capacity the number of objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     * @param policy   a new eviction policy that is not used by any other cache
+     */
+    public KeyedCache(int capacity, int timeout, EvictionPolicy<K> policy) {
+        this(capacity, timeout, v -> 1, policy);
+    }
+
+    /**
+     * Create a cache bounded by the total weight of its objects rather than
+     * their number, for example the estimated number of bytes they occupy.
+     * Objects in the cache that have not been refreshed within the timeout
+     * period are removed from the cache.
+     *
+     * @param maximumWeight the total weight of the objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     * @param weigher  computes the weight of each object
+     */
+    public KeyedCache(long maximumWeight, int timeout, Weigher<? super V> weigher) {
+        this(maximumWeight, timeout, weigher, new LruPolicy<>());
+    }
+
+    /**
+     * Create a cache bounded by the total weight of its objects, with a
+     * policy that decides which objects to remove when the cache is full.
+     * Objects in the cache that have not been refreshed within the timeout
+     * period are removed from the cache.
+     *
+     * @param maximumWeight the total weight of the objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     * @param weigher  computes the weight of each object
+     * @param policy   a new eviction policy that is not used by any other cache
+     */
+    public KeyedCache(long maximumWeight, int timeout, Weigher<? super V> weigher,
+                      EvictionPolicy<K> policy) {
+        if (maximumWeight < 0 || timeout < 0) {
+            throw new IllegalArgumentException("Negative capacity or timeout");
+        }
+        if (weigher == null || policy == null) {
+            throw new IllegalArgumentException("Weigher and policy cannot be null");
+        }
+
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.timeout = timeout;
+        this.timeoutNanos = timeout * 1000000000L;
+        this.data = new HashMap<>();
+        this.policy = policy;
+        this.loading = new ConcurrentHashMap<>();
+        this.expiry = new TimerWheel<>(0);
+    }
+
+    /**
+     * Create a cache with default capacity and timeout values.
+     */
+    public KeyedCache() {
+        this(DSIZE, DTIMEOUT);
+    }
+
+    /**
+     * Add a value to the cache.
+     * If the cache is then over capacity, remove the objects chosen by the
+     * eviction policy (by default the least recently accessed) until it is
+     * not. Update the value if the key is already in the cache.
+     *
+     * @param key the key to store the value under
+     * @param value the value to store in the cache
+     * @return true if the value was successfully stored, false otherwise
+     *         (including when value alone weighs more than the cache can
+     *         hold, or the eviction policy chose value itself)
+     */
+    public boolean put(K key, V value) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            expire();
+            return putLocked(key, value);
+        }
+    }
+
+    /**
+     * Add several values to the cache, taking the cache's lock and removing
+     * timed out values once for all of them. Values are stored in the
+     * iteration order of values, as if by put(key, value) for each.
+     *
+     * @param values the keys and the values to store under them
+     * @return the number of values stored
+     */
+    public int putAll(Map<? extends K, ? extends V> values) {
+        int stored = 0;
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            expire();
+            for (Map.Entry<? extends K, ? extends V> e : values.entrySet()) {
+                if (putLocked(e.getKey(), e.getValue())) {
+                    stored++;
+                }
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Retrieve a value from the cache.
+     *
+     * @param key the key of the object to be retrieved
+     * @return the value stored under key
+     * @throws NoSuchCacheElementException if the cache does not contain
+     *         a value under key
+     */
+    public V get(K key) throws NoSuchCacheElementException {
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            CacheObject<V> c = access(key);
+            if (c == null) {
+                throw new NoSuchCacheElementException();
+            }
+
+            return c.value;
+        }
+    }
+
+    /**
+     * Retrieve several values from the cache, taking the cache's lock and
+     * removing timed out values once for all of them. Each key found counts
+     * as an access, as in get(key).
+     *
+     * @param keys the keys of the objects to be retrieved
+     * @return the values found and the keys that were not, each in the order
+     *         they were requested, without duplicates
+     */
+    public GetAllResult<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> hits = new LinkedHashMap<>();
+        Set<K> misses = new LinkedHashSet<>();
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            expire();
+            for (K key : keys) {
+                if (hits.containsKey(key) || misses.contains(key)) {
+                    continue;
+                }
+
+                CacheObject<V> c = accessLive(key);
+                if (c == null) {
+                    misses.add(key);
+                } else {
+                    hits.put(key, c.value);
+                }
+            }
+        }
+        return new GetAllResult<>(hits, misses);
+    }
+
+    /**
+     * Retrieve a value from the cache, loading and storing it if it is not
+     * in the cache. If several threads miss on the same key at the same
+     * time, only one of them runs loader and all of them receive its
+     * result. The loader runs without holding the cache's lock, so other
+     * values can be read and stored while it runs.
+     * If refreshing is enabled and the value has not been updated for the
+     * refresh period, the cached value is returned immediately and loader
+     * runs in the background to update it.
+     *
+     * @param key the key of the object to be retrieved
+     * @param loader computes the value for key
+     * @return the value stored under key, from the cache or from loader;
+     *         null if loader returned null, in which case nothing is stored
+     * @throws RuntimeException if loader threw it, in which case nothing is
+     *         stored and every thread waiting on the same load throws it
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V cached = null;
+        boolean stale = false;
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            CacheObject<V> c = access(key);
+            if (c != null) {
+                cached = c.value;
+                stale = currentTime() - c.lastUpdated >= this.refreshNanos;
+            }
+        }
+
+        if (cached != null) {
+            if (stale) {
+                refresh(key, loader);
+            }
+            return cached;
+        }
+
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = this.loading.putIfAbsent(key, created);
+        if (inFlight == null) {
+            load(key, loader, created);
+            inFlight = created;
+        }
+
+        return join(inFlight);
+    }
+
+    /**
+     * Retrieve several values from the cache, loading the ones that are not
+     * in the cache with a single call to bulkLoader and storing them. The
+     * values are looked up as in getAll(keys) and the missing ones loaded
+     * as in loadAll(keys, bulkLoader).
+     *
+     * @param keys the keys of the objects to be retrieved
+     * @param bulkLoader computes the values for a set of keys, returning a
+     *                   map from keys to values that leaves out the keys
+     *                   that have no value
+     * @return the keys that have a value, from the cache or from
+     *         bulkLoader, and their values, in the order the keys were
+     *         requested
+     * @throws RuntimeException if bulkLoader threw it, in which case nothing
+     *         it would have loaded is stored
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys,
+                            Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        GetAllResult<K, V> cached = getAll(keys);
+        Map<K, V> loaded = loadAll(cached.misses(), bulkLoader);
+
+        Map<K, V> values = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = cached.hits().containsKey(key) ? cached.hits().get(key) : loaded.get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Load and store the values of keys that missed in the cache, such as
+     * the misses of getAll(keys), with a single call to bulkLoader. As in
+     * get(key, loader), a key that another thread is already loading is not
+     * loaded again but waits for that load, a value that was stored or
+     * found in the cache's other stores since the miss is used instead of
+     * loading it, and bulkLoader runs without holding the cache's lock.
+     *
+     * @param keys the keys of the values to load
+     * @param bulkLoader computes the values for a set of keys, returning a
+     *                   map from keys to values that leaves out the keys
+     *                   that have no value
+     * @return the keys that have a value and their values, in the order the
+     *         keys were requested
+     * @throws RuntimeException if bulkLoader, or the loader of another
+     *         thread this call waited for, threw it
+     */
+    public Map<K, V> loadAll(Collection<? extends K> keys,
+                             Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> claimed = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (futures.containsKey(key)) {
+                continue;
+            }
+
+            CompletableFuture<V> created = new CompletableFuture<>();
+            CompletableFuture<V> inFlight = this.loading.putIfAbsent(key, created);
+            if (inFlight == null) {
+                claimed.put(key, created);
+                inFlight = created;
+            }
+            futures.put(key, inFlight);
+        }
+
+        if (!claimed.isEmpty()) {
+            loadAll(claimed, bulkLoader);
+        }
+
+        Map<K, V> values = new LinkedHashMap<>();
+        for (Map.Entry<K, CompletableFuture<V>> e : futures.entrySet()) {
+            V value = join(e.getValue());
+            if (value != null) {
+                values.put(e.getKey(), value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Retrieve a value from the cache without blocking, loading and storing
+     * it on the common fork-join pool if it is not in the cache. Concurrent
+     * misses on the same key share a single load, as in get(key, loader).
+     *
+     * @param key the key of the object to be retrieved
+     * @param loader computes the value for key
+     * @return a future of the value stored under key, which completes
+     *         exceptionally if loader throws
+     */
+    public CompletableFuture<V> getAsync(K key, Function<? super K, ? extends V> loader) {
+        return getAsync(key, loader, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Retrieve a value from the cache without blocking, loading and storing
+     * it on executor if it is not in the cache. Concurrent misses on the
+     * same key share a single load, as in get(key, loader).
+     *
+     * @param key the key of the object to be retrieved
+     * @param loader computes the value for key
+     * @param executor runs loader
+     * @return a future of the value stored under key, which completes
+     *         exceptionally if loader throws
+     */
+    public CompletableFuture<V> getAsync(K key, Function<? super K, ? extends V> loader,
+                                         Executor executor) {
+        try {
+            return CompletableFuture.completedFuture(get(key));
+        } catch (NoSuchCacheElementException e) {
+            // load it below
+        }
+
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = this.loading.putIfAbsent(key, created);
+        if (inFlight == null) {
+            try {
+                executor.execute(() -> load(key, loader, created));
+            } catch (RuntimeException e) {
+                this.loading.remove(key, created);
+                created.completeExceptionally(e);
+            }
+            inFlight = created;
+        }
+
+        return inFlight.copy();
+    }
+
+    /**
+     * Serve values read through get(key, loader) that have not been updated
+     * for refreshAfter seconds from the cache while reloading them in the
+     * background, so that callers do not wait for a reload when the value
+     * is about to time out. Values are still removed once they have not
+     * been refreshed within the timeout period. Reloads run on the common
+     * fork-join pool.
+     *
+     * @param refreshAfter the duration (in seconds) after which a value is
+     *                     reloaded, which should be less than the timeout
+     * @throws IllegalArgumentException if refreshAfter is not positive
+     */
+    public void refreshAfterWrite(int refreshAfter) {
+        refreshAfterWrite(refreshAfter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Serve values read through get(key, loader) that have not been updated
+     * for refreshAfter seconds from the cache while reloading them on
+     * executor. Values are still removed once they have not been refreshed
+     * within the timeout period.
+     *
+     * @param refreshAfter the duration (in seconds) after which a value is
+     *                     reloaded, which should be less than the timeout
+     * @param executor runs the reloads
+     * @throws IllegalArgumentException if refreshAfter is not positive or
+     *         executor is null
+     */
+    public synchronized void refreshAfterWrite(int refreshAfter, Executor executor) {
+        if (refreshAfter <= 0 || executor == null) {
+            throw new IllegalArgumentException("Invalid refresh period or executor");
+        }
+
+        this.refreshNanos = refreshAfter * 1000000000L;
+        this.refreshExecutor = executor;
+    }
+
+    /**
+     * Update the last refresh time for the object stored under a key.
+     * Does not count as accessing the object.
+     *
+     * @param key the key of the object to "touch"
+     * @return true if successful and false otherwise
+     */
+    public boolean touch(K key) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            expire();
+            CacheObject<V> c = getIfLive(key);
+            if (c == null) {
+                return false;
+            }
+
+            refresh(c, currentTime());
+            return true;
+        }
+    }
+
+    /**
+     * Update the data held by and creation time of the object stored under
+     * a key. Does not count as accessing the object. If the new data weighs
+     * more than the old and the cache is then over capacity, the objects
+     * chosen by the eviction policy are removed until it is not.
+     *
+     * @param key the key of the object to update
+     * @param value the new data
+     * @return true if successful and false otherwise; if value alone weighs
+     *         more than the cache can hold, or the eviction policy chose the
+     *         updated object itself, the object is removed and the update
+     *         fails
+     */
+    public boolean update(K key, V value) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            CacheObject<V> c = this.data.get(key);
+            return c != null && replace(c, value);
+        }
+    }
+
+    /**
+     * Remove the objects stored under several keys from the cache, taking
+     * the cache's lock once for all of them, along with any copies kept
+     * outside it, such as in the second tier of a Cache. Loads of those
+     * keys that are in flight still store their result.
+     *
+     * @param keys the keys of the objects to remove; keys that are not in
+     *             the cache are ignored
+     */
+    public void invalidateAll(Collection<? extends K> keys) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            for (K key : keys) {
+                CacheObject<V> c = this.data.get(key);
+                if (c != null) {
+                    remove(c, RemovalCause.EXPLICIT);
+                }
+            }
+        }
+        invalidated(keys);
+    }
+
+    /**
+     * Remove every object from the cache, along with any copies kept
+     * outside it.
+     */
+    public void invalidateAll() {
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            for (CacheObject<V> c : new ArrayList<>(this.data.values())) {
+                remove(c, RemovalCause.EXPLICIT);
+            }
+        }
+        invalidated(null);
+    }
+
+    /**
+     * Get the total weight of the objects the cache can hold.
+     *
+     * @return the current maximum weight
+     */
+    public synchronized long maximumWeight() {
+        return this.maximumWeight;
+    }
+
+    /**
+     * Get the total weight of the objects in the cache, including any that
+     * have timed out but have not been removed yet.
+     *
+     * @return the current total weight
+     */
+    public synchronized long weightedSize() {
+        return this.weightedSize;
+    }
+
+    /**
+     * Change the total weight of the objects the cache can hold. If the cache
+     * is then over capacity, the objects chosen by the eviction policy are
+     * removed until it is not, before this returns.
+     *
+     * @param maximumWeight the new maximum weight
+     * @throws IllegalArgumentException if maximumWeight is negative
+     */
+    public void setMaximumWeight(long maximumWeight) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Negative capacity");
+        }
+
+        long start = System.nanoTime();
+        synchronized (this) {
+            lockAcquired(start);
+            this.maximumWeight = maximumWeight;
+            evictWhileOverCapacity();
+        }
+    }
+
+    /**
+     * Tell a listener about every value removed from the cache from now on,
+     * and why it was removed. The listener runs on a single background
+     * thread shared by all caches; if it falls more than a few thousand
+     * removals behind, further notifications are dropped rather than making
+     * the cache wait.
+     *
+     * @param listener the listener to add
+     */
+    public void addRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        addRemovalListener(listener, LISTENER_EXECUTOR);
+    }
+
+    /**
+     * Tell a listener about every value removed from the cache from now on,
+     * and why it was removed. The listener runs on executor, which should
+     * not run tasks on the calling thread since values are removed while
+     * holding the cache's lock. Notifications that executor rejects are
+     * dropped.
+     *
+     * @param listener the listener to add
+     * @param executor runs the listener
+     * @throws IllegalArgumentException if listener or executor is null
+     */
+    public void addRemovalListener(RemovalListener<? super K, ? super V> listener, Executor executor) {
+        if (listener == null || executor == null) {
+            throw new IllegalArgumentException("Listener and executor cannot be null");
+        }
+        this.listeners.add(new Registration<>(listener, executor));
+    }
+
+    /**
+     * Remove all values in the cache that have timed out, without waiting for
+     * the next put, get or touch to do so.
+     */
+    public synchronized void cleanUp() {
+        expire();
+    }
+
+    /**
+     * Periodically remove the values in the cache that have timed out on a
+     * background thread, so that memory held by values that are no longer
+     * requested is released even when the cache is idle.
+     *
+     * @param scheduler the executor to run the clean up on
+     * @param period the time between two clean ups
+     * @param unit the unit of period
+     * @return the scheduled clean up, which the caller cancels to stop it
+     */
+    public ScheduledFuture<?> scheduleCleanUp(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        return scheduler.scheduleAtFixedRate(this::cleanUp, period, period, unit);
+    }
+
+    /**
+     * Get the statistics of the cache: how many lookups hit and missed, how
+     * many values were put, updated, evicted and timed out, how long loads
+     * took and how long callers waited to acquire the cache's lock.
+     *
+     * @return a snapshot of the statistics since the cache was created
+     */
+    public CacheStats stats() {
+        return this.stats.snapshot();
+    }
+
+    /**
+     * Called with the cache's lock held after a value is evicted to make room
+     * for others, so it must not block. Does nothing; subclasses override it
+     * to keep the value elsewhere.
+     *
+     * @param key the key the value was stored under
+     * @param value the value that was evicted
+     * @param remaining the number of nanoseconds the value had left before
+     *                  timing out, negative if it already had
+     */
+    void evicted(K key, V value, long remaining) {
+    }
+
+    /**
+     * Called without holding the cache's lock after values are removed
+     * explicitly. Does nothing; subclasses override it to remove the
+     * copies they keep elsewhere, so that they are not found by later
+     * loads.
+     *
+     * @param keys the keys of the values removed, whether or not they were
+     *             in the cache, or null if every value was removed
+     */
+    void invalidated(Collection<? extends K> keys) {
+    }
+
+    /**
+     * Called without holding the cache's lock when a value is missing, before
+     * the loader runs. Finds nothing; subclasses override it to look for the
+     * value elsewhere and restore it.
+     *
+     * @param key the key of the missing value
+     * @return the value to return instead of calling the loader, or null
+     */
+    V loadMissing(K key) {
+        return null;
+    }
+
+    /**
+     * Copy the values in the cache that have not timed out, ordered from
+     * the least to the most recently accessed.
+     *
+     * @return the entries, with their times relative to now
+     */
+    List<Entry<K, V>> entries() {
+        List<Entry<K, V>> entries;
+        synchronized (this) {
+            expire();
+            long now = currentTime();
+            entries = new ArrayList<>(this.data.size());
+            for (CacheObject<V> c : this.data.values()) {
+                if (c.deadline >= now) {
+                    entries.add(new Entry<>(c.key, c.value, c.deadline - now, now - c.lastAccessed));
+                }
+            }
+        }
+        entries.sort(Comparator.comparingLong((Entry<K, V> e) -> e.idle).reversed());
+        return entries;
+    }
+
+    /**
+     * Store a value with the times it was recorded with elsewhere.
+     *
+     * @param key the key to store the value under
+     * @param value the value to store
+     * @param remaining the number of nanoseconds left before value times out
+     * @param idle the number of nanoseconds since value was accessed
+     * @return true if the value was stored, false otherwise
+     */
+    synchronized boolean restore(K key, V value, long remaining, long idle) {
+        expire();
+        if (!putLocked(key, value) && !this.data.containsKey(key)) {
+            return false;
+        }
+
+        CacheObject<V> c = this.data.get(key);
+        long now = currentTime();
+        refresh(c, now - this.timeoutNanos + Math.min(remaining, this.timeoutNanos));
+        c.lastAccessed = now - Math.max(idle, 0);
+        return true;
+    }
+
+    /**
+     * Add a value to the cache, or update it if the key is already in the
+     * cache. Must hold the cache's lock, and should have removed the values
+     * that timed out.
+     *
+     * @param key the key to store the value under
+     * @param value the value to store in the cache
+     * @return true if the value was stored, false otherwise
+     */
+    private boolean putLocked(K key, V value) {
+        CacheObject<V> existing = this.data.get(key);
+        if (existing != null) {
+            return replace(existing, value);
+        }
+
+        int weight = weigh(value);
+        if (weight > this.maximumWeight) {
+            return false;
+        }
+
+        CacheObject<V> val = new CacheObject<>(key, value, weight);
+        this.data.put(key, val);
+        this.weightedSize += weight;
+        this.policy.recordInsert(key);
+        this.expiry.schedule(val);
+        this.stats.recordPut();
+
+        evictWhileOverCapacity();
+        return this.data.get(key) == val;
+    }
+
+    /**
+     * Replace the data held by a value in the cache and refresh it. Must hold
+     * the cache's lock.
+     *
+     * @param c the value to update, must currently be in the cache
+     * @param value the new data
+     * @return true if the value is still in the cache afterwards
+     */
+    private boolean replace(CacheObject<V> c, V value) {
+        int weight = weigh(value);
+        if (weight > this.maximumWeight) {
+            remove(c, RemovalCause.SIZE);
+            return false;
+        }
+
+        if (c.value != value) {
+            notifyRemoval(c.key, c.value, RemovalCause.REPLACED);
+        }
+        this.weightedSize += weight - c.weight;
+        c.value = value;
+        c.weight = weight;
+        refresh(c, currentTime());
+        this.stats.recordUpdate();
+
+        evictWhileOverCapacity();
+        return this.data.get(c.key) == c;
+    }
+
+    /**
+     * Record how long a caller waited to acquire the cache's lock.
+     *
+     * @param start the value of System.nanoTime() before the caller tried
+     *              to acquire the lock
+     */
+    private void lockAcquired(long start) {
+        this.stats.recordLockWait(System.nanoTime() - start);
+    }
+
+    /**
+     * Call a loader, recording how long it took.
+     *
+     * @param key the key of the value to load
+     * @param loader computes the value for key
+     * @return the value loader returned
+     */
+    private V callLoader(K key, Function<? super K, ? extends V> loader) {
+        long start = System.nanoTime();
+        try {
+            V value = loader.apply(key);
+            this.stats.recordLoadSuccess(System.nanoTime() - start);
+            return value;
+        } catch (RuntimeException | Error e) {
+            this.stats.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Call a bulk loader, recording how long it took as a single load.
+     *
+     * @param keys the keys of the values to load
+     * @param bulkLoader computes the values for a set of keys
+     * @return the values bulkLoader returned, by key
+     */
+    private Map<? extends K, ? extends V> callBulkLoader(
+            Set<K> keys, Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        long start = System.nanoTime();
+        try {
+            Map<? extends K, ? extends V> values = bulkLoader.apply(Collections.unmodifiableSet(keys));
+            this.stats.recordLoadSuccess(System.nanoTime() - start);
+            return values == null ? Collections.emptyMap() : values;
+        } catch (RuntimeException | Error e) {
+            this.stats.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for a load and return its value.
+     *
+     * @param future the load
+     * @return the value it loaded, or null
+     * @throws RuntimeException if the load threw it
+     */
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reload a value in the background, unless it is already being loaded.
+     * If the reload fails the cached value is kept until it times out.
+     *
+     * @param key the key of the value
+     * @param loader computes the value for key
+     */
+    private void refresh(K key, Function<? super K, ? extends V> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        if (this.loading.putIfAbsent(key, created) != null) {
+            return;
+        }
+
+        Runnable reload = () -> {
+            try {
+                V value = callLoader(key, loader);
+                if (value != null && !update(key, value)) {
+                    put(key, value);
+                }
+                created.complete(value);
+            } catch (RuntimeException | Error e) {
+                created.completeExceptionally(e);
+            } finally {
+                this.loading.remove(key, created);
+            }
+        };
+
+        try {
+            this.refreshExecutor.execute(reload);
+        } catch (RuntimeException e) {
+            this.loading.remove(key, created);
+            created.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Load values that missed, store them and hand each to every caller
+     * waiting on its future. Must not hold the cache's lock, and must own
+     * the slot in loading of every future in claimed.
+     *
+     * @param claimed the keys of the values to load and the futures that
+     *                waiting callers share
+     * @param bulkLoader computes the values for a set of keys
+     */
+    private void loadAll(Map<K, CompletableFuture<V>> claimed,
+                         Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        try {
+            // other loads may have finished between our misses and claiming
+            // the slots
+            Set<K> missing = new LinkedHashSet<>();
+            for (Map.Entry<K, CompletableFuture<V>> e : claimed.entrySet()) {
+                V value = peek(e.getKey());
+                if (value == null) {
+                    value = loadMissing(e.getKey());
+                }
+                if (value == null) {
+                    missing.add(e.getKey());
+                } else {
+                    e.getValue().complete(value);
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                Map<? extends K, ? extends V> loaded = callBulkLoader(missing, bulkLoader);
+                Map<K, V> found = new LinkedHashMap<>();
+                for (K key : missing) {
+                    V value = loaded.get(key);
+                    if (value != null) {
+                        found.put(key, value);
+                    }
+                }
+                putAll(found);
+                for (K key : missing) {
+                    claimed.get(key).complete(found.get(key));
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            for (CompletableFuture<V> future : claimed.values()) {
+                future.completeExceptionally(e);
+            }
+        } finally {
+            for (Map.Entry<K, CompletableFuture<V>> e : claimed.entrySet()) {
+                this.loading.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Load a value that missed, store it and hand it to every caller waiting
+     * on future. Must not hold the cache's lock, and must own future's slot
+     * in loading.
+     *
+     * @param key the key of the value
+     * @param loader computes the value for key
+     * @param future the future that waiting callers share
+     */
+    private void load(K key, Function<? super K, ? extends V> loader,
+                      CompletableFuture<V> future) {
+        try {
+            // another load may have finished between our miss and claiming
+            // the slot
+            V value = peek(key);
+            if (value == null) {
+                value = loadMissing(key);
+            }
+            if (value == null) {
+                value = callLoader(key, loader);
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            future.complete(value);
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+        } finally {
+            this.loading.remove(key, future);
+        }
+    }
+
+    /**
+     * Remove the values chosen by the eviction policy until the total weight
+     * of the cache is within its capacity.
+     */
+    private void evictWhileOverCapacity() {
+        while (this.weightedSize > this.maximumWeight) {
+            if (!evict()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove the value the eviction policy chooses, if one exists.
+     *
+     * @return true if a value was removed, false otherwise
+     */
+    private boolean evict() {
+        K victim = this.policy.victim();
+        if (victim == null) {
+            return false;
+        }
+
+        CacheObject<V> c = this.data.get(victim);
+        remove(c, RemovalCause.SIZE);
+        evicted(c.key, c.value, c.deadline - currentTime());
+        return true;
+    }
+
+    /**
+     * Look up a value without recording a request for it.
+     *
+     * @param key the key of the value
+     * @return the value stored under key, or null if there is none or it
+     *         has timed out
+     */
+    private synchronized V peek(K key) {
+        CacheObject<V> c = getIfLive(key);
+        return c == null ? null : c.value;
+    }
+
+    /**
+     * Weigh a value.
+     *
+     * @param value the value to weigh
+     * @return the weight of value
+     * @throws IllegalArgumentException if the weigher returns a negative weight
+     */
+    private int weigh(V value) {
+        int weight = this.weigher.weigh(value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight");
+        }
+        return weight;
+    }
+
+    /**
+     * Remove the values in the cache that have not been refreshed within
+     * the timeout period and whose timer bucket has been passed. Only the
+     * buckets passed since the previous call are visited.
+     */
+    private void expire() {
+        this.expiry.advance(currentTime(), this::expired);
+    }
+
+    /**
+     * Look up a value and record that it was accessed. Must hold the cache's
+     * lock.
+     *
+     * @param key the key of the value
+     * @return the value stored under key, or null if there is none or it
+     *         has timed out
+     */
+    private CacheObject<V> access(K key) {
+        expire();
+        return accessLive(key);
+    }
+
+    /**
+     * Look up a value and record that it was accessed, without first
+     * removing the values whose timer bucket has been passed. Must hold the
+     * cache's lock.
+     *
+     * @param key the key of the value
+     * @return the value stored under key, or null if there is none or it
+     *         has timed out
+     */
+    private CacheObject<V> accessLive(K key) {
+        CacheObject<V> c = getIfLive(key);
+        if (c != null) {
+            c.lastAccessed = currentTime();
+            this.policy.recordAccess(key);
+            this.stats.recordHit();
+        } else {
+            this.stats.recordMiss();
+        }
+        return c;
+    }
+
+    /**
+     * Look up a value that has not timed out, removing it if it has.
+     *
+     * @param key the key of the value
+     * @return the value stored under key, or null if there is none or it
+     *         has timed out
+     */
+    private CacheObject<V> getIfLive(K key) {
+        CacheObject<V> c = this.data.get(key);
+        if (c != null && c.deadline < currentTime()) {
+            expired(c);
+            return null;
+        }
+        return c;
+    }
+
+    /**
+     * Remove a value that timed out.
+     *
+     * @param c the value to remove, must currently be in the cache
+     */
+    private void expired(CacheObject<V> c) {
+        remove(c, RemovalCause.EXPIRED);
+        this.stats.recordExpiration();
+    }
+
+    /**
+     * Record that a value was refreshed and move it to the matching bucket
+     * of the timer wheel.
+     *
+     * @param c the value that was refreshed, must currently be in the cache
+     * @param now the current time
+     */
+    private void refresh(CacheObject<V> c, long now) {
+        c.lastUpdated = now;
+        c.deadline = now + this.timeoutNanos;
+        this.expiry.reschedule(c);
+    }
+
+    /**
+     * Remove a value from the index, the eviction policy and the timer wheel,
+     * count it if it was evicted, and tell the removal listeners.
+     *
+     * @param c the value to remove, must currently be in the cache
+     * @param cause why the value is removed
+     */
+    private void remove(CacheObject<V> c, RemovalCause cause) {
+        this.data.remove(c.key);
+        this.weightedSize -= c.weight;
+        if (cause == RemovalCause.SIZE) {
+            this.policy.recordEviction(c.key);
+            this.stats.recordEviction();
+        } else {
+            this.policy.recordRemoval(c.key);
+        }
+        this.expiry.deschedule(c);
+        notifyRemoval(c.key, c.value, cause);
+    }
+
+    /**
+     * Hand a removed value to every removal listener's executor. Does not
+     * wait for the listeners to run.
+     *
+     * @param key the key the value was stored under
+     * @param value the value that was removed
+     * @param cause why the value was removed
+     */
+    private void notifyRemoval(K key, V value, RemovalCause cause) {
+        for (Registration<? super K, ? super V> r : this.listeners) {
+            try {
+                r.executor.execute(() -> r.deliver(key, value, cause));
+            } catch (RejectedExecutionException e) {
+                // the listener is behind; drop the notification rather than
+                // block the caller
+            }
+        }
+    }
+
+    /**
+     * Get the time since the cache was created.
+     *
+     * @return the number of nanoseconds since the cache was created.
+     */
+    private long currentTime() {
+        return System.nanoTime() - t0;
+    }
+
+    /**
+     * A value copied out of the cache with how long it has left before it
+     * times out and how long ago it was accessed
+     */
+    static final class Entry<K, V> {
+        final K key;
+        final V value;
+        final long remaining;
+        final long idle;
+
+        /**
+         * Create an Entry
+         *
+         * @param key the key the value is stored under
+         * @param value the value
+         * @param remaining the number of nanoseconds left before value times out
+         * @param idle the number of nanoseconds since value was accessed
+         */
+        private Entry(K key, V value, long remaining, long idle) {
+            this.key = key;
+            this.value = value;
+            this.remaining = remaining;
+            this.idle = idle;
+        }
+    }
+
+    /**
+     * A removal listener and the executor it runs on
+     */
+    private static final class Registration<K, V> {
+        private final RemovalListener<K, V> listener;
+        private final Executor executor;
+
+        /**
+         * Create a Registration
+         *
+         * @param listener the listener
+         * @param executor runs the listener
+         */
+        private Registration(RemovalListener<K, V> listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        /**
+         * Run the listener, so that an exception it throws does not kill
+         * the executor's thread.
+         *
+         * @param key the key the value was stored under
+         * @param value the value that was removed
+         * @param cause why the value was removed
+         */
+        private void deliver(K key, V value, RemovalCause cause) {
+            try {
+                this.listener.onRemoval(key, value, cause);
+            } catch (RuntimeException e) {
+                // a failing listener does not affect the cache or other listeners
+            }
+        }
+    }
+
+    /**
+     * An object that holds the values in the cache along with their key,
+     * associated metadata (weight, time of last access and last update) and
+     * its links in the timer wheel
+     */
+    private class CacheObject<S extends V> extends TimerWheel.Node<CacheObject<V>> {
+        private final K key;
+        private V value;
+        private int weight;
+        private long lastUpdated;
+        private long lastAccessed;
+
+        /**
+         * Create a CacheObject
+         *
+         * @param key the key to store value under
+         * @param value the value to store
+         * @param weight the weight of value
+         */
+        private CacheObject(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.lastUpdated = currentTime();
+            this.lastAccessed = this.lastUpdated;
+            this.deadline = this.lastUpdated + timeoutNanos;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package cpen221.mp3.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in buckets whose bounds are powers of two nanoseconds.
+ * Recording is a single LongAdder increment, so many threads can record at
+ * once without contending; the price is that percentiles are only known to
+ * within a factor of two.
+ */
+class LatencyHistogram {
+
+    /* bucket i counts durations d with 2^(i-1) <= d < 2^i, bucket 0 counts 0 */
+    static final int BUCKETS = 64;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+    /**
+     * LatencyHistogram Rep Invariants
+     *
+     * counts.length = BUCKETS and no element of counts is null
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * LatencyHistogram Abstraction Functions
+     *
+     * counts[i] -> the number of durations recorded that are at least
+     *              2^(i-1) and less than 2^i nanoseconds
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * counts is never modified after construction and its elements are
+     * LongAdders, which can be incremented and summed from any thread.
+     * A snapshot taken while durations are recorded may miss some of them.
+     */
+
+    /**
+     * Create an empty LatencyHistogram.
+     */
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Count a duration.
+     *
+     * @param nanos the duration in nanoseconds; negative durations (from
+     *              a clock going backwards) count as 0
+     */
+    void record(long nanos) {
+        counts[bucket(nanos)].increment();
+    }
+
+    /**
+     * @return the number of durations recorded in each bucket
+     */
+    long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Find the bucket a duration belongs in.
+     *
+     * @param nanos the duration in nanoseconds
+     * @return the index of its bucket
+     */
+    static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /**
+     * Estimate a percentile of the durations counted in a snapshot.
+     *
+     * @param snapshot the counts returned by snapshot()
+     * @param quantile the fraction of durations that are at most the
+     *                 result, between 0 and 1
+     * @return the upper bound (in nanoseconds) of the bucket holding the
+     *         percentile, or 0 if no durations were recorded
+     */
+    static long percentile(long[] snapshot, double quantile) {
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return i == 0 ? 0 : (1L << i) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+}
@@ -0,0 +1,140 @@
+package cpen221.mp3.cache;
+
+import java.util.HashMap;
+
+/**
+ * Evicts the value requested the fewest times since it was inserted, and
+ * among those the least recently requested one.
+ *
+ * Values are kept in buckets of equal request count, and the buckets in a
+ * list ordered by count, so that recording a request (which moves a value
+ * to the next bucket) and finding the victim (the oldest value of the first
+ * bucket) both take constant time.
+ *
+ * Counts never decay, so values that were popular long ago can keep newer
+ * popular values out; WTinyLfuPolicy ages its counts to avoid this.
+ *
+ * @param <K> the type of the identifiers of the cached values
+ */
+public class LfuPolicy<K> implements EvictionPolicy<K> {
+
+    private final HashMap<K, Node<K>> nodes = new HashMap<>();
+    private final Bucket<K> buckets = new Bucket<>(0);
+
+    /**
+     * LfuPolicy Rep Invariants
+     *
+     * nodes does not contain null values and node.key equals its key in nodes
+     * buckets is the sentinel of a circular doubly-linked list of buckets
+     *     with strictly increasing count, none of which is empty
+     * every node of nodes is in the items list of exactly one bucket, which
+     *     is node.bucket
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * LfuPolicy Abstraction Functions
+     *
+     * nodes -> the identifiers of the values in the cache
+     * buckets -> the values grouped by the number of times they have been
+     *            inserted or requested, fewest first; within a bucket, from
+     *            least to most recently requested
+     */
+
+    @Override
+    public void recordInsert(K key) {
+        Node<K> node = new Node<>(key);
+        nodes.put(key, node);
+        moveTo(node, buckets, 1);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            return;
+        }
+
+        Bucket<K> current = node.bucket;
+        int count = current.count == Integer.MAX_VALUE ? current.count : current.count + 1;
+        node.unlink();
+        moveTo(node, current, count);
+        removeIfEmpty(current);
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node != null) {
+            node.unlink();
+            removeIfEmpty(node.bucket);
+        }
+    }
+
+    @Override
+    public K victim() {
+        if (buckets.next == buckets) {
+            return null;
+        }
+        return buckets.next.items.next.key;
+    }
+
+    /**
+     * Put a node in the bucket for a count, creating the bucket if needed.
+     *
+     * @param node a node that is not in any bucket
+     * @param previous the bucket (or the sentinel) with the largest count
+     *                 less than or equal to count
+     * @param count the count of the bucket to put node in
+     */
+    private void moveTo(Node<K> node, Bucket<K> previous, int count) {
+        Bucket<K> target = previous.count == count ? previous : previous.next;
+        if (target == buckets || target.count != count) {
+            target = new Bucket<>(count);
+            target.prev = previous;
+            target.next = previous.next;
+            previous.next.prev = target;
+            previous.next = target;
+        }
+
+        node.bucket = target;
+        node.linkBefore(target.items);
+    }
+
+    /**
+     * Unlink a bucket that no longer holds any value.
+     *
+     * @param bucket a bucket other than the sentinel
+     */
+    private void removeIfEmpty(Bucket<K> bucket) {
+        if (bucket.items.next == bucket.items) {
+            bucket.prev.next = bucket.next;
+            bucket.next.prev = bucket.prev;
+        }
+    }
+
+    /**
+     * An identifier together with the bucket it is in.
+     */
+    private static final class Node<K> extends LruPolicy.Node<K> {
+        private Bucket<K> bucket;
+
+        private Node(K key) {
+            super(key);
+        }
+    }
+
+    /**
+     * The values that have been requested a given number of times.
+     */
+    private static final class Bucket<K> {
+        private final int count;
+        private final LruPolicy.Node<K> items = new LruPolicy.Node<>(null);
+        private Bucket<K> prev = this;
+        private Bucket<K> next = this;
+
+        private Bucket(int count) {
+            this.count = count;
+        }
+    }
+
+}
@@ -0,0 +1,512 @@
+package cpen221.mp3.cache;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * A cache of values stored under primitive long keys, such as page IDs.
+ * Keys are never boxed: they are kept in an open-addressing hash table with
+ * linear probing, and entries are kept in parallel arrays linked by index in
+ * access order (for eviction) and write order (for timeouts), so that storing
+ * or reading a value allocates nothing.
+ *
+ * @param <V> the type of the values
+ */
+public class LongKeyCache<V> {
+
+    /* the default cache size is 32 objects */
+    private static final int DSIZE = 32;
+
+    /* the default timeout value is 3600s */
+    private static final int DTIMEOUT = 3600;
+
+    /* the largest capacity, so that the table stays an int-indexed array */
+    private static final int MAX_CAPACITY = 1 << 29;
+
+    /* marks an empty slot of the table and the end of the free list */
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private final int timeout;
+    private final long timeoutNanos;
+
+    private final int[] table;
+    private final int shift;
+
+    private final long[] keys;
+    private final Object[] values;
+    private final long[] lastUpdated;
+    private final int[] slots;
+    private final int[] prevAccess;
+    private final int[] nextAccess;
+    private final int[] prevWrite;
+    private final int[] nextWrite;
+    private final int head;
+    private int free;
+    private int size;
+
+    private final StatsCounter stats = new StatsCounter();
+    private final long t0 = System.nanoTime();
+
+    /**
+     * LongKeyCache Rep Invariants
+     *
+     * 0 <= capacity <= MAX_CAPACITY
+     * timeout >= 0
+     * timeoutNanos = timeout * 10^9
+     * table.length is a power of two of at least 2 * capacity and
+     *     table.length = 2^(64 - shift)
+     * every slot of table is NONE or the index of an entry in [0, capacity),
+     *     and each entry in use is in exactly one slot
+     * an entry e in slot s is reached by probing from home(keys[e]) without
+     *     crossing an empty slot, and slots[e] = s
+     * keys, values, lastUpdated, slots and the link arrays have capacity + 1
+     *     elements; index head = capacity is the sentinel of both lists
+     * prevAccess/nextAccess and prevWrite/nextWrite link the entries in use
+     *     into two circular lists through head
+     * following nextWrite from head visits entries in non-decreasing order
+     *     of lastUpdated
+     * free starts a list through nextAccess of the entries not in use
+     * size is the number of entries in use and size <= capacity
+     * values[e] is not null for every entry e in use
+     * t0 >= 0
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * LongKeyCache Abstraction Functions
+     *
+     * table -> an index from the key of every element stored in the cache to
+     *          the entry that holds it
+     * keys, values -> the key and value of each element in the cache
+     * lastUpdated -> the time each element was most recently updated
+     * nextAccess from head -> the elements from least recently accessed to
+     *                         most recently accessed
+     * nextWrite from head -> the elements from least recently updated to
+     *                        most recently updated
+     * capacity -> the maximum number of elements allowed in the cache at any
+     *             given instant
+     * timeout  -> the maximum amount of time an element is allowed to stay in
+     *             the cache without being refreshed before being removed
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * This class is thread-safe because every method that reads or writes
+     * the arrays is synchronized on the cache, and loaders passed to
+     * get(id, loader) run without holding the lock.
+     */
+
+    /**
+     * Create a cache with a fixed capacity and a timeout value.
+     * Objects in the cache that have not been refreshed within the timeout period
+     * are removed from the cache. When the cache is full the least recently
+     * accessed object is removed to make room.
+     *
+     * @param capacity the number of objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     * @throws IllegalArgumentException if capacity or timeout is negative, or
+     *         capacity is more than 2^29
+     */
+    public LongKeyCache(int capacity, int timeout) {
+        if (capacity < 0 || timeout < 0) {
+            throw new IllegalArgumentException("Negative capacity or timeout");
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity cannot exceed " + MAX_CAPACITY);
+        }
+
+        this.capacity = capacity;
+        this.timeout = timeout;
+        this.timeoutNanos = timeout * 1000000000L;
+
+        int tableSize = Integer.highestOneBit(Math.max(2 * capacity - 1, 1)) << 1;
+        this.table = new int[tableSize];
+        Arrays.fill(this.table, NONE);
+        this.shift = 64 - Integer.numberOfTrailingZeros(tableSize);
+
+        this.keys = new long[capacity + 1];
+        this.values = new Object[capacity + 1];
+        this.lastUpdated = new long[capacity + 1];
+        this.slots = new int[capacity + 1];
+        this.prevAccess = new int[capacity + 1];
+        this.nextAccess = new int[capacity + 1];
+        this.prevWrite = new int[capacity + 1];
+        this.nextWrite = new int[capacity + 1];
+
+        this.head = capacity;
+        this.prevAccess[head] = head;
+        this.nextAccess[head] = head;
+        this.prevWrite[head] = head;
+        this.nextWrite[head] = head;
+
+        for (int e = 0; e < capacity; e++) {
+            this.nextAccess[e] = e + 1 < capacity ? e + 1 : NONE;
+        }
+        this.free = capacity > 0 ? 0 : NONE;
+    }
+
+    /**
+     * Create a cache with default capacity and timeout values.
+     */
+    public LongKeyCache() {
+        this(DSIZE, DTIMEOUT);
+    }
+
+    /**
+     * Add a value to the cache.
+     * If the cache is full then remove the least recently accessed object to
+     * make room for the new object. Update the value if the key is already
+     * in the cache.
+     *
+     * @param id the key to store the value under
+     * @param value the value to store in the cache, not null
+     * @return true if the value was successfully stored, false otherwise
+     *         (when the cache cannot hold any object)
+     */
+    public synchronized boolean put(long id, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+
+        long now = currentTime();
+        expire(now);
+        int e = find(id);
+        if (e != NONE) {
+            replace(e, value, now);
+            return true;
+        }
+
+        if (this.size == this.capacity) {
+            if (this.size == 0) {
+                return false;
+            }
+            remove(this.nextAccess[head]);
+            this.stats.recordEviction();
+        }
+
+        e = this.free;
+        this.free = this.nextAccess[e];
+        this.keys[e] = id;
+        this.values[e] = value;
+        this.lastUpdated[e] = now;
+        insertIntoTable(e);
+        linkLast(e, this.prevAccess, this.nextAccess);
+        linkLast(e, this.prevWrite, this.nextWrite);
+        this.size++;
+        this.stats.recordPut();
+        return true;
+    }
+
+    /**
+     * Retrieve a value from the cache.
+     *
+     * @param id the key of the object to be retrieved
+     * @return the value stored under id
+     * @throws NoSuchCacheElementException if the cache does not contain
+     *         a value under id
+     */
+    public synchronized V get(long id) throws NoSuchCacheElementException {
+        int e = access(id);
+        if (e == NONE) {
+            throw new NoSuchCacheElementException();
+        }
+        return value(e);
+    }
+
+    /**
+     * Retrieve a value from the cache, loading and storing it if it is not
+     * in the cache. The loader runs without holding the cache's lock, so
+     * several threads that miss on the same key at the same time may each
+     * run it; the value stored last is kept.
+     *
+     * @param id the key of the object to be retrieved
+     * @param loader computes the value for id
+     * @return the value stored under id, from the cache or from loader;
+     *         null if loader returned null, in which case nothing is stored
+     */
+    public V get(long id, LongFunction<? extends V> loader) {
+        synchronized (this) {
+            int e = access(id);
+            if (e != NONE) {
+                return value(e);
+            }
+        }
+
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = loader.apply(id);
+            this.stats.recordLoadSuccess(System.nanoTime() - start);
+        } catch (RuntimeException | Error ex) {
+            this.stats.recordLoadFailure(System.nanoTime() - start);
+            throw ex;
+        }
+
+        if (value != null) {
+            put(id, value);
+        }
+        return value;
+    }
+
+    /**
+     * Update the last refresh time for the object stored under a key.
+     * Does not count as accessing the object.
+     *
+     * @param id the key of the object to "touch"
+     * @return true if successful and false otherwise
+     */
+    public synchronized boolean touch(long id) {
+        long now = currentTime();
+        expire(now);
+        int e = find(id);
+        if (e == NONE) {
+            return false;
+        }
+
+        this.lastUpdated[e] = now;
+        moveToBack(e, this.prevWrite, this.nextWrite);
+        return true;
+    }
+
+    /**
+     * Update the data held by and creation time of the object stored under
+     * a key. Does not count as accessing the object.
+     *
+     * @param id the key of the object to update
+     * @param value the new data, not null
+     * @return true if successful and false otherwise
+     */
+    public synchronized boolean update(long id, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+
+        long now = currentTime();
+        expire(now);
+        int e = find(id);
+        if (e == NONE) {
+            return false;
+        }
+
+        replace(e, value, now);
+        return true;
+    }
+
+    /**
+     * Remove all values in the cache that have timed out, without waiting for
+     * the next put, get or touch to do so.
+     */
+    public synchronized void cleanUp() {
+        expire(currentTime());
+    }
+
+    /**
+     * Get the number of values in the cache, including any that have timed
+     * out but have not been removed yet.
+     *
+     * @return the number of values in the cache
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the statistics of the cache: how many lookups hit and missed, how
+     * many values were put, updated, evicted and timed out, and how long
+     * loads took.
+     *
+     * @return a snapshot of the statistics since the cache was created
+     */
+    public CacheStats stats() {
+        return this.stats.snapshot();
+    }
+
+    /**
+     * Look up a value and record that it was accessed.
+     *
+     * @param id the key of the value
+     * @return the entry holding the value stored under id, or NONE if there
+     *         is none or it has timed out
+     */
+    private int access(long id) {
+        expire(currentTime());
+        int e = find(id);
+        if (e == NONE) {
+            this.stats.recordMiss();
+            return NONE;
+        }
+
+        moveToBack(e, this.prevAccess, this.nextAccess);
+        this.stats.recordHit();
+        return e;
+    }
+
+    /**
+     * Replace the value held by an entry and refresh it.
+     *
+     * @param e the entry, must be in use
+     * @param value the new value
+     * @param now the current time
+     */
+    private void replace(int e, V value, long now) {
+        this.values[e] = value;
+        this.lastUpdated[e] = now;
+        moveToBack(e, this.prevWrite, this.nextWrite);
+        this.stats.recordUpdate();
+    }
+
+    /**
+     * Remove the entries that have not been refreshed within the timeout
+     * period. Since entries are kept in the order they were updated, only
+     * the entries that are removed and the first one that is not are visited.
+     *
+     * @param now the current time
+     */
+    private void expire(long now) {
+        int e = this.nextWrite[head];
+        while (e != head && this.lastUpdated[e] + this.timeoutNanos < now) {
+            int next = this.nextWrite[e];
+            remove(e);
+            this.stats.recordExpiration();
+            e = next;
+        }
+    }
+
+    /**
+     * Find the entry holding a key.
+     *
+     * @param id the key
+     * @return the entry holding id, or NONE if there is none
+     */
+    private int find(long id) {
+        int mask = this.table.length - 1;
+        for (int s = home(id); ; s = (s + 1) & mask) {
+            int e = this.table[s];
+            if (e == NONE || this.keys[e] == id) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * Place an entry in the first empty slot at or after the home slot of its
+     * key. The table is at most half full, so there is always one.
+     *
+     * @param e the entry, whose key is not in the table
+     */
+    private void insertIntoTable(int e) {
+        int mask = this.table.length - 1;
+        int s = home(this.keys[e]);
+        while (this.table[s] != NONE) {
+            s = (s + 1) & mask;
+        }
+        this.table[s] = e;
+        this.slots[e] = s;
+    }
+
+    /**
+     * Remove an entry from the table, both lists and return it to the free
+     * list. Entries probed past the emptied slot are shifted back into it,
+     * so the table never holds tombstones.
+     *
+     * @param e the entry, must be in use
+     */
+    private void remove(int e) {
+        int mask = this.table.length - 1;
+        int hole = this.slots[e];
+        for (int s = (hole + 1) & mask; this.table[s] != NONE; s = (s + 1) & mask) {
+            int moved = this.table[s];
+            // moved may fill the hole only if the hole is between its home
+            // slot and s
+            if (((s - home(this.keys[moved])) & mask) >= ((s - hole) & mask)) {
+                this.table[hole] = moved;
+                this.slots[moved] = hole;
+                hole = s;
+            }
+        }
+        this.table[hole] = NONE;
+
+        unlink(e, this.prevAccess, this.nextAccess);
+        unlink(e, this.prevWrite, this.nextWrite);
+        this.values[e] = null;
+        this.nextAccess[e] = this.free;
+        this.free = e;
+        this.size--;
+    }
+
+    /**
+     * Find the slot where probing for a key starts, from the high bits of
+     * the key multiplied by the golden ratio, so that consecutive page IDs
+     * spread over the table.
+     *
+     * @param id the key
+     * @return the home slot of id
+     */
+    private int home(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> this.shift);
+    }
+
+    /**
+     * Add an entry to the back of a list.
+     *
+     * @param e the entry, not currently in the list
+     * @param prev the backward links of the list
+     * @param next the forward links of the list
+     */
+    private void linkLast(int e, int[] prev, int[] next) {
+        int last = prev[head];
+        prev[e] = last;
+        next[e] = head;
+        next[last] = e;
+        prev[head] = e;
+    }
+
+    /**
+     * Remove an entry from a list.
+     *
+     * @param e the entry, currently in the list
+     * @param prev the backward links of the list
+     * @param next the forward links of the list
+     */
+    private void unlink(int e, int[] prev, int[] next) {
+        next[prev[e]] = next[e];
+        prev[next[e]] = prev[e];
+    }
+
+    /**
+     * Move an entry to the back of a list.
+     *
+     * @param e the entry, currently in the list
+     * @param prev the backward links of the list
+     * @param next the forward links of the list
+     */
+    private void moveToBack(int e, int[] prev, int[] next) {
+        if (prev[head] != e) {
+            unlink(e, prev, next);
+            linkLast(e, prev, next);
+        }
+    }
+
+    /**
+     * Get the value held by an entry.
+     *
+     * @param e the entry, must be in use
+     * @return the value of e
+     */
+    @SuppressWarnings("unchecked")
+    private V value(int e) {
+        return (V) this.values[e];
+    }
+
+    /**
+     * Get the time since the cache was created.
+     *
+     * @return the number of nanoseconds since the cache was created.
+     */
+    private long currentTime() {
+        return System.nanoTime() - t0;
+    }
+
+}
@@ -0,0 +1,102 @@
+package cpen221.mp3.cache;
+
+import java.util.HashMap;
+
+/**
+ * Evicts the least recently requested value.
+ *
+ * @param <K> the type of the identifiers of the cached values
+ */
+public class LruPolicy<K> implements EvictionPolicy<K> {
+
+    private final HashMap<K, Node<K>> nodes = new HashMap<>();
+    private final Node<K> accessOrder = new Node<>(null);
+
+    /**
+     * LruPolicy Rep Invariants
+     *
+     * nodes does not contain null values and node.key equals its key in nodes
+     * accessOrder is a sentinel of a circular doubly-linked list that holds
+     *     exactly the values of nodes, each once
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * LruPolicy Abstraction Functions
+     *
+     * nodes -> the identifiers of the values in the cache
+     * accessOrder -> the values ordered from least recently requested
+     *                (accessOrder.next) to most recently requested
+     *                (accessOrder.prev), where inserting counts as a request
+     */
+
+    @Override
+    public void recordInsert(K key) {
+        Node<K> node = new Node<>(key);
+        nodes.put(key, node);
+        node.linkBefore(accessOrder);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        Node<K> node = nodes.get(key);
+        if (node != null && accessOrder.prev != node) {
+            node.unlink();
+            node.linkBefore(accessOrder);
+        }
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node != null) {
+            node.unlink();
+        }
+    }
+
+    @Override
+    public K victim() {
+        return accessOrder.next.key;
+    }
+
+    /**
+     * An element of a circular doubly-linked list of identifiers.
+     */
+    static class Node<K> {
+        final K key;
+        Node<K> prev = this;
+        Node<K> next = this;
+
+        /**
+         * Create a Node that is not linked to any other node.
+         *
+         * @param key the identifier it holds, or null for a sentinel
+         */
+        Node(K key) {
+            this.key = key;
+        }
+
+        /**
+         * Insert this node just before another, which for a sentinel means
+         * at the back of its list.
+         *
+         * @param successor a linked node or sentinel
+         */
+        void linkBefore(Node<K> successor) {
+            this.prev = successor.prev;
+            this.next = successor;
+            successor.prev.next = this;
+            successor.prev = this;
+        }
+
+        /**
+         * Remove this node from its list.
+         */
+        void unlink() {
+            this.prev.next = this.next;
+            this.next.prev = this.prev;
+            this.prev = this;
+            this.next = this;
+        }
+    }
+
+}
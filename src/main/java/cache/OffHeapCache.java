@@ -0,0 +1,340 @@
+package cpen221.mp3.cache;
+
+import java.util.HashMap;
+
+/**
+ * A cache that keeps its values outside the Java heap, so that a large cache
+ * does not make garbage collection pauses longer. Values are encoded with a
+ * Codec and stored in a SlabArena of direct buffers; only a small handle per
+ * value (its identifier, the blocks holding it and its timestamps) stays on
+ * the heap. Every get decodes a new copy of the value.
+ *
+ * @param <T> the type of the values stored in the cache
+ */
+public class OffHeapCache<T extends Cacheable> {
+
+    /* the default block size is 4 KiB */
+    private static final int DBLOCK = 4096;
+
+    private final Codec<T> codec;
+    private final SlabArena arena;
+    private final long timeoutNanos;
+    private final HashMap<String, Entry> data;
+    private final EvictionPolicy<String> policy;
+    private final TimerWheel<Entry> expiry;
+    private final long t0 = System.nanoTime();
+
+    /**
+     * OffHeapCache Rep Invariants
+     *
+     * codec, arena, data, policy and expiry are not null
+     * timeoutNanos >= 0
+     * data does not contain null keys or values, and entry.id equals its key
+     * the blocks of the entries in data are distinct and not free in arena
+     * policy has recorded exactly the keys of data
+     * expiry holds exactly the values of data
+     * for every entry, deadline = lastUpdated + timeoutNanos
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * OffHeapCache Abstraction Functions
+     *
+     * data -> an index from the identifier of every value stored in the
+     *         cache to where it is stored in arena
+     * arena -> the encoded values; its capacity is the maximum number of
+     *          bytes (rounded up to whole blocks per value) the cache holds
+     * policy -> decides which value is removed when the arena is full
+     * expiry -> the values in the cache grouped by when they time out
+     * timeoutNanos -> how long a value may stay in the cache without being
+     *                 updated or touched
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * Every public method is synchronized, and data, arena, policy and expiry
+     * are only accessed from them, so every operation is atomic. Values are
+     * encoded and decoded while holding the lock so that their blocks cannot
+     * be freed and reused while they are copied.
+     */
+
+    /**
+     * Create a cache holding at most capacity bytes of encoded values outside
+     * the heap, removing the least recently accessed values when it is full.
+     * Objects in the cache that have not been refreshed within the timeout
+     * period are removed from the cache.
+     *
+     * @param capacity the number of bytes the cache can hold off the heap
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     * @param codec    encodes the values as bytes
+     */
+    public OffHeapCache(long capacity, int timeout, Codec<T> codec) {
+        this(capacity, DBLOCK, timeout, codec, new LruPolicy<>());
+    }
+
+    /**
+     * Create a cache holding at most capacity bytes of encoded values outside
+     * the heap, in blocks of blockSize bytes. Each value takes up a whole
+     * number of blocks, so smaller blocks waste less memory on small values
+     * but need a larger handle on the heap for large ones.
+     * Objects in the cache that have not been refreshed within the timeout
+     * period are removed from the cache.
+     *
+     * @param capacity  the number of bytes the cache can hold off the heap
+     * @param blockSize the number of bytes in each block
+     * @param timeout   the duration (in seconds) an object should be in the
+     *                  cache before it times out
+     * @param codec     encodes the values as bytes
+     * @param policy    a new eviction policy that is not used by any other cache
+     * @throws IllegalArgumentException if capacity, blockSize or timeout is
+     *         invalid, or codec or policy is null
+     */
+    public OffHeapCache(long capacity, int blockSize, int timeout, Codec<T> codec,
+                        EvictionPolicy<String> policy) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative timeout");
+        }
+        if (codec == null || policy == null) {
+            throw new IllegalArgumentException("Codec and policy cannot be null");
+        }
+
+        this.arena = new SlabArena(capacity, blockSize);
+        this.codec = codec;
+        this.timeoutNanos = timeout * 1000000000L;
+        this.data = new HashMap<>();
+        this.policy = policy;
+        this.expiry = new TimerWheel<>(0);
+    }
+
+    /**
+     * Add a value to the cache.
+     * If the arena does not have room for it, remove the objects chosen by
+     * the eviction policy (by default the least recently accessed) until it
+     * does, returning their blocks to the arena. Update the value if it is
+     * already in the cache.
+     *
+     * @param t the value to store in the cache
+     * @return true if the value was successfully stored and not previously in
+     *         the cache, false otherwise (including when t alone is larger
+     *         than the cache can hold, or the eviction policy chose t itself)
+     */
+    public synchronized boolean put(T t) {
+        expire();
+        if (this.data.containsKey(t.id())) {
+            return update(t);
+        }
+
+        byte[] bytes = this.codec.encode(t);
+        if (this.arena.blocksFor(bytes.length) > this.arena.capacity()) {
+            return false;
+        }
+
+        Entry e = new Entry(t.id());
+        e.lastUpdated = currentTime();
+        e.deadline = e.lastUpdated + this.timeoutNanos;
+        this.data.put(e.id, e);
+        this.policy.recordInsert(e.id);
+        this.expiry.schedule(e);
+
+        return store(e, bytes);
+    }
+
+    /**
+     * Retrieve a value from the cache.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @return a copy of the value that matches the identifier, decoded from
+     *         the cache
+     * @throws NoSuchCacheElementException if the cache does not contain
+     *         the value with identifier id
+     */
+    public synchronized T get(String id) throws NoSuchCacheElementException {
+        expire();
+        Entry e = getIfLive(id);
+        if (e == null) {
+            throw new NoSuchCacheElementException();
+        }
+
+        this.policy.recordAccess(id);
+        return this.codec.decode(this.arena.load(e.blocks, e.length));
+    }
+
+    /**
+     * Update the last refresh time for the object with the provided id.
+     *
+     * @param id the identifier of the object to "touch"
+     * @return true if successful and false otherwise
+     */
+    public synchronized boolean touch(String id) {
+        expire();
+        Entry e = getIfLive(id);
+        if (e == null) {
+            return false;
+        }
+
+        refresh(e);
+        return true;
+    }
+
+    /**
+     * Update the data held by and creation time of the specified object
+     * in the cache. Does not count as accessing the object. The blocks of
+     * the old data are returned to the arena before the new data is stored.
+     *
+     * @param t the object to update
+     * @return true if successful and false otherwise; if t alone is larger
+     *         than the cache can hold, or the eviction policy chose the
+     *         updated object itself, the object is removed and the update
+     *         fails
+     */
+    public synchronized boolean update(T t) {
+        Entry e = this.data.get(t.id());
+        if (e == null) {
+            return false;
+        }
+
+        byte[] bytes = this.codec.encode(t);
+        this.arena.free(e.blocks);
+        e.blocks = null;
+        if (this.arena.blocksFor(bytes.length) > this.arena.capacity()) {
+            remove(e, RemovalCause.SIZE);
+            return false;
+        }
+
+        refresh(e);
+        return store(e, bytes);
+    }
+
+    /**
+     * Remove all values in the cache that have timed out, without waiting for
+     * the next put, get or touch to do so.
+     */
+    public synchronized void cleanUp() {
+        expire();
+    }
+
+    /**
+     * @return the number of values in the cache, including ones that have
+     *         timed out but have not been removed yet
+     */
+    public synchronized int size() {
+        return this.data.size();
+    }
+
+    /**
+     * @return the number of bytes of the arena held by values in the cache
+     */
+    public synchronized long usedBytes() {
+        return (long) (this.arena.capacity() - this.arena.available()) * this.arena.blockSize();
+    }
+
+    /**
+     * Write an encoded value to the arena, evicting values until it fits.
+     *
+     * @param e the entry of the value, which is in data and holds no blocks
+     * @param bytes the encoded value, which fits in an empty arena
+     * @return true if the value was stored, false if the eviction policy
+     *         chose e itself, in which case e has been removed
+     */
+    private boolean store(Entry e, byte[] bytes) {
+        while (this.arena.available() < this.arena.blocksFor(bytes.length)) {
+            String victim = this.policy.victim();
+            if (victim.equals(e.id)) {
+                remove(e, RemovalCause.SIZE);
+                return false;
+            }
+            remove(this.data.get(victim), RemovalCause.SIZE);
+        }
+
+        e.blocks = this.arena.store(bytes);
+        e.length = bytes.length;
+        return true;
+    }
+
+    /**
+     * Remove the values in the cache whose timer bucket has been passed.
+     */
+    private void expire() {
+        this.expiry.advance(currentTime(), e -> remove(e, RemovalCause.EXPIRED));
+    }
+
+    /**
+     * Look up a value that has not timed out, removing it if it has.
+     *
+     * @param id the identifier of the value
+     * @return the entry of the value with identifier id, or null if there is
+     *         none or it has timed out
+     */
+    private Entry getIfLive(String id) {
+        Entry e = this.data.get(id);
+        if (e != null && e.deadline < currentTime()) {
+            remove(e, RemovalCause.EXPIRED);
+            return null;
+        }
+        return e;
+    }
+
+    /**
+     * Record that a value was refreshed and move it to the matching bucket
+     * of the timer wheel.
+     *
+     * @param e the entry that was refreshed, must currently be in the cache
+     */
+    private void refresh(Entry e) {
+        e.lastUpdated = currentTime();
+        e.deadline = e.lastUpdated + this.timeoutNanos;
+        this.expiry.reschedule(e);
+    }
+
+    /**
+     * Remove a value from the index, the eviction policy and the timer
+     * wheel, and return its blocks to the arena.
+     *
+     * @param e the entry to remove, must currently be in the cache
+     * @param cause why the entry is removed
+     */
+    private void remove(Entry e, RemovalCause cause) {
+        this.data.remove(e.id);
+        if (cause == RemovalCause.SIZE) {
+            this.policy.recordEviction(e.id);
+        } else {
+            this.policy.recordRemoval(e.id);
+        }
+        this.expiry.deschedule(e);
+        if (e.blocks != null) {
+            this.arena.free(e.blocks);
+            e.blocks = null;
+        }
+    }
+
+    /**
+     * Get the time since the cache was created.
+     *
+     * @return the number of nanoseconds since the cache was created.
+     */
+    private long currentTime() {
+        return System.nanoTime() - t0;
+    }
+
+    /**
+     * The on-heap handle of a value stored in the arena, along with the
+     * time it was last updated and its links in the timer wheel.
+     */
+    private static final class Entry extends TimerWheel.Node<Entry> {
+        private final String id;
+        private int[] blocks;
+        private int length;
+        private long lastUpdated;
+
+        /**
+         * Create an Entry that does not hold any blocks yet.
+         *
+         * @param id the identifier of the value
+         */
+        private Entry(String id) {
+            this.id = id;
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package cpen221.mp3.cache;
+
+/**
+ * Why a value was removed from a cache.
+ */
+public enum RemovalCause {
+
+    /**
+     * The value was removed to keep the cache within its capacity, or it
+     * weighed more than the whole cache could hold.
+     */
+    SIZE,
+
+    /**
+     * The value was not refreshed within the cache's timeout.
+     */
+    EXPIRED,
+
+    /**
+     * The value was replaced by a new value stored under the same key.
+     */
+    REPLACED,
+
+    /**
+     * The value was removed by a call to invalidateAll.
+     */
+    EXPLICIT
+
+}
@@ -0,0 +1,24 @@
+package cpen221.mp3.cache;
+
+/**
+ * Receives the values a cache removes, for example to write them elsewhere,
+ * to update metrics or to drop data derived from them. Listeners run on an
+ * executor, never on the thread that caused the removal, so they may be slow
+ * or call back into the cache.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+
+    /**
+     * Called after a value has been removed from the cache.
+     *
+     * @param key the key the value was stored under
+     * @param value the value that was removed
+     * @param cause why the value was removed
+     */
+    void onRemoval(K key, V value, RemovalCause cause);
+
+}
@@ -0,0 +1,197 @@
+package cpen221.mp3.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Memory outside the Java heap, divided into fixed-size blocks. The memory is
+ * allocated as direct buffers ("slabs") when blocks are first needed, and
+ * blocks that are freed are handed out again instead of allocating more.
+ *
+ * A value is stored in as many blocks as it needs, which do not have to be
+ * contiguous, so any freed block can be reused by any value.
+ */
+class SlabArena {
+
+    /* the largest slab allocated at once, 64 MiB */
+    private static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;
+
+    private final int blockSize;
+    private final int blocksPerSlab;
+    private final int totalBlocks;
+    private final ByteBuffer[] slabs;
+    private int[] freeBlocks;
+    private int freeCount;
+    private int nextUnused;
+
+    /**
+     * SlabArena Rep Invariants
+     *
+     * blockSize > 0 and blocksPerSlab > 0
+     * blocksPerSlab * blockSize <= MAX_SLAB_SIZE
+     * totalBlocks >= 0 and slabs.length = ceil(totalBlocks / blocksPerSlab)
+     * slabs[i] is not null if and only if block i * blocksPerSlab is less
+     *     than nextUnused
+     * 0 <= nextUnused <= totalBlocks
+     * 0 <= freeCount <= freeBlocks.length and freeBlocks[0..freeCount)
+     *     are distinct blocks less than nextUnused
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * SlabArena Abstraction Functions
+     *
+     * blockSize -> the number of bytes in each block
+     * totalBlocks -> the number of blocks the arena may allocate, which
+     *                bounds its memory use
+     * slabs -> the direct buffers holding the blocks; block b is at offset
+     *          (b % blocksPerSlab) * blockSize of slabs[b / blocksPerSlab]
+     * freeBlocks -> the blocks that were freed and can be reused
+     * nextUnused -> the blocks that have never been handed out are those
+     *               from nextUnused up to totalBlocks
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * SlabArena is not thread-safe; it is confined to the cache that owns it
+     * and only used while holding that cache's lock.
+     */
+
+    /**
+     * Create an arena that allocates no memory until it is used.
+     *
+     * @param capacity the maximum number of bytes the arena may allocate,
+     *                 rounded down to a multiple of blockSize
+     * @param blockSize the number of bytes in each block, at most 64 MiB
+     * @throws IllegalArgumentException if capacity is negative, blockSize is
+     *         not positive or too large, or capacity holds too many blocks
+     */
+    SlabArena(long capacity, int blockSize) {
+        if (capacity < 0 || blockSize <= 0 || blockSize > MAX_SLAB_SIZE
+                || capacity / blockSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid capacity or block size");
+        }
+
+        this.blockSize = blockSize;
+        this.blocksPerSlab = MAX_SLAB_SIZE / blockSize;
+        this.totalBlocks = (int) (capacity / blockSize);
+        this.slabs = new ByteBuffer[(totalBlocks + blocksPerSlab - 1) / blocksPerSlab];
+        this.freeBlocks = new int[16];
+    }
+
+    /**
+     * @return the number of bytes in each block
+     */
+    int blockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * @return the number of blocks the arena may hand out in total
+     */
+    int capacity() {
+        return this.totalBlocks;
+    }
+
+    /**
+     * @return the number of blocks that are not in use
+     */
+    int available() {
+        return this.freeCount + this.totalBlocks - this.nextUnused;
+    }
+
+    /**
+     * Compute the number of blocks a value needs.
+     *
+     * @param length the number of bytes in the value
+     * @return the number of blocks needed to store length bytes
+     */
+    int blocksFor(int length) {
+        return (int) (((long) length + this.blockSize - 1) / this.blockSize);
+    }
+
+    /**
+     * Store bytes in free blocks.
+     *
+     * @param bytes the bytes to store
+     * @return the blocks the bytes were written to, in order, or null if
+     *         there are not enough free blocks (in which case nothing is
+     *         allocated)
+     */
+    int[] store(byte[] bytes) {
+        int[] blocks = new int[blocksFor(bytes.length)];
+        if (blocks.length > available()) {
+            return null;
+        }
+
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = allocate();
+            int offset = i * this.blockSize;
+            slice(blocks[i]).put(bytes, offset, Math.min(this.blockSize, bytes.length - offset));
+        }
+        return blocks;
+    }
+
+    /**
+     * Read bytes stored by store.
+     *
+     * @param blocks the blocks returned by store
+     * @param length the number of bytes that were stored
+     * @return a copy of the stored bytes
+     */
+    byte[] load(int[] blocks, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < blocks.length; i++) {
+            int offset = i * this.blockSize;
+            slice(blocks[i]).get(bytes, offset, Math.min(this.blockSize, length - offset));
+        }
+        return bytes;
+    }
+
+    /**
+     * Return blocks to the arena so they can be reused.
+     *
+     * @param blocks blocks returned by store that have not been freed yet
+     */
+    void free(int[] blocks) {
+        if (this.freeCount + blocks.length > this.freeBlocks.length) {
+            int size = Math.max(this.freeBlocks.length * 2, this.freeCount + blocks.length);
+            int[] grown = new int[Math.min(size, this.totalBlocks)];
+            System.arraycopy(this.freeBlocks, 0, grown, 0, this.freeCount);
+            this.freeBlocks = grown;
+        }
+
+        System.arraycopy(blocks, 0, this.freeBlocks, this.freeCount, blocks.length);
+        this.freeCount += blocks.length;
+    }
+
+    /**
+     * Take a free block, allocating a new slab if needed.
+     *
+     * @return a block that is not in use; there must be one available
+     */
+    private int allocate() {
+        if (this.freeCount > 0) {
+            return this.freeBlocks[--this.freeCount];
+        }
+
+        int block = this.nextUnused++;
+        int slab = block / this.blocksPerSlab;
+        if (this.slabs[slab] == null) {
+            int blocks = Math.min(this.blocksPerSlab, this.totalBlocks - slab * this.blocksPerSlab);
+            this.slabs[slab] = ByteBuffer.allocateDirect(blocks * this.blockSize);
+        }
+        return block;
+    }
+
+    /**
+     * @param block a block that has been allocated
+     * @return a buffer whose position and limit span the block
+     */
+    private ByteBuffer slice(int block) {
+        ByteBuffer buffer = this.slabs[block / this.blocksPerSlab].duplicate();
+        int start = (block % this.blocksPerSlab) * this.blockSize;
+        buffer.limit(start + this.blockSize).position(start);
+        return buffer;
+    }
+
+}
@@ -0,0 +1,101 @@
+package cpen221.mp3.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the statistics of a cache as it runs. Every method is a few
+ * LongAdder increments, so recording does not add contention between
+ * threads beyond what the cache already has.
+ */
+class StatsCounter {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder secondTierHits = new LongAdder();
+    private final LongAdder secondTierMisses = new LongAdder();
+    private final LatencyHistogram loadTimes = new LatencyHistogram();
+    private final LatencyHistogram lockWaits = new LatencyHistogram();
+
+    /**
+     * Thread Safety Arguments
+     *
+     * Every field is final and is a LongAdder or a thread-safe
+     * LatencyHistogram. A snapshot taken while events are recorded may
+     * include some of them and not others.
+     */
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordPut() {
+        puts.increment();
+    }
+
+    void recordUpdate() {
+        updates.increment();
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    void recordExpiration() {
+        expirations.increment();
+    }
+
+    void recordSecondTierHit() {
+        secondTierHits.increment();
+    }
+
+    void recordSecondTierMiss() {
+        secondTierMisses.increment();
+    }
+
+    /**
+     * @param nanos the time a load that returned took
+     */
+    void recordLoadSuccess(long nanos) {
+        loadSuccesses.increment();
+        totalLoadTime.add(nanos);
+        loadTimes.record(nanos);
+    }
+
+    /**
+     * @param nanos the time a load that threw took
+     */
+    void recordLoadFailure(long nanos) {
+        loadFailures.increment();
+        totalLoadTime.add(nanos);
+        loadTimes.record(nanos);
+    }
+
+    /**
+     * @param nanos the time a caller waited to acquire the cache's lock
+     */
+    void recordLockWait(long nanos) {
+        lockWaits.record(nanos);
+    }
+
+    /**
+     * @return the statistics recorded so far
+     */
+    CacheStats snapshot() {
+        return new CacheStats(hits.sum(), misses.sum(), puts.sum(), updates.sum(),
+                evictions.sum(), expirations.sum(), loadSuccesses.sum(), loadFailures.sum(),
+                totalLoadTime.sum(), secondTierHits.sum(), secondTierMisses.sum(),
+                loadTimes.snapshot(), lockWaits.snapshot());
+    }
+
+}
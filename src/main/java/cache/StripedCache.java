@@ -0,0 +1,675 @@
+package cpen221.mp3.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+public class StripedCache <T extends Cacheable> {
+
+    /* the default cache size is 32 objects */
+    private static final int DSIZE = 32;
+
+    /* the default timeout value is 3600s */
+    private static final int DTIMEOUT = 3600;
+
+    /* the maximum number of segments the cache is split into */
+    private static final int MAX_SEGMENTS = 64;
+
+    /* the smallest number of elements a segment should be able to hold */
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    /* the number of reads a segment buffers (must be a power of two) */
+    private static final int READ_BUFFER_SIZE = 128;
+
+    /* the number of buffered reads that triggers a drain */
+    private static final int READ_DRAIN_THRESHOLD = 32;
+
+    private final int capacity;
+    private final int timeout;
+    private final long timeoutNanos;
+
+    private final ConcurrentHashMap<String, Entry<T>> data;
+    private final Segment<T>[] segments;
+    private final int segmentMask;
+    private final long t0 = System.nanoTime();
+
+    /**
+     * StripedCache Rep Invariants
+     *
+     * capacity >= 0
+     * timeout >= 0
+     * timeoutNanos = timeout * 10^9
+     * data is not null and does not contain null keys or values
+     * segments.length is a power of two and segmentMask = segments.length - 1
+     * the sum of the capacities of all segments is capacity
+     * every entry e in data is linked in segments[segmentFor(e.t.id())] and
+     *     every linked entry of a segment is in data
+     * t0 >= 0
+     *
+     * Segment Rep Invariants
+     *
+     * size is the number of linked entries and size <= capacity
+     * accessOrder and writeOrder are sentinels of circular lists that each
+     *     hold every linked entry exactly once
+     * following writeOrder.nextWrite visits entries in non-decreasing order
+     *     of lastUpdated
+     * readBuffer slots with index in [readCount, writeCount) may hold entries
+     *     that were read but not yet moved in accessOrder
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * StripedCache Abstraction Functions
+     *
+     * data -> an index from the identifier of every element stored in the
+     *         cache to the element and its metadata
+     * segments -> a partition of the elements in the cache by the hash of
+     *             their identifier; each segment evicts and expires its own
+     *             elements under its own lock
+     * capacity -> the maximum number of total elements allowed in the cache at
+     *             any given instant
+     * timeout  -> the maximum amount of time an element is allowed to stay in
+     *             the cache without being refreshed before being removed
+     *
+     * Segment Abstraction Functions
+     *
+     * accessOrder -> the elements of the segment ordered from least recently
+     *                accessed to most recently accessed, as of the last drain
+     * writeOrder -> the elements of the segment ordered from least recently
+     *               updated to most recently updated
+     * readBuffer -> accesses that have happened but have not yet been applied
+     *               to accessOrder
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * This class is thread-safe because
+     * - data is a ConcurrentHashMap, so lookups by id need no lock and reads
+     *   of distinct ids never block each other
+     * - the fields of an Entry that readers see are volatile
+     * - every structural change (linking, unlinking, eviction, expiry and
+     *   reordering) of a segment happens while holding that segment's lock
+     * - readers only publish entries into the segment's read buffer through
+     *   atomic operations; the buffer is drained by whichever thread holds
+     *   the segment lock, and a reader that cannot take the lock immediately
+     *   leaves the drain to the next writer instead of waiting
+     * - the read buffer is lossy: if readers overrun it, older accesses are
+     *   dropped, which only makes the LRU order approximate
+     */
+
+    /**
+     * Create a cache with a fixed capacity, a timeout value and a hint of
+     * how many threads will use the cache at the same time.
+     * Objects in the cache that have not been refreshed within the timeout
+     * period are removed from the cache. Each segment evicts its own least
+     * recently accessed object, so eviction order approximates least
+     * recently accessed across the whole cache.
+     *
+     * @param capacity the number of objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     * @param concurrencyLevel the expected number of threads using the cache
+     *                         concurrently
+     * @throws IllegalArgumentException if capacity or timeout is negative or
+     *         concurrencyLevel is not positive
+     */
+    public StripedCache(int capacity, int timeout, int concurrencyLevel) {
+        if (capacity < 0 || timeout < 0) {
+            throw new IllegalArgumentException("Negative capacity or timeout");
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Concurrency level must be positive");
+        }
+
+        this.capacity = capacity;
+        this.timeout = timeout;
+        this.timeoutNanos = timeout * 1000000000L;
+        this.data = new ConcurrentHashMap<>();
+
+        int wanted = Math.min(Math.min(concurrencyLevel, MAX_SEGMENTS),
+                Math.max(1, capacity / MIN_SEGMENT_CAPACITY));
+        int count = Integer.highestOneBit(wanted);
+        if (count < wanted) {
+            count <<= 1;
+        }
+        if (count > 1 && capacity / count < 1) {
+            count >>= 1;
+        }
+
+        this.segments = newSegments(count);
+        this.segmentMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment<>(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Segment<T>[] newSegments(int length) {
+        return (Segment<T>[]) new Segment[length];
+    }
+
+    /**
+     * Create a cache with a fixed capacity and a timeout value, striped for
+     * the number of available processors.
+     *
+     * @param capacity the number of objects the cache can hold
+     * @param timeout  the duration (in seconds) an object should be in the cache
+     *                 before it times out
+     */
+    public StripedCache(int capacity, int timeout) {
+        this(capacity, timeout, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a cache with default capacity and timeout values.
+     */
+    public StripedCache() {
+        this(DSIZE, DTIMEOUT);
+    }
+
+    /**
+     * Add a value to the cache.
+     * If the segment of the value is full then remove the least recently
+     * accessed object of that segment to make room for the new object.
+     * Update the value if it is already in the cache.
+     *
+     * @param t the value to store in the cache
+     * @return true if the value was successfully stored and not previously in
+     *         the cache, false otherwise
+     */
+    public boolean put(T t) {
+        String id = t.id();
+        Segment<T> segment = segmentFor(id);
+
+        segment.lock.lock();
+        try {
+            long now = currentTime();
+            segment.drain(now);
+            return putLocked(segment, t, now);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Add several values to the cache, taking the lock of each segment and
+     * removing its timed out values once for all the values it holds.
+     * Values are stored as if by put(t) for each, in the iteration order of
+     * values within each segment.
+     *
+     * @param values the values to store in the cache
+     * @return the number of values stored
+     */
+    public int putAll(Collection<? extends T> values) {
+        List<List<T>> bySegment = groupBySegment(values, T::id);
+        int stored = 0;
+        for (int i = 0; i < this.segments.length; i++) {
+            List<T> group = bySegment.get(i);
+            if (group.isEmpty()) {
+                continue;
+            }
+
+            Segment<T> segment = this.segments[i];
+            segment.lock.lock();
+            try {
+                long now = currentTime();
+                segment.drain(now);
+                for (T t : group) {
+                    if (putLocked(segment, t, now)) {
+                        stored++;
+                    }
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Retrieve a value from the cache.
+     * Reads do not take any lock unless they fill the read buffer of the
+     * segment, in which case the reader tries to apply the buffered reads.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @return the value that matches the identifier from the cache
+     * @throws NoSuchCacheElementException if the cache does not contain
+     *         the value with identifier id
+     */
+    public T get(String id) throws NoSuchCacheElementException {
+        Entry<T> entry = this.data.get(id);
+        long now = currentTime();
+        if (entry == null || isExpired(entry, now)) {
+            throw new NoSuchCacheElementException();
+        }
+
+        entry.lastAccessed = now;
+        segmentFor(id).recordRead(entry, now);
+        return entry.t;
+    }
+
+    /**
+     * Retrieve several values from the cache, without taking any lock
+     * unless a read buffer fills up, as in get(id).
+     *
+     * @param ids the identifiers of the objects to be retrieved
+     * @return the values found and the identifiers that were not, each in
+     *         the order they were requested, without duplicates
+     */
+    public GetAllResult<String, T> getAll(Collection<String> ids) {
+        Map<String, T> hits = new LinkedHashMap<>();
+        Set<String> misses = new LinkedHashSet<>();
+        long now = currentTime();
+        for (String id : ids) {
+            if (hits.containsKey(id) || misses.contains(id)) {
+                continue;
+            }
+
+            Entry<T> entry = this.data.get(id);
+            if (entry == null || isExpired(entry, now)) {
+                misses.add(id);
+            } else {
+                entry.lastAccessed = now;
+                segmentFor(id).recordRead(entry, now);
+                hits.put(id, entry.t);
+            }
+        }
+        return new GetAllResult<>(hits, misses);
+    }
+
+    /**
+     * Remove the objects with several identifiers from the cache, taking the
+     * lock of each segment once.
+     *
+     * @param ids the identifiers of the objects to remove; identifiers that
+     *            are not in the cache are ignored
+     */
+    public void invalidateAll(Collection<String> ids) {
+        List<List<String>> bySegment = groupBySegment(ids, id -> id);
+        for (int i = 0; i < this.segments.length; i++) {
+            List<String> group = bySegment.get(i);
+            if (group.isEmpty()) {
+                continue;
+            }
+
+            Segment<T> segment = this.segments[i];
+            segment.lock.lock();
+            try {
+                for (String id : group) {
+                    Entry<T> entry = this.data.get(id);
+                    if (entry != null && entry.linked) {
+                        segment.unlink(entry);
+                        this.data.remove(id, entry);
+                    }
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Remove every object from the cache, one segment at a time.
+     */
+    public void invalidateAll() {
+        for (Segment<T> segment : this.segments) {
+            segment.lock.lock();
+            try {
+                Entry<T> entry = segment.writeOrder.nextWrite;
+                while (entry != segment.writeOrder) {
+                    Entry<T> next = entry.nextWrite;
+                    segment.unlink(entry);
+                    this.data.remove(entry.t.id(), entry);
+                    entry = next;
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Update the last refresh time for the object with the provided id.
+     * Does not count as accessing the object.
+     *
+     * @param id the identifier of the object to "touch"
+     * @return true if successful and false otherwise
+     */
+    public boolean touch(String id) {
+        Segment<T> segment = segmentFor(id);
+
+        segment.lock.lock();
+        try {
+            long now = currentTime();
+            segment.drain(now);
+
+            Entry<T> entry = this.data.get(id);
+            if (entry == null) {
+                return false;
+            }
+
+            entry.lastUpdated = now;
+            segment.moveToBackOfWriteOrder(entry);
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Update the data held by and creation time of the specified object
+     * in the cache. Does not count as accessing the object.
+     *
+     * @param t the object to update
+     * @return true if successful and false otherwise
+     */
+    public boolean update(T t) {
+        Segment<T> segment = segmentFor(t.id());
+
+        segment.lock.lock();
+        try {
+            Entry<T> entry = this.data.get(t.id());
+            if (entry == null) {
+                return false;
+            }
+
+            entry.t = t;
+            entry.lastUpdated = currentTime();
+            segment.moveToBackOfWriteOrder(entry);
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Add a value to a segment, or update it if it is already in the cache.
+     * Must hold the segment's lock.
+     *
+     * @param segment the segment responsible for t's identifier
+     * @param t the value to store in the cache
+     * @param now the current time
+     * @return true if the value was stored, false otherwise
+     */
+    private boolean putLocked(Segment<T> segment, T t, long now) {
+        String id = t.id();
+        Entry<T> existing = this.data.get(id);
+        if (existing != null) {
+            existing.t = t;
+            existing.lastUpdated = now;
+            segment.moveToBackOfWriteOrder(existing);
+            return true;
+        }
+
+        if (segment.size >= segment.capacity) {
+            Entry<T> least = segment.accessOrder.nextAccess;
+            if (least == segment.accessOrder) {
+                return false;
+            }
+            segment.unlink(least);
+            this.data.remove(least.t.id(), least);
+        }
+
+        Entry<T> entry = new Entry<>(t, now);
+        segment.link(entry);
+        this.data.put(id, entry);
+        return true;
+    }
+
+    /**
+     * Split items between the segments responsible for their identifiers.
+     *
+     * @param items the items to split
+     * @param id the identifier of each item
+     * @return for each segment index, the items of that segment in the
+     *         iteration order of items
+     */
+    private <E> List<List<E>> groupBySegment(Collection<? extends E> items, Function<E, String> id) {
+        List<List<E>> groups = new ArrayList<>(this.segments.length);
+        for (int i = 0; i < this.segments.length; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (E item : items) {
+            groups.get(segmentIndex(id.apply(item))).add(item);
+        }
+        return groups;
+    }
+
+    /**
+     * Find the segment responsible for an identifier.
+     *
+     * @param id the identifier of an object
+     * @return the segment that holds the object with identifier id
+     */
+    private Segment<T> segmentFor(String id) {
+        return this.segments[segmentIndex(id)];
+    }
+
+    /**
+     * Find the index of the segment responsible for an identifier.
+     *
+     * @param id the identifier of an object
+     * @return the index in segments of the segment that holds the object
+     *         with identifier id
+     */
+    private int segmentIndex(String id) {
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return h & this.segmentMask;
+    }
+
+    /**
+     * Determine whether an entry has not been refreshed within the timeout
+     * period.
+     *
+     * @param entry the entry to check
+     * @param now the current time
+     * @return true if the entry has timed out, false otherwise
+     */
+    private boolean isExpired(Entry<T> entry, long now) {
+        return entry.lastUpdated + this.timeoutNanos < now;
+    }
+
+    /**
+     * Get the time since the cache was created.
+     *
+     * @return the number of nanoseconds since the cache was created.
+     */
+    private long currentTime() {
+        return System.nanoTime() - t0;
+    }
+
+    /**
+     * An object that holds a value in the cache along with its associated
+     * metadata and its links in the access and write orders of its segment
+     */
+    private static class Entry<T> {
+        private volatile T t;
+        private volatile long lastUpdated;
+        private volatile long lastAccessed;
+
+        // guarded by the segment lock
+        private boolean linked;
+        private Entry<T> prevAccess;
+        private Entry<T> nextAccess;
+        private Entry<T> prevWrite;
+        private Entry<T> nextWrite;
+
+        /**
+         * Create an Entry
+         *
+         * @param t the value to store
+         * @param now the current time
+         */
+        private Entry(T t, long now) {
+            this.t = t;
+            this.lastUpdated = now;
+            this.lastAccessed = now;
+        }
+    }
+
+    /**
+     * A partition of the cache with its own lock, capacity, access order,
+     * write order and buffer of pending reads
+     */
+    private class Segment<S extends T> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private int size;
+
+        private final Entry<T> accessOrder = new Entry<>(null, 0);
+        private final Entry<T> writeOrder = new Entry<>(null, 0);
+
+        private final AtomicReferenceArray<Entry<T>> readBuffer
+                = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicLong writeCount = new AtomicLong();
+        private volatile long readCount;
+
+        /**
+         * Create an empty Segment
+         *
+         * @param capacity the number of objects the segment can hold
+         */
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            accessOrder.prevAccess = accessOrder;
+            accessOrder.nextAccess = accessOrder;
+            writeOrder.prevWrite = writeOrder;
+            writeOrder.nextWrite = writeOrder;
+        }
+
+        /**
+         * Buffer a read of an entry and apply the buffered reads if enough
+         * have accumulated and the lock is free.
+         *
+         * @param entry the entry that was read
+         * @param now the current time
+         */
+        private void recordRead(Entry<T> entry, long now) {
+            long index = writeCount.getAndIncrement();
+            readBuffer.lazySet((int) index & (READ_BUFFER_SIZE - 1), entry);
+
+            if (index - readCount >= READ_DRAIN_THRESHOLD && lock.tryLock()) {
+                try {
+                    drain(now);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Apply all buffered reads to the access order and remove the entries
+         * that have timed out. Must hold lock.
+         *
+         * @param now the current time
+         */
+        private void drain(long now) {
+            long end = writeCount.get();
+            long start = Math.max(readCount, end - READ_BUFFER_SIZE);
+            for (long i = start; i < end; i++) {
+                Entry<T> entry = readBuffer.getAndSet((int) i & (READ_BUFFER_SIZE - 1), null);
+                if (entry != null && entry.linked) {
+                    moveToBackOfAccessOrder(entry);
+                }
+            }
+            readCount = end;
+
+            Entry<T> oldest = writeOrder.nextWrite;
+            while (oldest != writeOrder && isExpired(oldest, now)) {
+                unlink(oldest);
+                data.remove(oldest.t.id(), oldest);
+                oldest = writeOrder.nextWrite;
+            }
+        }
+
+        /**
+         * Add an entry to the back of both orders. Must hold lock.
+         *
+         * @param entry the entry to add, must not currently be linked
+         */
+        private void link(Entry<T> entry) {
+            Entry<T> lastAccess = accessOrder.prevAccess;
+            entry.prevAccess = lastAccess;
+            entry.nextAccess = accessOrder;
+            lastAccess.nextAccess = entry;
+            accessOrder.prevAccess = entry;
+
+            Entry<T> lastWrite = writeOrder.prevWrite;
+            entry.prevWrite = lastWrite;
+            entry.nextWrite = writeOrder;
+            lastWrite.nextWrite = entry;
+            writeOrder.prevWrite = entry;
+
+            entry.linked = true;
+            size++;
+        }
+
+        /**
+         * Remove an entry from both orders. Must hold lock.
+         *
+         * @param entry the entry to remove, must currently be linked
+         */
+        private void unlink(Entry<T> entry) {
+            entry.prevAccess.nextAccess = entry.nextAccess;
+            entry.nextAccess.prevAccess = entry.prevAccess;
+            entry.prevWrite.nextWrite = entry.nextWrite;
+            entry.nextWrite.prevWrite = entry.prevWrite;
+            entry.prevAccess = null;
+            entry.nextAccess = null;
+            entry.prevWrite = null;
+            entry.nextWrite = null;
+
+            entry.linked = false;
+            size--;
+        }
+
+        /**
+         * Mark an entry as the most recently accessed. Must hold lock.
+         *
+         * @param entry a linked entry
+         */
+        private void moveToBackOfAccessOrder(Entry<T> entry) {
+            if (accessOrder.prevAccess == entry) {
+                return;
+            }
+            entry.prevAccess.nextAccess = entry.nextAccess;
+            entry.nextAccess.prevAccess = entry.prevAccess;
+
+            Entry<T> last = accessOrder.prevAccess;
+            entry.prevAccess = last;
+            entry.nextAccess = accessOrder;
+            last.nextAccess = entry;
+            accessOrder.prevAccess = entry;
+        }
+
+        /**
+         * Mark an entry as the most recently updated. Must hold lock.
+         *
+         * @param entry a linked entry
+         */
+        private void moveToBackOfWriteOrder(Entry<T> entry) {
+            if (writeOrder.prevWrite == entry) {
+                return;
+            }
+            entry.prevWrite.nextWrite = entry.nextWrite;
+            entry.nextWrite.prevWrite = entry.prevWrite;
+
+            Entry<T> last = writeOrder.prevWrite;
+            entry.prevWrite = last;
+            entry.nextWrite = writeOrder;
+            last.nextWrite = entry;
+            writeOrder.prevWrite = entry;
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+package cpen221.mp3.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel that finds the nodes whose deadline has passed
+ * in amortized constant time per node.
+ *
+ * Each level of the wheel is an array of buckets, and each bucket covers a
+ * fixed span of time. A node is placed in the coarsest level whose buckets
+ * are still finer than the time left until its deadline. When the wheel
+ * reaches a bucket, every node in it has either reached its deadline or is
+ * moved down into a finer level, so a node is visited at most once per
+ * level before it reaches the finest level, and is removed within the span
+ * of a finest bucket after its deadline.
+ *
+ * @param <N> the type of node scheduled in the wheel
+ */
+class TimerWheel<N extends TimerWheel.Node<N>> {
+
+    /* the number of buckets in each level (each a power of two) */
+    private static final int[] BUCKETS = {64, 64, 64, 64, 64, 1};
+
+    /* each bucket in level i spans 2^SHIFTS[i] nanoseconds: ~1ms, ~67ms,
+       ~4.3s, ~4.6min, ~4.9h and ~13d */
+    private static final int[] SHIFTS = {20, 26, 32, 38, 44, 50};
+
+    private final Node<N>[][] wheel;
+    private long nanos;
+
+    /**
+     * TimerWheel Rep Invariants
+     *
+     * wheel.length = BUCKETS.length and wheel[i].length = BUCKETS[i]
+     * every wheel[i][j] is a sentinel of a circular doubly-linked list
+     * every scheduled node is in exactly one bucket and unscheduled nodes
+     *     have null links
+     * nanos >= 0
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * TimerWheel Abstraction Functions
+     *
+     * wheel -> the scheduled nodes, grouped by the span of time their
+     *          deadline falls in
+     * nanos -> the time up to which expired nodes have been removed
+     */
+
+    /**
+     * Create an empty TimerWheel.
+     *
+     * @param now the current time in nanoseconds, must be non-negative
+     */
+    TimerWheel(long now) {
+        this.nanos = now;
+        this.wheel = newLevels(BUCKETS.length);
+        for (int i = 0; i < BUCKETS.length; i++) {
+            this.wheel[i] = newBuckets(BUCKETS[i]);
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                this.wheel[i][j] = new Sentinel<>();
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <N extends Node<N>> Node<N>[][] newLevels(int length) {
+        return (Node<N>[][]) new Node[length][];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <N extends Node<N>> Node<N>[] newBuckets(int length) {
+        return (Node<N>[]) new Node[length];
+    }
+
+    /**
+     * Add a node to the wheel according to its deadline.
+     *
+     * @param node a node that is not currently scheduled
+     */
+    void schedule(N node) {
+        Node<N> sentinel = findBucket(node.deadline);
+        node.prevInWheel = sentinel.prevInWheel;
+        node.nextInWheel = sentinel;
+        sentinel.prevInWheel.nextInWheel = node;
+        sentinel.prevInWheel = node;
+    }
+
+    /**
+     * Move a node to the bucket matching its (changed) deadline.
+     *
+     * @param node a node that may or may not be currently scheduled
+     */
+    void reschedule(N node) {
+        deschedule(node);
+        schedule(node);
+    }
+
+    /**
+     * Remove a node from the wheel, if it is scheduled.
+     *
+     * @param node the node to remove
+     */
+    void deschedule(N node) {
+        if (node.nextInWheel == null) {
+            return;
+        }
+        node.prevInWheel.nextInWheel = node.nextInWheel;
+        node.nextInWheel.prevInWheel = node.prevInWheel;
+        node.prevInWheel = null;
+        node.nextInWheel = null;
+    }
+
+    /**
+     * Advance the wheel to the current time, handing every node whose
+     * deadline has passed to expired. The buckets of each level from the
+     * one of the previous call to the one of the current time are emptied,
+     * coarsest level first, so that nodes moved down into a finer level
+     * are in a bucket that is still to be emptied. Nodes in the current
+     * bucket of the finest level are not expired until the wheel moves past
+     * it, so a node may outlive its deadline by up to the span of the finest
+     * bucket.
+     *
+     * @param now the current time in nanoseconds, must not be less than
+     *            the time of any previous call
+     * @param expired the action that removes an expired node; the node has
+     *                already been descheduled when it is called
+     */
+    void advance(long now, Consumer<N> expired) {
+        long previous = this.nanos;
+        this.nanos = now;
+
+        // a level only moves to another bucket when every finer one does
+        int levels = 0;
+        while (levels < SHIFTS.length
+                && (now >>> SHIFTS[levels]) > (previous >>> SHIFTS[levels])) {
+            levels++;
+        }
+        for (int i = levels - 1; i >= 0; i--) {
+            long previousTicks = previous >>> SHIFTS[i];
+            long currentTicks = now >>> SHIFTS[i];
+            expireLevel(i, previousTicks, currentTicks - previousTicks, now, expired);
+        }
+    }
+
+    /**
+     * Empty the buckets of one level from the previous tick to the current
+     * one inclusive, expiring nodes whose deadline has passed and moving the
+     * rest to finer levels. The bucket of the previous tick is emptied again
+     * because nodes may have been added to it after it was reached.
+     *
+     * @param level the level to process
+     * @param previousTicks the tick of the level at the previous advance
+     * @param delta the number of ticks passed since the previous advance
+     * @param now the current time in nanoseconds
+     * @param expired the action that removes an expired node
+     */
+    @SuppressWarnings("unchecked")
+    private void expireLevel(int level, long previousTicks, long delta, long now, Consumer<N> expired) {
+        Node<N>[] buckets = this.wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(delta + 1, buckets.length);
+        int start = (int) (previousTicks & mask);
+
+        for (int i = 0; i < steps; i++) {
+            Node<N> sentinel = buckets[(start + i) & mask];
+            Node<N> node = sentinel.nextInWheel;
+            sentinel.prevInWheel = sentinel;
+            sentinel.nextInWheel = sentinel;
+
+            while (node != sentinel) {
+                Node<N> next = node.nextInWheel;
+                node.prevInWheel = null;
+                node.nextInWheel = null;
+
+                if (node.deadline <= now) {
+                    expired.accept((N) node);
+                } else {
+                    schedule((N) node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Find the bucket a deadline belongs in, relative to the current time
+     * of the wheel.
+     *
+     * @param deadline the time in nanoseconds a node expires at
+     * @return the sentinel of the bucket
+     */
+    private Node<N> findBucket(long deadline) {
+        long duration = deadline - this.nanos;
+        for (int i = 0; i < SHIFTS.length - 1; i++) {
+            if (duration < (1L << SHIFTS[i + 1])) {
+                long ticks = Math.max(deadline, 0) >>> SHIFTS[i];
+                return this.wheel[i][(int) (ticks & (BUCKETS[i] - 1))];
+            }
+        }
+
+        return this.wheel[BUCKETS.length - 1][0];
+    }
+
+    /**
+     * Something that can be scheduled in a TimerWheel. Subclasses set
+     * deadline before scheduling; the links are managed by the wheel.
+     *
+     * @param <N> the type of node scheduled in the wheel
+     */
+    abstract static class Node<N extends Node<N>> {
+        long deadline;
+        Node<N> prevInWheel;
+        Node<N> nextInWheel;
+    }
+
+    /**
+     * The head of a bucket, never handed out as a node.
+     */
+    private static final class Sentinel<N extends Node<N>> extends Node<N> {
+        private Sentinel() {
+            this.prevInWheel = this;
+            this.nextInWheel = this;
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package cpen221.mp3.cache;
+
+import java.util.HashMap;
+
+/**
+ * Window TinyLFU: a small LRU window in front of a segmented LRU main region,
+ * guarded by a frequency-based admission filter.
+ *
+ * New values enter the window. When the window grows past its share of the
+ * cache, its least recently requested value moves to the main region. If
+ * the cache then has to evict, that value competes with the main region's
+ * next victim, and only the one requested more often (as estimated by a
+ * FrequencySketch with aging) stays. A burst of values that are requested
+ * once, such as a sweep over many linked pages, therefore only churns the
+ * window instead of flushing the values that are requested all the time.
+ *
+ * The main region is split into a probation segment, for values admitted
+ * from the window, and a protected segment, for values requested again while
+ * on probation.
+ *
+ * @param <K> the type of the identifiers of the cached values
+ */
+public class WTinyLfuPolicy<K> implements EvictionPolicy<K> {
+
+    /* the share of the values that the window holds */
+    private static final double WINDOW_SHARE = 0.01;
+
+    /* the share of the main region that the protected segment holds */
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final HashMap<K, Node<K>> nodes = new HashMap<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final Node<K> window = new Node<>(null, WINDOW);
+    private final Node<K> probation = new Node<>(null, PROBATION);
+    private final Node<K> protectedSegment = new Node<>(null, PROTECTED);
+    private Node<K> candidate;
+    private int windowSize;
+    private int protectedSize;
+
+    /**
+     * WTinyLfuPolicy Rep Invariants
+     *
+     * nodes does not contain null values and node.key equals its key in nodes
+     * window, probation and protectedSegment are sentinels of circular
+     *     doubly-linked lists that together hold exactly the values of
+     *     nodes, each once, and each node's queue names the list it is in
+     * windowSize and protectedSize are the lengths of the window and
+     *     protected lists
+     * candidate is null or a node in the probation list
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * WTinyLfuPolicy Abstraction Functions
+     *
+     * nodes -> the identifiers of the values in the cache
+     * window -> recently inserted values, least recently requested first
+     * probation -> admitted values that have not been requested since, least
+     *              recently requested first
+     * protectedSegment -> admitted values that have been requested again,
+     *                     least recently requested first
+     * sketch -> how often each value has been inserted or requested recently
+     * candidate -> the value that just moved from the window to the main
+     *              region, if the cache has not made room since; if the
+     *              cache is over capacity it has to beat the main region's
+     *              victim to stay
+     */
+
+    @Override
+    public void recordInsert(K key) {
+        // a previous candidate that was not evicted found room on its own
+        candidate = null;
+
+        Node<K> node = new Node<>(key, WINDOW);
+        nodes.put(key, node);
+        node.linkBefore(window);
+        windowSize++;
+
+        sketch.ensureCapacity(nodes.size());
+        sketch.increment(key.hashCode());
+
+        int windowTarget = Math.max(1, (int) (nodes.size() * WINDOW_SHARE));
+        if (windowSize > windowTarget) {
+            candidate = (Node<K>) window.next;
+            candidate.unlink();
+            windowSize--;
+            candidate.queue = PROBATION;
+            candidate.linkBefore(probation);
+        }
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        candidate = null;
+
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            return;
+        }
+
+        sketch.increment(key.hashCode());
+        node.unlink();
+        switch (node.queue) {
+            case WINDOW:
+                node.linkBefore(window);
+                break;
+            case PROBATION:
+                node.queue = PROTECTED;
+                node.linkBefore(protectedSegment);
+                protectedSize++;
+                demoteProtected();
+                break;
+            default:
+                node.linkBefore(protectedSegment);
+                break;
+        }
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node == null) {
+            return;
+        }
+
+        if (node == candidate) {
+            candidate = null;
+        }
+
+        node.unlink();
+        if (node.queue == WINDOW) {
+            windowSize--;
+        } else if (node.queue == PROTECTED) {
+            protectedSize--;
+        }
+    }
+
+    @Override
+    public K victim() {
+        Node<K> contender = candidate;
+        candidate = null;
+
+        Node<K> mainVictim = mainVictim(contender);
+        if (contender != null) {
+            if (mainVictim == null || !admit(contender.key, mainVictim.key)) {
+                return contender.key;
+            }
+            return mainVictim.key;
+        }
+
+        if (mainVictim != null) {
+            return mainVictim.key;
+        }
+        return window.next.key;
+    }
+
+    /**
+     * Find the value the main region would give up first.
+     *
+     * @param exclude a value that does not count as part of the main region,
+     *                or null
+     * @return the least recently requested value on probation, or in the
+     *         protected segment if probation is empty, or null if the main
+     *         region is empty
+     */
+    private Node<K> mainVictim(Node<K> exclude) {
+        LruPolicy.Node<K> first = probation.next;
+        if (first == exclude) {
+            first = first.next;
+        }
+        if (first != probation) {
+            return (Node<K>) first;
+        }
+        if (protectedSegment.next != protectedSegment) {
+            return (Node<K>) protectedSegment.next;
+        }
+        return null;
+    }
+
+    /**
+     * Decide whether a value leaving the window should replace a value in
+     * the main region.
+     *
+     * @param candidate the identifier of the value leaving the window
+     * @param victim the identifier of the value that would be removed from
+     *               the main region
+     * @return true if candidate is estimated to be requested more often than
+     *         victim, false otherwise
+     */
+    private boolean admit(K candidate, K victim) {
+        return sketch.frequency(candidate.hashCode()) > sketch.frequency(victim.hashCode());
+    }
+
+    /**
+     * Move the least recently requested protected values back to probation
+     * until the protected segment is within its share of the main region.
+     */
+    private void demoteProtected() {
+        int protectedTarget = (int) ((nodes.size() - windowSize) * PROTECTED_SHARE);
+        while (protectedSize > protectedTarget && protectedSegment.next != protectedSegment) {
+            Node<K> demoted = (Node<K>) protectedSegment.next;
+            demoted.unlink();
+            demoted.queue = PROBATION;
+            demoted.linkBefore(probation);
+            protectedSize--;
+        }
+    }
+
+    /**
+     * An identifier together with the region it is in.
+     */
+    private static final class Node<K> extends LruPolicy.Node<K> {
+        private byte queue;
+
+        /**
+         * Create a Node that is not linked to any other node.
+         *
+         * @param key the identifier it holds, or null for a sentinel
+         * @param queue the region it belongs to
+         */
+        private Node(K key, byte queue) {
+            super(key);
+            this.queue = queue;
+        }
+    }
+
+}
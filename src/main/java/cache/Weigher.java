@@ -0,0 +1,16 @@
+package cpen221.mp3.cache;
+
+@FunctionalInterface
+public interface Weigher<T> {
+
+    /**
+     * Compute how much of a cache's capacity a value takes up, for example
+     * an estimate of its size in bytes.
+     *
+     * @param t the value to weigh
+     * @return the weight of t, which is non-negative and must not change
+     *         while t is stored in a cache
+     */
+    int weigh(T t);
+
+}
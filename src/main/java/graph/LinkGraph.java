@@ -0,0 +1,157 @@
+package cpen221.mp3.graph;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The links between pages as a directed graph in compressed sparse row
+ * form, read from a file mapped into memory. The nodes are the ints
+ * 0 to nodeCount() - 1, and the links from node v are the targets at the
+ * edge indexes edgesStart(v) to edgesEnd(v) - 1, stored next to each other.
+ *
+ * Opening a graph only maps the file, so it takes the same time however
+ * large the graph is, and the operating system pages the file in and out
+ * as it is used instead of the graph taking up the heap.
+ *
+ * The file is little-endian and made of:
+ * - a header: the int MAGIC, the int number of nodes n and the long number
+ *   of edges m
+ * - n + 1 longs of offsets, where offset v is the edge index of the first
+ *   link from node v and offset n is m
+ * - m ints of targets
+ */
+public class LinkGraph {
+
+    /* the first four bytes of a graph file, "CSR1" */
+    static final int MAGIC = 0x31525343;
+    static final int HEADER = 16;
+
+    private final MappedChunks file;
+    private final int nodeCount;
+    private final long edgeCount;
+    private final long targets;
+
+    /**
+     * LinkGraph Rep Invariants
+     *
+     * file holds a graph in the format above
+     * nodeCount >= 0 and edgeCount >= 0
+     * targets = HEADER + 8 * (nodeCount + 1)
+     * the offsets are non-decreasing, from 0 to edgeCount
+     * every target is in [0, nodeCount)
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * LinkGraph Abstraction Functions
+     *
+     * file -> the graph, mapped into memory
+     * nodeCount -> the number of nodes (pages)
+     * edgeCount -> the number of edges (links)
+     * targets -> the position of the first target in file
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * This class is immutable and file is mapped read-only, so any number of
+     * threads may read the graph at once.
+     */
+
+    private LinkGraph(MappedChunks file, int nodeCount, long edgeCount) {
+        this.file = file;
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.targets = HEADER + 8L * (nodeCount + 1);
+    }
+
+    /**
+     * Open a graph written by LinkGraphBuilder.
+     *
+     * @param path the graph file
+     * @return the graph
+     * @throws IOException if the file cannot be read or is not a graph file
+     */
+    public static LinkGraph open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER) {
+                throw new IOException("Not a graph file: " + path);
+            }
+
+            MappedChunks file = new MappedChunks(channel, FileChannel.MapMode.READ_ONLY, size);
+            int nodeCount = file.getInt(4);
+            long edgeCount = file.getLong(8);
+            if (file.getInt(0) != MAGIC || nodeCount < 0 || edgeCount < 0
+                    || size != HEADER + 8L * (nodeCount + 1) + 4L * edgeCount) {
+                throw new IOException("Not a graph file: " + path);
+            }
+            return new LinkGraph(file, nodeCount, edgeCount);
+        }
+    }
+
+    /**
+     * @return the number of nodes in the graph
+     */
+    public int nodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * @return the number of edges in the graph
+     */
+    public long edgeCount() {
+        return this.edgeCount;
+    }
+
+    /**
+     * @param node a node of the graph
+     * @return the index of the first edge from node
+     */
+    public long edgesStart(int node) {
+        return this.file.getLong(HEADER + 8L * node);
+    }
+
+    /**
+     * @param node a node of the graph
+     * @return one past the index of the last edge from node
+     */
+    public long edgesEnd(int node) {
+        return this.file.getLong(HEADER + 8L * (node + 1));
+    }
+
+    /**
+     * @param edge the index of an edge, in [0, edgeCount())
+     * @return the node the edge leads to
+     */
+    public int target(long edge) {
+        return this.file.getInt(this.targets + 4L * edge);
+    }
+
+    /**
+     * @param node a node of the graph
+     * @return the number of edges from node
+     */
+    public int degree(int node) {
+        return (int) (edgesEnd(node) - edgesStart(node));
+    }
+
+    /**
+     * @param node a node of the graph
+     * @return the nodes that node links to, in the order they are stored
+     * @throws IndexOutOfBoundsException if node is not a node of the graph
+     */
+    public int[] neighbors(int node) {
+        if (node < 0 || node >= this.nodeCount) {
+            throw new IndexOutOfBoundsException("No node " + node);
+        }
+        long start = edgesStart(node);
+        int[] result = new int[(int) (edgesEnd(node) - start)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = target(start + i);
+        }
+        return result;
+    }
+
+}
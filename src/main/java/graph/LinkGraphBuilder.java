@@ -0,0 +1,305 @@
+package cpen221.mp3.graph;
+
+import cpen221.mp3.wikimediator.SqlDumpReader;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Imports the links between the articles of a Wikipedia dump
+ * (https://dumps.wikimedia.org) into a directory a PageGraph can open: a
+ * TitleDictionary of the articles, a LinkGraph of the links between them, and
+ * the transpose LinkGraph of the links to each of them.
+ *
+ * Reads SQL dumps, which may be compressed with gzip:
+ * - the page table, in the layout (page_id, page_namespace, page_title, ...)
+ * - the pagelinks table, in the layout (pl_from, pl_namespace, pl_title, ...)
+ * - optionally, the redirect table, in the layout
+ *   (rd_from, rd_namespace, rd_title, ...)
+ * Only pages in the main namespace, including redirects, become nodes, and
+ * only links between them become edges.
+ *
+ * In the transpose graph, redirects are folded into their targets: a link
+ * to a redirect counts as a link to its target, the links from redirects
+ * are left out (so no page is linked to from a redirect, and no page links
+ * to a redirect), and each page is linked to from another at most once.
+ * The pages linking to a page are in increasing order.
+ *
+ * Each graph is written in two passes over its links, first to count the
+ * links from each node and then to write them into place, so that the
+ * links never have to fit in the heap; only the titles do.
+ */
+public final class LinkGraphBuilder {
+
+    private static final int NS_MAIN = 0;
+
+    private LinkGraphBuilder() {
+    }
+
+    /**
+     * Build a graph from a page dump and a pagelinks dump.
+     *
+     * @param pageDump the SQL dump of the page table
+     * @param pageLinksDump the SQL dump of the pagelinks table
+     * @param dir the directory to write the graph to, which is created if
+     *            it does not exist; a graph already in it is replaced
+     * @throws IOException if a dump cannot be read or the graph cannot be
+     *         written
+     */
+    public static void build(Path pageDump, Path pageLinksDump, Path dir) throws IOException {
+        build(pageDump, pageLinksDump, null, dir);
+    }
+
+    /**
+     * Build a graph from a page dump and a pagelinks dump, folding the
+     * redirects of a redirect dump into their targets in the transpose graph.
+     *
+     * @param pageDump the SQL dump of the page table
+     * @param pageLinksDump the SQL dump of the pagelinks table
+     * @param redirectDump the SQL dump of the redirect table, or null to
+     *                     treat redirects like other pages
+     * @param dir the directory to write the graph to, which is created if
+     *            it does not exist; a graph already in it is replaced
+     * @throws IOException if a dump cannot be read or the graph cannot be
+     *         written
+     */
+    public static void build(Path pageDump, Path pageLinksDump, Path redirectDump, Path dir)
+            throws IOException {
+        Files.createDirectories(dir);
+        Pages pages = readPages(pageDump, dir.resolve(PageGraph.TITLES));
+        int n = pages.titles.size();
+
+        Path linksFile = dir.resolve(PageGraph.LINKS);
+        write(linksFile, n, links -> forEachLink(pageLinksDump, pages, links));
+
+        int[] redirects = new int[n];
+        Arrays.fill(redirects, -1);
+        if (redirectDump != null) {
+            readRedirects(redirectDump, pages, redirects);
+        }
+        LinkGraph graph = LinkGraph.open(linksFile);
+        write(dir.resolve(PageGraph.IN_LINKS), n,
+                links -> forEachInLink(graph, redirects, links));
+    }
+
+    /**
+     * Write a graph file.
+     *
+     * @param path the file to write, which is replaced if it exists
+     * @param n the number of nodes
+     * @param source gives the same links every time it is run
+     * @throws IOException if the links cannot be read or the file cannot be
+     *         written
+     */
+    private static void write(Path path, int n, LinkSource source) throws IOException {
+        long[] offsets = new long[n + 1];
+        source.forEach((from, to) -> offsets[from + 1]++);
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        long edgeCount = offsets[n];
+        long targets = LinkGraph.HEADER + 8L * (n + 1);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedChunks file = new MappedChunks(channel, FileChannel.MapMode.READ_WRITE,
+                    targets + 4L * edgeCount);
+            file.putInt(0, LinkGraph.MAGIC);
+            file.putInt(4, n);
+            file.putLong(8, edgeCount);
+            for (int i = 0; i <= n; i++) {
+                file.putLong(LinkGraph.HEADER + 8L * i, offsets[i]);
+            }
+
+            // offsets[v] becomes the index of the next edge from v to write
+            source.forEach((from, to) -> file.putInt(targets + 4L * offsets[from]++, to));
+            file.force();
+        }
+    }
+
+    /**
+     * The articles of a dump.
+     */
+    private static class Pages {
+        private final TitleDictionary titles;
+        private final long[] byPageId;
+
+        /**
+         * @param titles the titles of the articles
+         * @param byPageId the page id of each article in the upper 32 bits
+         *                 and its node in the lower 32 bits, sorted
+         */
+        private Pages(TitleDictionary titles, long[] byPageId) {
+            this.titles = titles;
+            this.byPageId = byPageId;
+        }
+
+        /**
+         * @param pageId the id of a page in the dump
+         * @return the node of the page, or -1 if it is not an article
+         */
+        private int node(int pageId) {
+            int i = Arrays.binarySearch(this.byPageId, (long) pageId << 32);
+            i = i >= 0 ? i : -i - 1;
+            if (i < this.byPageId.length && (int) (this.byPageId[i] >>> 32) == pageId) {
+                return (int) this.byPageId[i];
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Read the articles of a page dump, and write the dictionary of their
+     * titles.
+     *
+     * @param pageDump the SQL dump of the page table
+     * @param titlesFile the file to write the dictionary of titles to
+     * @return the articles, numbered in the order of their titles
+     * @throws IOException if the dump cannot be read or the dictionary
+     *         cannot be written
+     */
+    private static Pages readPages(Path pageDump, Path titlesFile) throws IOException {
+        List<String> titles = new ArrayList<>();
+        int[][] ids = {new int[1024]};
+        SqlDumpReader.read(pageDump, "page", row -> {
+            if (Integer.parseInt(row.get(1)) == NS_MAIN) {
+                if (titles.size() == ids[0].length) {
+                    ids[0] = Arrays.copyOf(ids[0], ids[0].length * 2);
+                }
+                ids[0][titles.size()] = Integer.parseInt(row.get(0));
+                titles.add(row.get(2).replace('_', ' '));
+            }
+        });
+
+        TitleDictionary.write(titlesFile, titles);
+        TitleDictionary table = TitleDictionary.open(titlesFile);
+
+        long[] byPageId = new long[titles.size()];
+        for (int i = 0; i < byPageId.length; i++) {
+            byPageId[i] = (long) ids[0][i] << 32 | table.id(titles.get(i));
+        }
+        Arrays.sort(byPageId);
+        return new Pages(table, byPageId);
+    }
+
+    /**
+     * Read the redirects between articles from a redirect dump.
+     *
+     * @param redirectDump the SQL dump of the redirect table
+     * @param pages the articles of the dump
+     * @param redirects is set the node each redirect leads to
+     * @throws IOException if the dump cannot be read
+     */
+    private static void readRedirects(Path redirectDump, Pages pages, int[] redirects)
+            throws IOException {
+        SqlDumpReader.read(redirectDump, "redirect", row -> {
+            if (Integer.parseInt(row.get(1)) != NS_MAIN) {
+                return;
+            }
+            int from = pages.node(Integer.parseInt(row.get(0)));
+            int to = pages.titles.id(row.get(2).replace('_', ' '));
+            if (from >= 0 && to >= 0 && from != to) {
+                redirects[from] = to;
+            }
+        });
+    }
+
+    /**
+     * Receives the links between articles.
+     */
+    private interface LinkConsumer {
+        void accept(int from, int to);
+    }
+
+    /**
+     * Gives the links of a graph to a LinkConsumer.
+     */
+    private interface LinkSource {
+        void forEach(LinkConsumer links) throws IOException;
+    }
+
+    /**
+     * Give the links of the transpose of a graph, with redirects folded
+     * into their targets.
+     *
+     * @param graph the graph
+     * @param redirects the node each redirect leads to, and -1 for the nodes
+     *                  that are not redirects
+     * @param links is given each link, from the page linked to to the page
+     *              linking to it, once
+     */
+    private static void forEachInLink(LinkGraph graph, int[] redirects, LinkConsumer links) {
+        // last[t] is the last page found linking to t; since the pages
+        // linking are visited in order, a repeated link is always the last
+        int[] last = new int[graph.nodeCount()];
+        Arrays.fill(last, -1);
+        for (int from = 0; from < graph.nodeCount(); from++) {
+            if (redirects[from] >= 0) {
+                continue;
+            }
+            for (long e = graph.edgesStart(from); e < graph.edgesEnd(from); e++) {
+                int to = graph.target(e);
+                if (redirects[to] >= 0) {
+                    to = redirects[to];
+                }
+                if (to != from && last[to] != from) {
+                    last[to] = from;
+                    links.accept(to, from);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the links between articles from a pagelinks dump.
+     *
+     * @param pageLinksDump the SQL dump of the pagelinks table
+     * @param pages the articles of the dump
+     * @param links is given the nodes of each link, in the order of the dump
+     * @throws IOException if the dump cannot be read
+     */
+    private static void forEachLink(Path pageLinksDump, Pages pages, LinkConsumer links)
+            throws IOException {
+        SqlDumpReader.read(pageLinksDump, "pagelinks", row -> {
+            if (Integer.parseInt(row.get(1)) != NS_MAIN) {
+                return;
+            }
+            int from = pages.node(Integer.parseInt(row.get(0)));
+            int to = pages.titles.id(row.get(2).replace('_', ' '));
+            if (from >= 0 && to >= 0) {
+                links.accept(from, to);
+            }
+        });
+    }
+
+    /**
+     * Build a graph from the command line.
+     *
+     * @param args the page dump, the pagelinks dump, optionally the redirect
+     *             dump, and the directory to write the graph to
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("Usage: LinkGraphBuilder <page.sql[.gz]> <pagelinks.sql[.gz]> "
+                    + "[redirect.sql[.gz]] <dir>");
+            System.exit(2);
+        }
+        try {
+            Path redirects = args.length == 4 ? Paths.get(args[2]) : null;
+            build(Paths.get(args[0]), Paths.get(args[1]), redirects,
+                    Paths.get(args[args.length - 1]));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+}
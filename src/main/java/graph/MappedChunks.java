@@ -0,0 +1,96 @@
+package cpen221.mp3.graph;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file mapped into memory as consecutive chunks, so that files larger
+ * than the 2 GiB a single MappedByteBuffer can hold are read and written
+ * through absolute long positions.
+ *
+ * CHUNK is a multiple of 8, so an int or long at a position aligned to its
+ * size never spans two chunks.
+ */
+final class MappedChunks {
+
+    /* the size of every chunk but the last, 1 GiB */
+    static final int CHUNK_BITS = 30;
+    static final long CHUNK = 1L << CHUNK_BITS;
+    private static final long MASK = CHUNK - 1;
+
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * MappedChunks Rep Invariants
+     *
+     * chunks is not null and contains no null elements
+     * every element of chunks but the last holds CHUNK bytes
+     * every element of chunks is little-endian
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * MappedChunks Abstraction Functions
+     *
+     * chunks -> the bytes of the file, from position i * CHUNK in chunks[i]
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * Only absolute gets and puts are used, which do not change the
+     * position of a buffer. A read-only mapping may be read by any number
+     * of threads; a writable mapping is confined to the thread writing it.
+     */
+
+    /**
+     * Map a region of a file.
+     *
+     * @param channel the channel of the file, which stays valid after the
+     *                channel is closed
+     * @param mode READ_ONLY or READ_WRITE
+     * @param size the number of bytes to map from the start of the file,
+     *             which for READ_WRITE grows the file to that size
+     * @throws IOException if the file cannot be mapped
+     */
+    MappedChunks(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+        int count = (int) ((size + MASK) >>> CHUNK_BITS);
+        this.chunks = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << CHUNK_BITS;
+            this.chunks[i] = channel.map(mode, start, Math.min(CHUNK, size - start));
+            this.chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    byte getByte(long position) {
+        return this.chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & MASK));
+    }
+
+    int getInt(long position) {
+        return this.chunks[(int) (position >>> CHUNK_BITS)].getInt((int) (position & MASK));
+    }
+
+    long getLong(long position) {
+        return this.chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & MASK));
+    }
+
+    void putInt(long position, int value) {
+        this.chunks[(int) (position >>> CHUNK_BITS)].putInt((int) (position & MASK), value);
+    }
+
+    void putLong(long position, long value) {
+        this.chunks[(int) (position >>> CHUNK_BITS)].putLong((int) (position & MASK), value);
+    }
+
+    /**
+     * Write the changes made through a READ_WRITE mapping to the file.
+     */
+    void force() {
+        for (MappedByteBuffer chunk : this.chunks) {
+            chunk.force();
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+package cpen221.mp3.graph;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The links between the articles of a wiki, stored locally so that they
+ * can be followed without requesting each page: a LinkGraph of the links,
+ * its transpose with redirects folded into their targets, and a
+ * TitleDictionary naming their nodes, as written by LinkGraphBuilder.
+ * Traversals run on the ids of the nodes in a PathFinder, and only look up
+ * the titles of the pages they return.
+ *
+ * A PathFinder holds several arrays sized to the whole graph, so the graph
+ * creates at most a fixed number of them, one per processor by default,
+ * and a traversal started while all of them are in use waits for one.
+ */
+public class PageGraph {
+
+    static final String TITLES = "titles.dict";
+    static final String LINKS = "links.csr";
+    static final String IN_LINKS = "links.in.csr";
+
+    private final TitleDictionary titles;
+    private final LinkGraph links;
+    private final LinkGraph inLinks;
+    private final int maxFinders;
+    private final BlockingQueue<PathFinder> finders;
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * PageGraph Rep Invariants
+     *
+     * titles, links, inLinks and finders are not null
+     * titles.size() == links.nodeCount() == inLinks.nodeCount()
+     * every element of finders searches links and inLinks
+     * maxFinders >= 1 and finders holds at most maxFinders elements
+     * finders.size() <= created.get() <= maxFinders
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * PageGraph Abstraction Functions
+     *
+     * titles -> the title of each node of links
+     * links -> the links between the articles
+     * inLinks -> the links to each article, from the articles that link to
+     *            it or to a redirect to it, other than redirects
+     * finders -> the PathFinders no traversal is using, kept so that their
+     *            buffers are allocated once rather than per traversal
+     * maxFinders -> the most PathFinders created for this graph
+     * created -> the number of PathFinders created for this graph, in use
+     *            or not
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * titles, links and inLinks are immutable. A traversal keeps its state
+     * in a PathFinder it has taken out of the thread-safe queue finders,
+     * so no other thread uses that PathFinder until it is offered back, and
+     * any number of threads may use the graph. A thread creates a
+     * PathFinder only after incrementing created without passing
+     * maxFinders, so no more PathFinders are created than finders can hold,
+     * and offering one back never fails.
+     */
+
+    /**
+     * Create a graph of articles that runs as many traversals at a time as
+     * there are processors.
+     *
+     * @param titles the titles of the nodes of links
+     * @param links the links between the articles
+     * @param inLinks the links to each article with redirects folded into
+     *                their targets, without repeats
+     * @throws IllegalArgumentException if titles and the graphs do not have
+     *         the same number of nodes
+     */
+    public PageGraph(TitleDictionary titles, LinkGraph links, LinkGraph inLinks) {
+        this(titles, links, inLinks, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a graph of articles.
+     *
+     * @param titles the titles of the nodes of links
+     * @param links the links between the articles
+     * @param inLinks the links to each article with redirects folded into
+     *                their targets, without repeats
+     * @param maxFinders the most traversals that run at a time, each with
+     *                   buffers sized to the graph
+     * @throws IllegalArgumentException if titles and the graphs do not have
+     *         the same number of nodes, or maxFinders < 1
+     */
+    public PageGraph(TitleDictionary titles, LinkGraph links, LinkGraph inLinks, int maxFinders) {
+        if (titles.size() != links.nodeCount() || titles.size() != inLinks.nodeCount()) {
+            throw new IllegalArgumentException("Titles do not match the graph");
+        }
+        if (maxFinders < 1) {
+            throw new IllegalArgumentException("maxFinders must be positive");
+        }
+        this.titles = titles;
+        this.links = links;
+        this.inLinks = inLinks;
+        this.maxFinders = maxFinders;
+        this.finders = new ArrayBlockingQueue<>(maxFinders);
+    }
+
+    /**
+     * Open a graph written by LinkGraphBuilder.
+     *
+     * @param dir the directory the graph was written to
+     * @return the graph
+     * @throws IOException if the files cannot be read or do not match
+     */
+    public static PageGraph open(Path dir) throws IOException {
+        TitleDictionary titles = TitleDictionary.open(dir.resolve(TITLES));
+        LinkGraph links = LinkGraph.open(dir.resolve(LINKS));
+        LinkGraph inLinks = LinkGraph.open(dir.resolve(IN_LINKS));
+        if (titles.size() != links.nodeCount() || titles.size() != inLinks.nodeCount()) {
+            throw new IOException("Titles do not match the graph in " + dir);
+        }
+        return new PageGraph(titles, links, inLinks);
+    }
+
+    /**
+     * @return the titles of the nodes
+     */
+    public TitleDictionary titles() {
+        return this.titles;
+    }
+
+    /**
+     * @return the links between the nodes
+     */
+    public LinkGraph links() {
+        return this.links;
+    }
+
+    /**
+     * @return the links to each node, with redirects folded into their
+     *         targets
+     */
+    public LinkGraph inLinks() {
+        return this.inLinks;
+    }
+
+    /**
+     * @param title a title
+     * @return true if the graph has an article with that title
+     */
+    public boolean contains(String title) {
+        return this.titles.id(title) >= 0;
+    }
+
+    /**
+     * Get the articles an article links to.
+     *
+     * @param title the title of the article
+     * @return the titles of the articles it links to, or an empty list if
+     *         the graph has no article with that title
+     */
+    public List<String> getLinksOnPage(String title) {
+        int node = this.titles.id(title);
+        if (node < 0) {
+            return new ArrayList<>();
+        }
+
+        int[] targets = this.links.neighbors(node);
+        List<String> result = new ArrayList<>(targets.length);
+        for (int target : targets) {
+            result.add(this.titles.title(target));
+        }
+        return result;
+    }
+
+    /**
+     * Get the articles that link to an article, directly or through a
+     * redirect to it.
+     *
+     * @param title the title of the article
+     * @return the titles of the articles linking to it, other than
+     *         redirects, without repeats; an empty list if the graph has no
+     *         article with that title or it is a redirect
+     */
+    public List<String> whatLinksHere(String title) {
+        int node = this.titles.id(title);
+        if (node < 0) {
+            return new ArrayList<>();
+        }
+
+        int[] sources = this.inLinks.neighbors(node);
+        List<String> result = new ArrayList<>(sources.length);
+        for (int source : sources) {
+            result.add(this.titles.title(source));
+        }
+        return result;
+    }
+
+    /**
+     * Get the articles that can be reached from an article by following at
+     * most hops links.
+     *
+     * @param title the title of the article
+     * @param hops the maximum number of links to follow, >= 0
+     * @return title if hops is 0, and otherwise the titles of the articles
+     *         reached by following 1 to hops links, without repeats, nearest
+     *         first; an empty list if the graph has no article with that title
+     */
+    public List<String> getConnectedPages(String title, int hops) {
+        int start = this.titles.id(title);
+        if (start < 0) {
+            return new ArrayList<>();
+        }
+        if (hops == 0) {
+            return new ArrayList<>(Collections.singletonList(title));
+        }
+
+        PathFinder finder = borrowFinder();
+        int[] reached;
+        try {
+            reached = finder.connected(start, hops);
+        } finally {
+            this.finders.offer(finder);
+        }
+
+        List<String> result = new ArrayList<>(reached.length);
+        for (int node : reached) {
+            result.add(this.titles.title(node));
+        }
+        return result;
+    }
+
+    /**
+     * Find a shortest path of links from one article to another, searching
+     * forward from the start along links and backward from the stop along
+     * the links to it at the same time, one whole level of whichever side
+     * has fewer pages waiting at a time. A link to a redirect counts as a
+     * link to the redirect's target when searching backward.
+     *
+     * @param startPage the title of the article to start from
+     * @param stopPage the title of the article to reach
+     * @return the titles of the articles on the path from startPage to
+     *         stopPage inclusive, or an empty list if there is no path or
+     *         the graph does not have both articles
+     */
+    public List<String> getPath(String startPage, String stopPage) {
+        int start = this.titles.id(startPage);
+        int stop = this.titles.id(stopPage);
+        if (start < 0 || stop < 0) {
+            return new LinkedList<>();
+        }
+
+        PathFinder finder = borrowFinder();
+        int[] nodes;
+        try {
+            nodes = finder.path(start, stop);
+        } finally {
+            this.finders.offer(finder);
+        }
+
+        LinkedList<String> path = new LinkedList<>();
+        for (int node : nodes) {
+            path.add(this.titles.title(node));
+        }
+        return path;
+    }
+
+    /**
+     * Take an idle PathFinder from the pool, create one if every PathFinder
+     * is in use and there are fewer than the pool holds, or otherwise wait
+     * for one to be offered back. The caller must offer it back when done.
+     * An interrupt does not stop the wait, but is kept for the caller.
+     *
+     * @return a PathFinder over links and inLinks used by no other thread
+     */
+    private PathFinder borrowFinder() {
+        PathFinder finder = this.finders.poll();
+        if (finder != null) {
+            return finder;
+        }
+
+        int count = this.created.get();
+        while (count < this.maxFinders) {
+            if (this.created.compareAndSet(count, count + 1)) {
+                return new PathFinder(this.links, this.inLinks);
+            }
+            count = this.created.get();
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return this.finders.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,274 @@
+package cpen221.mp3.graph;
+
+/**
+ * Searches a LinkGraph breadth-first using only primitive arrays sized to
+ * the graph: a queue per direction, in which each level of the search is a
+ * contiguous range, a bitset per direction marking the nodes visited, and
+ * an array per direction of the node each node was reached from.
+ *
+ * The arrays are allocated once and cleaned up after each search by
+ * visiting only the nodes that search queued, so a search allocates
+ * nothing but its result, and takes time in proportion to the part of the
+ * graph it explores rather than to the whole graph.
+ *
+ * A PathFinder is not thread-safe; each thread needs its own, or must
+ * borrow one at a time from a pool.
+ */
+public final class PathFinder {
+
+    private final LinkGraph forward;
+    private final LinkGraph backward;
+
+    private final int[] queueForward;
+    private final int[] queueBackward;
+    private final long[] visitedForward;
+    private final long[] visitedBackward;
+    private final int[] previousForward;
+    private final int[] previousBackward;
+
+    private int tailForward;
+    private int tailBackward;
+
+    /**
+     * PathFinder Rep Invariants
+     *
+     * forward and backward are not null and have the same number of nodes n
+     * the queues and previous arrays have n elements, and the visited
+     *     bitsets n bits
+     * between searches, tailForward == tailBackward == 0 and no bit of
+     *     visitedForward or visitedBackward is set
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * PathFinder Abstraction Functions
+     *
+     * forward -> the links followed searching from the start
+     * backward -> the links followed searching from the stop, from each
+     *             page to the pages linking to it
+     * queueForward[0, tailForward) -> the nodes reached from the start, in
+     *                                 the order they were reached
+     * queueBackward[0, tailBackward) -> the nodes reached from the stop, in
+     *                                   the order they were reached
+     * visitedForward, visitedBackward -> bit v is set if v is in the queue
+     * previousForward[v], previousBackward[v] -> for a node v in the queue,
+     *                                            the node it was reached from
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * This class is not thread-safe; its buffers must be confined to one
+     * thread at a time.
+     */
+
+    /**
+     * Create a PathFinder, allocating its buffers.
+     *
+     * @param forward the links between pages
+     * @param backward the links to each page in forward, such as the
+     *                 transpose of forward
+     * @throws IllegalArgumentException if the graphs do not have the same
+     *         number of nodes
+     */
+    public PathFinder(LinkGraph forward, LinkGraph backward) {
+        if (forward.nodeCount() != backward.nodeCount()) {
+            throw new IllegalArgumentException("The graphs do not have the same nodes");
+        }
+        int n = forward.nodeCount();
+        this.forward = forward;
+        this.backward = backward;
+        this.queueForward = new int[n];
+        this.queueBackward = new int[n];
+        this.visitedForward = new long[(n + 63) >>> 6];
+        this.visitedBackward = new long[(n + 63) >>> 6];
+        this.previousForward = new int[n];
+        this.previousBackward = new int[n];
+    }
+
+    /**
+     * Find a shortest path from one node to another, searching forward from
+     * start and backward from stop at the same time. Each step expands a
+     * whole level of whichever side has fewer nodes in its current level,
+     * and the search stops at the first node reached from both sides.
+     *
+     * @param start the node to start from
+     * @param stop the node to reach
+     * @return the nodes on the path from start to stop inclusive, or an
+     *         empty array if there is no path
+     * @throws IndexOutOfBoundsException if start or stop is not a node
+     */
+    public int[] path(int start, int stop) {
+        checkNode(start);
+        checkNode(stop);
+        if (start == stop) {
+            return new int[] {start};
+        }
+
+        try {
+            visitForward(start, -1);
+            visitBackward(stop, -1);
+            int levelForward = 0;
+            int levelBackward = 0;
+
+            while (levelForward < this.tailForward && levelBackward < this.tailBackward) {
+                // levels are expanded whole, so the first node both sides
+                // reach is on a shortest path
+                if (this.tailForward - levelForward <= this.tailBackward - levelBackward) {
+                    int end = this.tailForward;
+                    for (int i = levelForward; i < end; i++) {
+                        int node = this.queueForward[i];
+                        for (long e = this.forward.edgesStart(node); e < this.forward.edgesEnd(node); e++) {
+                            int target = this.forward.target(e);
+                            if (!isSet(this.visitedForward, target)) {
+                                visitForward(target, node);
+                                if (isSet(this.visitedBackward, target)) {
+                                    return join(target, start, stop);
+                                }
+                            }
+                        }
+                    }
+                    levelForward = end;
+                } else {
+                    int end = this.tailBackward;
+                    for (int i = levelBackward; i < end; i++) {
+                        int node = this.queueBackward[i];
+                        for (long e = this.backward.edgesStart(node); e < this.backward.edgesEnd(node); e++) {
+                            int source = this.backward.target(e);
+                            if (!isSet(this.visitedBackward, source)) {
+                                visitBackward(source, node);
+                                if (isSet(this.visitedForward, source)) {
+                                    return join(source, start, stop);
+                                }
+                            }
+                        }
+                    }
+                    levelBackward = end;
+                }
+            }
+            return new int[0];
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Find the nodes that can be reached from a node by following at most
+     * hops links.
+     *
+     * @param start the node to start from
+     * @param hops the maximum number of links to follow, >= 1
+     * @return the nodes reached by following 1 to hops links, without
+     *         repeats, nearest first; start is included only if a link
+     *         leads back to it
+     * @throws IndexOutOfBoundsException if start is not a node
+     */
+    public int[] connected(int start, int hops) {
+        checkNode(start);
+
+        try {
+            visitForward(start, -1);
+            // the position start would have in the queue if it were not
+            // already in it, or -1 if no link leads back to it
+            int startAt = -1;
+            int level = 0;
+            for (int hop = 0; hop < hops && level < this.tailForward; hop++) {
+                int end = this.tailForward;
+                for (int i = level; i < end; i++) {
+                    int node = this.queueForward[i];
+                    for (long e = this.forward.edgesStart(node); e < this.forward.edgesEnd(node); e++) {
+                        int target = this.forward.target(e);
+                        if (target == start && startAt < 0) {
+                            startAt = this.tailForward;
+                        } else if (!isSet(this.visitedForward, target)) {
+                            visitForward(target, node);
+                        }
+                    }
+                }
+                level = end;
+            }
+
+            int[] result = new int[this.tailForward - (startAt < 0 ? 1 : 0)];
+            if (startAt < 0) {
+                System.arraycopy(this.queueForward, 1, result, 0, result.length);
+            } else {
+                System.arraycopy(this.queueForward, 1, result, 0, startAt - 1);
+                result[startAt - 1] = start;
+                System.arraycopy(this.queueForward, startAt, result, startAt,
+                        this.tailForward - startAt);
+            }
+            return result;
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Join the two halves of a path at the node both sides reached.
+     *
+     * @param meet the node reached from both sides
+     * @param start the node the path starts at
+     * @param stop the node the path ends at
+     * @return the nodes on the path from start to stop through meet
+     */
+    private int[] join(int meet, int start, int stop) {
+        int toStart = 0;
+        for (int node = meet; node != start; node = this.previousForward[node]) {
+            toStart++;
+        }
+        int toStop = 0;
+        for (int node = meet; node != stop; node = this.previousBackward[node]) {
+            toStop++;
+        }
+
+        int[] path = new int[toStart + 1 + toStop];
+        int node = meet;
+        for (int i = toStart; i > 0; i--) {
+            path[i] = node;
+            node = this.previousForward[node];
+        }
+        path[0] = start;
+        node = meet;
+        for (int i = toStart + 1; i < path.length; i++) {
+            node = this.previousBackward[node];
+            path[i] = node;
+        }
+        return path;
+    }
+
+    private void visitForward(int node, int previous) {
+        this.visitedForward[node >>> 6] |= 1L << node;
+        this.previousForward[node] = previous;
+        this.queueForward[this.tailForward++] = node;
+    }
+
+    private void visitBackward(int node, int previous) {
+        this.visitedBackward[node >>> 6] |= 1L << node;
+        this.previousBackward[node] = previous;
+        this.queueBackward[this.tailBackward++] = node;
+    }
+
+    private static boolean isSet(long[] bits, int node) {
+        return (bits[node >>> 6] & 1L << node) != 0;
+    }
+
+    /**
+     * Clear the marks of the nodes the last search visited.
+     */
+    private void reset() {
+        for (int i = 0; i < this.tailForward; i++) {
+            this.visitedForward[this.queueForward[i] >>> 6] = 0;
+        }
+        for (int i = 0; i < this.tailBackward; i++) {
+            this.visitedBackward[this.queueBackward[i] >>> 6] = 0;
+        }
+        this.tailForward = 0;
+        this.tailBackward = 0;
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= this.forward.nodeCount()) {
+            throw new IndexOutOfBoundsException("No node " + node);
+        }
+    }
+
+}
@@ -0,0 +1,388 @@
+package cpen221.mp3.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The titles of the nodes of a LinkGraph, read from a file mapped into
+ * memory. The id of a page is the index of its title among all the titles
+ * sorted by their UTF-8 bytes (the order MediaWiki sorts titles in), so
+ * ids are dense.
+ *
+ * The titles are front-coded in blocks of BLOCK: the first title of a block
+ * is stored whole, and each other title as the length of the prefix it
+ * shares with the title before it and the rest of its bytes. Titles share
+ * long prefixes in sorted order, so the file is much smaller than the
+ * titles, and none of them are on the heap until they are looked up.
+ * Looking up the title of an id decodes at most BLOCK titles, and looking
+ * up the id of a title binary searches the first titles of the blocks and
+ * then decodes one block.
+ *
+ * The file is little-endian and made of:
+ * - a header: the int MAGIC, the int number of titles, the int BLOCK, an
+ *   unused int and the long position of the index
+ * - the blocks, where every length is an unsigned LEB128 varint: the first
+ *   title as its length and bytes, and the others as their shared prefix
+ *   length, suffix length and suffix bytes
+ * - padding to a multiple of 8 bytes
+ * - the index: the long position of each block
+ */
+public class TitleDictionary {
+
+    /* the first four bytes of a dictionary file, "TDC1" */
+    private static final int MAGIC = 0x31434454;
+    private static final int HEADER = 24;
+    static final int BLOCK = 16;
+
+    private final MappedChunks file;
+    private final int size;
+    private final int blockCount;
+    private final long index;
+
+    /**
+     * TitleDictionary Rep Invariants
+     *
+     * file holds a dictionary in the format above
+     * size >= 0
+     * blockCount = ceil(size / BLOCK)
+     * the titles are in strictly increasing order of their UTF-8 bytes
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * TitleDictionary Abstraction Functions
+     *
+     * file -> the titles, mapped into memory; the title with id i is the
+     *         (i % BLOCK)th title of block i / BLOCK
+     * size -> the number of titles
+     * blockCount -> the number of blocks
+     * index -> the position in file of the position of the first block
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * This class is immutable and file is mapped read-only; every lookup
+     * decodes titles into its own buffer, so any number of threads may
+     * look up titles at once.
+     */
+
+    private TitleDictionary(MappedChunks file, int size, long index) {
+        this.file = file;
+        this.size = size;
+        this.blockCount = (size + BLOCK - 1) / BLOCK;
+        this.index = index;
+    }
+
+    /**
+     * Open a dictionary written by write.
+     *
+     * @param path the dictionary file
+     * @return the dictionary
+     * @throws IOException if the file cannot be read or is not a dictionary
+     */
+    public static TitleDictionary open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER) {
+                throw new IOException("Not a title dictionary: " + path);
+            }
+
+            MappedChunks file = new MappedChunks(channel, FileChannel.MapMode.READ_ONLY, fileSize);
+            int size = file.getInt(4);
+            long index = file.getLong(16);
+            long blocks = (size + (long) BLOCK - 1) / BLOCK;
+            if (file.getInt(0) != MAGIC || size < 0 || file.getInt(8) != BLOCK
+                    || index < HEADER || index % 8 != 0 || index + 8 * blocks != fileSize) {
+                throw new IOException("Not a title dictionary: " + path);
+            }
+            return new TitleDictionary(file, size, index);
+        }
+    }
+
+    /**
+     * Write a dictionary of titles to a file.
+     *
+     * @param path the file to write, which is replaced if it exists
+     * @param titles the titles, in any order
+     * @throws IllegalArgumentException if a title appears more than once
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, Collection<String> titles) throws IOException {
+        byte[][] keys = new byte[titles.size()][];
+        int n = 0;
+        for (String title : titles) {
+            keys[n++] = title.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(keys, Arrays::compareUnsigned);
+        for (int i = 1; i < keys.length; i++) {
+            if (Arrays.equals(keys[i - 1], keys[i])) {
+                throw new IllegalArgumentException("Repeated title "
+                        + new String(keys[i], StandardCharsets.UTF_8));
+            }
+        }
+
+        long[] blocks = new long[(keys.length + BLOCK - 1) / BLOCK];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel, HEADER);
+            for (int i = 0; i < keys.length; i++) {
+                if (i % BLOCK == 0) {
+                    blocks[i / BLOCK] = out.position;
+                    out.putVarint(keys[i].length);
+                    out.put(keys[i], 0, keys[i].length);
+                } else {
+                    int shared = sharedPrefix(keys[i - 1], keys[i]);
+                    out.putVarint(shared);
+                    out.putVarint(keys[i].length - shared);
+                    out.put(keys[i], shared, keys[i].length - shared);
+                }
+            }
+
+            while (out.position % 8 != 0) {
+                out.put(new byte[1], 0, 1);
+            }
+            long index = out.position;
+            for (long block : blocks) {
+                out.putLong(block);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(keys.length).putInt(BLOCK).putInt(0).putLong(index);
+            header.flip();
+            channel.write(header, 0);
+        }
+    }
+
+    /**
+     * @return the number of titles in the dictionary
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param id the id of a title
+     * @return the title with that id
+     * @throws IndexOutOfBoundsException if id is not in [0, size())
+     */
+    public String title(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException("No title " + id);
+        }
+
+        Cursor cursor = new Cursor(block(id / BLOCK));
+        cursor.readFirst();
+        for (int i = id % BLOCK; i > 0; i--) {
+            cursor.readNext();
+        }
+        return new String(cursor.title, 0, cursor.length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param title a title
+     * @return the id of the title, or -1 if it is not in the dictionary
+     */
+    public int id(String title) {
+        byte[] key = title.getBytes(StandardCharsets.UTF_8);
+
+        // find the last block whose first title is at most key
+        int lo = 0;
+        int hi = this.blockCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareFirst(mid, key);
+            if (cmp == 0) {
+                return mid * BLOCK;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (hi < 0) {
+            return -1;
+        }
+
+        Cursor cursor = new Cursor(block(hi));
+        cursor.readFirst();
+        int end = Math.min(BLOCK, this.size - hi * BLOCK);
+        for (int i = 1; i < end; i++) {
+            cursor.readNext();
+            int cmp = Arrays.compareUnsigned(cursor.title, 0, cursor.length, key, 0, key.length);
+            if (cmp == 0) {
+                return hi * BLOCK + i;
+            } else if (cmp > 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param block the number of a block
+     * @return the position of the block in file
+     */
+    private long block(int block) {
+        return this.file.getLong(this.index + 8L * block);
+    }
+
+    /**
+     * Compare the first title of a block to a key, without decoding it.
+     *
+     * @param block the number of a block
+     * @param key the UTF-8 bytes of a title
+     * @return a negative number, zero or a positive number if the title is
+     *         less than, equal to or greater than key
+     */
+    private int compareFirst(int block, byte[] key) {
+        Cursor cursor = new Cursor(block(block));
+        int length = cursor.readVarint();
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.toUnsignedInt(this.file.getByte(cursor.position + i))
+                    - Byte.toUnsignedInt(key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * @param a the bytes of a title
+     * @param b the bytes of another title
+     * @return the number of bytes a and b start with in common
+     */
+    private static int sharedPrefix(byte[] a, byte[] b) {
+        int mismatch = Arrays.mismatch(a, b);
+        return mismatch < 0 ? a.length : mismatch;
+    }
+
+    /**
+     * Decodes the titles of a block in order.
+     */
+    private final class Cursor {
+        private long position;
+        private byte[] title = new byte[64];
+        private int length;
+
+        /**
+         * @param position the position of the block in file
+         */
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = file.getByte(this.position++);
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        /**
+         * Read the first title of the block into title.
+         */
+        private void readFirst() {
+            this.length = 0;
+            readBytes(readVarint());
+        }
+
+        /**
+         * Read the title after the one in title into title.
+         */
+        private void readNext() {
+            this.length = readVarint();
+            readBytes(readVarint());
+        }
+
+        /**
+         * Append bytes from file to title.
+         *
+         * @param count the number of bytes
+         */
+        private void readBytes(int count) {
+            if (this.length + count > this.title.length) {
+                this.title = Arrays.copyOf(this.title,
+                        Math.max(this.length + count, 2 * this.title.length));
+            }
+            for (int i = 0; i < count; i++) {
+                this.title[this.length++] = file.getByte(this.position++);
+            }
+        }
+    }
+
+    /**
+     * Writes a file through a buffer, keeping track of the position.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        /**
+         * @param channel the file to write
+         * @param position the position to start writing at
+         */
+        private Output(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.position = position;
+            channel.position(position);
+        }
+
+        private void put(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (!this.buffer.hasRemaining()) {
+                    flush();
+                }
+                int n = Math.min(count, this.buffer.remaining());
+                this.buffer.put(bytes, offset, n);
+                offset += n;
+                count -= n;
+                this.position += n;
+            }
+        }
+
+        private void putVarint(int value) throws IOException {
+            if (this.buffer.remaining() < 5) {
+                flush();
+            }
+            while ((value & ~0x7f) != 0) {
+                this.buffer.put((byte) (value & 0x7f | 0x80));
+                value >>>= 7;
+                this.position++;
+            }
+            this.buffer.put((byte) value);
+            this.position++;
+        }
+
+        private void putLong(long value) throws IOException {
+            if (this.buffer.remaining() < 8) {
+                flush();
+            }
+            this.buffer.putLong(value);
+            this.position += 8;
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package cpen221.mp3.server;
+
+import java.util.Map;
+
+public class StatsResponse {
+
+    private String id;
+    private String status;
+    private Map<String, Number> response;
+
+    public StatsResponse(String id, String status, Map<String, Number> response) {
+        this.id = id;
+        this.status = status;
+        this.response = response;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, Number> getResponse() {
+        return response;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+}
@@ -1,6 +1,7 @@
 package cpen221.mp3.server;
 
 import com.google.gson.*;
+import cpen221.mp3.cache.CacheStats;
 import cpen221.mp3.wikimediator.WikiMediator;
 import fastily.jwiki.core.Wiki;
 
@@ -12,8 +13,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import static java.lang.Thread.interrupted;
 
@@ -21,15 +24,19 @@ public class WikiMediatorServer {
 
     private final int maxClients;
     private final ServerSocket serverSocket;
+    private final WikiMediator wikiMediator;
 
     private final String dataPath = "local/data.json";
+    private final String cachePath = "local/cache.bin";
 
     /**
      * Rep Invariants
      *
      * maxClients >= 0
      * serverSocket not null
+     * wikiMediator not null
      * dataPath = the string "local/data.json"
+     * cachePath = the string "local/cache.bin"
      *
      * ---------------------------------------------------------------------------
      *
@@ -37,16 +44,24 @@ public class WikiMediatorServer {
      *
      * maxClients -> the maximum number of concurrent requests the server can handle
      * serverSocket -> a socket bound to the specified port
+     * wikiMediator -> the WikiMediator that serves the requests of every client,
+     *                 so that pages one client requested are in the cache for
+     *                 all others
      * dataPath -> the relative path to the file where statistics data is stored
+     * cachePath -> the relative path to the snapshot of the cache kept between
+     *              runs of the server
      *
      * ---------------------------------------------------------------------------
      *
      * Thread Safety Arguments
      *
      * This class is Thread-safe because
-     * - Except for statistics data, all data is confined to each thread
+     * - Except for statistics data and wikiMediator, all data is confined to
+     *   each thread
      * - The statistics data is read from and written to through synchronized
      *   functions, eliminating data races.
+     * - wikiMediator is thread-safe, and the timeout of each request is set
+     *   through withTimeout, which is confined to the thread handling it.
      */
 
     /**
@@ -58,7 +73,24 @@ public class WikiMediatorServer {
      * @throws IllegalArgumentException if the port number is invalid
      */
     public WikiMediatorServer(int port, int n) throws IllegalArgumentException {
+        this(port, n, new WikiMediator());
+    }
+
+    /**
+     * Start a server at a given port number, with the ability to process
+     * upto n requests concurrently, that serves every client with the same
+     * WikiMediator.
+     *
+     * @param port the port number to bind the server to
+     * @param n the number of concurrent requests the server can handle
+     * @param wikiMediator the WikiMediator to serve requests with, which is
+     *                     shared by all clients
+     * @throws IllegalArgumentException if the port number is invalid
+     */
+    public WikiMediatorServer(int port, int n, WikiMediator wikiMediator)
+            throws IllegalArgumentException {
         this.maxClients = n;
+        this.wikiMediator = wikiMediator;
 
         ServerSocket socket;
         boolean connected = false;
@@ -118,7 +150,7 @@ public class WikiMediatorServer {
      * @throws IOException if connection encounters an IO error
      */
     private void handle(Socket socket) throws IOException {
-        WikiMediator wm = new WikiMediator();
+        WikiMediator wm = this.wikiMediator;
 
         // get the socket's input stream, and wrap converters around it
         // that convert it from a byte stream to a character stream,
@@ -216,11 +248,12 @@ public class WikiMediatorServer {
         String JSONResponse = null;
 
         if (newRequest.getTimeout() != null) {
-            wm.timeout = Integer.parseInt(newRequest.getTimeout());
+            double timeout = Integer.parseInt(newRequest.getTimeout());
+            JSONResponse = wm.withTimeout(timeout, () -> executeRequest(newRequest, wm));
+        } else {
+            JSONResponse = executeRequest(newRequest, wm);
         }
 
-        JSONResponse = executeRequest(newRequest, wm);
-
         if (JSONResponse == null) {
             JSONResponse = gson.toJson(new Response(newRequest.getId(), "failed", "Operation timed out"));
         }
@@ -233,6 +266,7 @@ public class WikiMediatorServer {
         String id = newRequest.getId();
         Response response = null;
         ListResponse listResponse = null;
+        StatsResponse statsResponse = null;
         long startTime = System.currentTimeMillis();
 
         switch (newRequest.getType()) {
@@ -314,19 +348,53 @@ public class WikiMediatorServer {
                 break;
             }
 
+            case "cacheStats": {
+                statsResponse = new StatsResponse(id, "success", statsOf(wm.cacheStats()));
+                break;
+            }
+
             default: {
                 response = new Response(id, "failed", "Operation Failed");
                 break;
             }
         }
 
-        if (response == null) {
+        if (statsResponse != null) {
+            return gson.toJson(statsResponse);
+        } else if (response == null) {
             return gson.toJson(listResponse);
         } else {
             return gson.toJson(response);
         }
     }
 
+    /**
+     * Collect the figures of a cache's statistics that are reported to
+     * clients.
+     *
+     * @param stats the statistics of a cache
+     * @return the figures by name, with durations in microseconds
+     */
+    private Map<String, Number> statsOf(CacheStats stats) {
+        Map<String, Number> figures = new LinkedHashMap<>();
+        figures.put("hitCount", stats.hitCount());
+        figures.put("missCount", stats.missCount());
+        figures.put("hitRate", stats.hitRate());
+        figures.put("l2HitCount", stats.l2HitCount());
+        figures.put("l2MissCount", stats.l2MissCount());
+        figures.put("putCount", stats.putCount());
+        figures.put("updateCount", stats.updateCount());
+        figures.put("evictionCount", stats.evictionCount());
+        figures.put("expirationCount", stats.expirationCount());
+        figures.put("loadSuccessCount", stats.loadSuccessCount());
+        figures.put("loadFailureCount", stats.loadFailureCount());
+        figures.put("averageLoadMicros", stats.averageLoadPenalty() / 1000);
+        figures.put("loadP50Micros", stats.loadTimePercentile(0.5) / 1000);
+        figures.put("loadP99Micros", stats.loadTimePercentile(0.99) / 1000);
+        figures.put("lockWaitP99Micros", stats.lockWaitPercentile(0.99) / 1000);
+        return figures;
+    }
+
     /**
      * Write data to the file specified by dataPath.
      *
@@ -353,9 +421,40 @@ public class WikiMediatorServer {
     }
 
 
+    /**
+     * Fill the cache of wikiMediator with the snapshot at cachePath, if the
+     * server saved one when it last shut down.
+     */
+    private void loadCache() {
+        Path file = Paths.get(cachePath);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            wikiMediator.loadCache(file);
+        } catch (IOException e) {
+            e.printStackTrace(); // start with an empty cache
+        }
+    }
+
+    /**
+     * Write the cache of wikiMediator to a snapshot at cachePath.
+     */
+    private void saveCache() {
+        try {
+            Files.createDirectories(Paths.get(cachePath).getParent());
+            wikiMediator.saveCache(Paths.get(cachePath));
+        } catch (IOException e) {
+            e.printStackTrace(); // exception handling
+        }
+    }
+
+
     public static void main(String[] args) {
         try {
             WikiMediatorServer server = new WikiMediatorServer(100, 2);
+            server.loadCache();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::saveCache));
             server.serve();
         } catch (IOException e) {
             e.printStackTrace();
@@ -0,0 +1,454 @@
+package cpen221.mp3.wikimediator;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * A WikiBackend that answers every request from files of a Wikipedia dump
+ * (https://dumps.wikimedia.org), without any network access, so that a
+ * WikiMediator can be benchmarked and load tested offline and repeatably.
+ *
+ * The dump is read into memory when the backend is created, from:
+ * - an XML dump of the pages, such as pages-articles.xml (the latest
+ *   revision of each page) or pages-meta-history.xml (every revision),
+ *   which gives the titles, ids, redirects and text of the pages and the
+ *   authors of their revisions
+ * - optionally, the SQL dump of the pagelinks table, in the layout
+ *   (pl_from, pl_namespace, pl_title, ...)
+ * - optionally, the SQL dump of the categorylinks table
+ * Any of the files may be compressed with gzip. Meant for extracts of a
+ * wiki, or a wiki small enough for its text to fit in the heap.
+ *
+ * search is answered by matching the query in the titles and then in the
+ * text of the pages, not by a search index, so it is much slower than the
+ * other requests.
+ */
+public class DumpBackend implements WikiBackend {
+
+    private static final int NS_MAIN = 0;
+    private static final int NS_CATEGORY = 14;
+
+    private final Map<Integer, String> namespaces = new HashMap<>();
+    private final Map<String, DumpPage> pages = new HashMap<>();
+    private final Map<Integer, DumpPage> pagesById = new HashMap<>();
+    private final NavigableSet<String> articles = new TreeSet<>();
+    private final Map<String, List<String>> linksHere = new HashMap<>();
+    private final Map<String, List<String>> redirectsHere = new HashMap<>();
+    private final Map<String, List<String>> members = new HashMap<>();
+    private final Map<String, List<String>> contribs = new HashMap<>();
+
+    /**
+     * DumpBackend Rep Invariants
+     *
+     * no field is null, and no map or list contains null
+     * pages and pagesById hold the same DumpPages
+     * articles are the titles of the pages in namespace NS_MAIN
+     * every title in linksHere, redirectsHere and members is a key of pages
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * DumpBackend Abstraction Functions
+     *
+     * namespaces -> the prefix of the titles in each namespace, by number
+     * pages, pagesById -> the pages of the wiki, by title and by id
+     * articles -> the titles of the pages in the main namespace, in
+     *             alphabetical order
+     * linksHere -> the titles of the pages linking to each title
+     * redirectsHere -> the titles of the redirects to each title
+     * members -> the titles of the pages in each category
+     * contribs -> the titles of the pages edited by each user, newest first
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * Every field is filled in by the constructor and never modified after,
+     * and the fields are final, so any number of threads may read them
+     * without synchronization. Every method returns a copy.
+     */
+
+    /**
+     * Create a backend from the pages of a dump.
+     *
+     * @param pages an XML dump of the pages
+     * @throws IOException if the file cannot be read or is not an XML dump
+     */
+    public DumpBackend(Path pages) throws IOException {
+        this(pages, null, null);
+    }
+
+    /**
+     * Create a backend from the pages, links and categories of a dump.
+     *
+     * @param pages an XML dump of the pages
+     * @param pageLinks the SQL dump of the pagelinks table, or null to leave
+     *                  the pages without links
+     * @param categoryLinks the SQL dump of the categorylinks table, or null
+     *                      to leave the pages without categories
+     * @throws IOException if a file cannot be read or is not a dump
+     */
+    public DumpBackend(Path pages, Path pageLinks, Path categoryLinks) throws IOException {
+        Map<String, List<Contribution>> edits = new HashMap<>();
+        readPages(pages, edits);
+
+        for (Map.Entry<String, List<Contribution>> e : edits.entrySet()) {
+            List<Contribution> userEdits = e.getValue();
+            userEdits.sort(Comparator.comparing((Contribution c) -> c.timestamp).reversed());
+            List<String> titles = new ArrayList<>(userEdits.size());
+            for (Contribution c : userEdits) {
+                titles.add(c.title);
+            }
+            this.contribs.put(e.getKey(), titles);
+        }
+
+        if (pageLinks != null) {
+            SqlDumpReader.read(pageLinks, "pagelinks", row -> {
+                DumpPage from = this.pagesById.get(Integer.parseInt(row.get(0)));
+                if (from != null) {
+                    String to = title(Integer.parseInt(row.get(1)), row.get(2));
+                    from.links.add(to);
+                    this.linksHere.computeIfAbsent(to, t -> new ArrayList<>()).add(from.title);
+                }
+            });
+        }
+
+        if (categoryLinks != null) {
+            SqlDumpReader.read(categoryLinks, "categorylinks", row -> {
+                DumpPage page = this.pagesById.get(Integer.parseInt(row.get(0)));
+                if (page != null) {
+                    String category = title(NS_CATEGORY, row.get(1));
+                    page.categories.add(category);
+                    this.members.computeIfAbsent(category, t -> new ArrayList<>()).add(page.title);
+                }
+            });
+        }
+    }
+
+    /**
+     * Read the namespaces, pages and revisions of an XML dump.
+     *
+     * @param file the XML dump
+     * @param edits is added the edits of each user, in no particular order
+     * @throws IOException if the file cannot be read or is not an XML dump
+     */
+    private void readPages(Path file, Map<String, List<Contribution>> edits) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        try (InputStream in = SqlDumpReader.open(file)) {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+
+            String title = null;
+            int ns = NS_MAIN;
+            int id = -1;
+            String redirect = null;
+            boolean inRevision = false;
+            String editor = null;
+            String timestamp = null;
+            String text = null;
+            DumpPage page = null;
+
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (xml.getLocalName()) {
+                        case "namespace":
+                            int key = Integer.parseInt(xml.getAttributeValue(null, "key"));
+                            this.namespaces.put(key, xml.getElementText());
+                            break;
+                        case "page":
+                            title = null;
+                            ns = NS_MAIN;
+                            id = -1;
+                            redirect = null;
+                            page = null;
+                            break;
+                        case "title":
+                            title = xml.getElementText();
+                            break;
+                        case "ns":
+                            ns = Integer.parseInt(xml.getElementText().trim());
+                            break;
+                        case "id":
+                            // revisions and contributors have ids too
+                            if (!inRevision && page == null) {
+                                id = Integer.parseInt(xml.getElementText().trim());
+                            }
+                            break;
+                        case "redirect":
+                            redirect = xml.getAttributeValue(null, "title");
+                            break;
+                        case "revision":
+                            if (page == null) {
+                                page = new DumpPage(id, ns, title, redirect);
+                            }
+                            inRevision = true;
+                            editor = null;
+                            timestamp = "";
+                            text = "";
+                            break;
+                        case "timestamp":
+                            timestamp = xml.getElementText();
+                            break;
+                        case "username":
+                        case "ip":
+                            editor = xml.getElementText();
+                            break;
+                        case "text":
+                            text = xml.getElementText();
+                            break;
+                        default:
+                            break;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (xml.getLocalName().equals("revision")) {
+                        inRevision = false;
+                        page.text = text;
+                        page.lastEditor = editor;
+                        if (editor != null) {
+                            edits.computeIfAbsent(editor, u -> new ArrayList<>())
+                                    .add(new Contribution(timestamp, page.title));
+                        }
+                    } else if (xml.getLocalName().equals("page")) {
+                        if (page == null) {
+                            page = new DumpPage(id, ns, title, redirect);
+                        }
+                        addPage(page);
+                    }
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException | RuntimeException e) {
+            throw new IOException("Not an XML dump of pages: " + file, e);
+        }
+    }
+
+    /**
+     * Add a page read from the dump.
+     *
+     * @param page the page, with all of its revisions read
+     */
+    private void addPage(DumpPage page) {
+        if (page.title == null) {
+            return;
+        }
+        this.pages.put(page.title, page);
+        this.pagesById.put(page.id, page);
+        if (page.ns == NS_MAIN) {
+            this.articles.add(page.title);
+        }
+        if (page.redirect != null) {
+            this.redirectsHere.computeIfAbsent(page.redirect, t -> new ArrayList<>())
+                    .add(page.title);
+        }
+    }
+
+    /**
+     * Get the title of a page as the SQL dumps store it.
+     *
+     * @param ns the namespace of the page
+     * @param name the title of the page without the namespace prefix, with
+     *             underscores for spaces
+     * @return the title with the prefix of the namespace and with spaces
+     */
+    private String title(int ns, String name) {
+        String prefix = this.namespaces.getOrDefault(ns, ns == NS_CATEGORY ? "Category" : "");
+        name = name.replace('_', ' ');
+        return prefix.isEmpty() ? name : prefix + ":" + name;
+    }
+
+    /**
+     * @param title a title, possibly with underscores for spaces
+     * @return the page with that title, or null if there is none
+     */
+    private DumpPage page(String title) {
+        return this.pages.get(title.replace('_', ' '));
+    }
+
+    /**
+     * @param map titles by title
+     * @param title a title, possibly with underscores for spaces
+     * @return a copy of the titles for title, or an empty list if there are none
+     */
+    private static List<String> copyOf(Map<String, List<String>> map, String title) {
+        return new ArrayList<>(map.getOrDefault(title.replace('_', ' '), Collections.emptyList()));
+    }
+
+    @Override
+    public String getPageText(String title) {
+        DumpPage page = page(title);
+        return page == null ? "" : page.text;
+    }
+
+    @Override
+    public boolean exists(String title) {
+        return page(title) != null;
+    }
+
+    @Override
+    public List<String> getLinksOnPage(String title) {
+        DumpPage page = page(title);
+        return page == null ? new ArrayList<>() : new ArrayList<>(page.links);
+    }
+
+    @Override
+    public List<String> getLinksOnPage(boolean exists, String title) {
+        List<String> links = getLinksOnPage(title);
+        links.removeIf(link -> this.pages.containsKey(link) != exists);
+        return links;
+    }
+
+    @Override
+    public List<String> whatLinksHere(String title) {
+        return whatLinksHere(title, false);
+    }
+
+    @Override
+    public List<String> whatLinksHere(String title, boolean redirects) {
+        if (redirects) {
+            return copyOf(this.redirectsHere, title);
+        }
+        // a redirect links to its target, but is not listed here
+        List<String> links = copyOf(this.linksHere, title);
+        links.removeIf(link -> this.pages.get(link).redirect != null);
+        return links;
+    }
+
+    @Override
+    public List<String> search(String query, int limit) {
+        List<String> results = new ArrayList<>();
+        String q = query.toLowerCase(Locale.ROOT);
+        if (limit <= 0 || q.isEmpty()) {
+            return results;
+        }
+
+        // pages with the query in their title rank first
+        for (String title : this.articles) {
+            if (this.pages.get(title).redirect == null
+                    && title.toLowerCase(Locale.ROOT).contains(q)) {
+                results.add(title);
+                if (results.size() == limit) {
+                    return results;
+                }
+            }
+        }
+        for (String title : this.articles) {
+            DumpPage page = this.pages.get(title);
+            if (page.redirect == null && !title.toLowerCase(Locale.ROOT).contains(q)
+                    && page.text.toLowerCase(Locale.ROOT).contains(q)) {
+                results.add(title);
+                if (results.size() == limit) {
+                    return results;
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<String> getCategoriesOnPage(String title) {
+        DumpPage page = page(title);
+        return page == null ? new ArrayList<>() : new ArrayList<>(page.categories);
+    }
+
+    @Override
+    public List<String> getCategoryMembers(String category) {
+        return copyOf(this.members, category);
+    }
+
+    @Override
+    public String getLastEditor(String title) {
+        DumpPage page = page(title);
+        return page == null ? null : page.lastEditor;
+    }
+
+    @Override
+    public List<String> getContribs(String user) {
+        return new ArrayList<>(this.contribs.getOrDefault(user, Collections.emptyList()));
+    }
+
+    @Override
+    public List<String> allPages(String prefix) {
+        List<String> titles = new ArrayList<>();
+        for (String title : this.articles.tailSet(prefix, true)) {
+            if (!title.startsWith(prefix)) {
+                break;
+            }
+            titles.add(title);
+        }
+        return titles;
+    }
+
+    /**
+     * A page of the dump.
+     */
+    private static class DumpPage {
+        private final int id;
+        private final int ns;
+        private final String title;
+        private final String redirect;
+        private final List<String> links = new ArrayList<>();
+        private final List<String> categories = new ArrayList<>();
+        private String text = "";
+        private String lastEditor;
+
+        /**
+         * DumpPage Rep Invariants
+         *
+         * links, categories and text are not null
+         *
+         * ---------------------------------------------------------------------------
+         *
+         * DumpPage Abstraction Functions
+         *
+         * id, ns, title -> the id, namespace and title of the page
+         * redirect -> the title the page redirects to, or null if it is not
+         *             a redirect
+         * links -> the titles linked to from the page
+         * categories -> the titles of the categories the page is in
+         * text -> the text of the latest revision of the page
+         * lastEditor -> the author of the latest revision, or null if the
+         *               dump does not say
+         */
+
+        private DumpPage(int id, int ns, String title, String redirect) {
+            this.id = id;
+            this.ns = ns;
+            this.title = title;
+            this.redirect = redirect;
+        }
+    }
+
+    /**
+     * An edit of a page by a user.
+     */
+    private static class Contribution {
+        private final String timestamp;
+        private final String title;
+
+        /**
+         * @param timestamp when the edit was made, in ISO 8601 format
+         * @param title the title of the page edited
+         */
+        private Contribution(String timestamp, String title) {
+            this.timestamp = timestamp;
+            this.title = title;
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package cpen221.mp3.wikimediator;
+
+import fastily.jwiki.core.Wiki;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A WikiBackend that sends every request to the API of a live wiki
+ * through jwiki.
+ */
+public class JwikiBackend implements WikiBackend {
+
+    private final Wiki wiki;
+
+    /**
+     * JwikiBackend Rep Invariants
+     *
+     * wiki is not null
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * JwikiBackend Abstraction Functions
+     *
+     * wiki -> the client of the wiki the requests are sent to
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Thread Safety Arguments
+     *
+     * wiki is never reassigned, and each call sends independent requests
+     * through jwiki's thread-safe HTTP client.
+     */
+
+    /**
+     * Create a backend for a wiki, e.g. "en.wikipedia.org".
+     *
+     * @param domain the domain of the wiki
+     */
+    public JwikiBackend(String domain) {
+        this(new Wiki(domain));
+    }
+
+    /**
+     * Create a backend that sends requests through a jwiki client.
+     *
+     * @param wiki the client of the wiki, not null
+     */
+    public JwikiBackend(Wiki wiki) {
+        this.wiki = wiki;
+    }
+
+    @Override
+    public String getPageText(String title) {
+        return wiki.getPageText(title);
+    }
+
+    @Override
+    public boolean exists(String title) {
+        return wiki.exists(title);
+    }
+
+    @Override
+    public List<String> getLinksOnPage(String title) {
+        return wiki.getLinksOnPage(title);
+    }
+
+    @Override
+    public List<String> getLinksOnPage(boolean exists, String title) {
+        return wiki.getLinksOnPage(exists, title);
+    }
+
+    @Override
+    public List<String> whatLinksHere(String title) {
+        return wiki.whatLinksHere(title);
+    }
+
+    @Override
+    public List<String> whatLinksHere(String title, boolean redirects) {
+        return wiki.whatLinksHere(title, redirects);
+    }
+
+    @Override
+    public List<String> search(String query, int limit) {
+        return wiki.search(query, limit);
+    }
+
+    @Override
+    public List<String> getCategoriesOnPage(String title) {
+        return wiki.getCategoriesOnPage(title);
+    }
+
+    @Override
+    public List<String> getCategoryMembers(String category) {
+        return wiki.getCategoryMembers(category);
+    }
+
+    @Override
+    public String getLastEditor(String title) {
+        return wiki.getLastEditor(title);
+    }
+
+    @Override
+    public List<String> getContribs(String user) {
+        return wiki.getContribs(user, -1, false).stream()
+                .map(c -> c.title)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public List<String> allPages(String prefix) {
+        return wiki.allPages(prefix, false, false, -1, null);
+    }
+
+}
@@ -1,23 +1,158 @@
 package cpen221.mp3.wikimediator;
 
 import cpen221.mp3.cache.Cacheable;
+import cpen221.mp3.cache.Codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 public class Page implements Cacheable {
 
-    private String pageText;
-    private String id;
+    /* the approximate number of bytes a Page takes up besides its text */
+    private static final int OVERHEAD = 96;
+
+    /* pages with at least this many characters are compressed by default */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+
+    /* encodes pages for an OffHeapCache, keeping compressed text compressed */
+    public static final Codec<Page> CODEC = new PageCodec();
+
+    private final String pageText;
+    private final byte[] compressed;
+    private final int encodedLength;
+    private final String id;
+
+    /**
+     * Page Rep Invariants
+     *
+     * id is not null
+     * exactly one of pageText and compressed is null
+     * if compressed is not null, it is the Deflate encoding of the UTF-8
+     *     encoding of the text, which is encodedLength bytes long
+     *
+     * ---------------------------------------------------------------------------
+     *
+     * Page Abstraction Functions
+     *
+     * id -> the title of the page
+     * pageText -> the text of the page, if it is stored uncompressed
+     * compressed -> the text of the page, if it is stored compressed
+     */
 
+    /**
+     * Create a Page, compressing its text if it has at least
+     * DEFAULT_COMPRESSION_THRESHOLD characters.
+     *
+     * @param pageText the text of the page, not null
+     * @param id the title of the page, not null
+     */
     public Page(String pageText, String id) {
-        this.pageText = pageText;
+        this(pageText, id, DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Create a Page, compressing its text if it has at least
+     * compressionThreshold characters. The text is decompressed every time
+     * it is requested, so pages that are small or read much more often than
+     * they are stored should be left uncompressed.
+     *
+     * @param pageText the text of the page, not null
+     * @param id the title of the page, not null
+     * @param compressionThreshold the minimum length of text that is
+     *                             compressed, or Integer.MAX_VALUE to never
+     *                             compress
+     */
+    public Page(String pageText, String id, int compressionThreshold) {
         this.id = id;
+
+        byte[] deflated = null;
+        int length = 0;
+        if (pageText.length() >= compressionThreshold) {
+            byte[] encoded = pageText.getBytes(StandardCharsets.UTF_8);
+            byte[] output = deflate(encoded);
+            // keep text that does not compress below its size as a string
+            if (output.length < heapBytes(pageText)) {
+                deflated = output;
+                length = encoded.length;
+            }
+        }
+
+        this.compressed = deflated;
+        this.encodedLength = length;
+        this.pageText = deflated == null ? pageText : null;
+    }
+
+    /**
+     * Create a Page from text that is already compressed.
+     *
+     * @param id the title of the page, not null
+     * @param compressed the Deflate encoding of the UTF-8 encoding of the text
+     * @param encodedLength the length of the UTF-8 encoding of the text
+     */
+    private Page(String id, byte[] compressed, int encodedLength) {
+        this.id = id;
+        this.compressed = compressed;
+        this.encodedLength = encodedLength;
+        this.pageText = null;
     }
 
     public String id() {
         return this.id;
     }
 
+    /**
+     * Get the text of this page, decompressing it if it is stored compressed.
+     *
+     * @return the text of this page
+     */
     public String getPageText() {
-        return pageText;
+        if (this.compressed == null) {
+            return this.pageText;
+        }
+
+        return new String(inflate(this.compressed, this.encodedLength), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if the text of this page is stored compressed
+     */
+    public boolean isCompressed() {
+        return this.compressed != null;
+    }
+
+    /**
+     * Estimate the number of bytes this page occupies on the heap, counting
+     * the bytes its title and uncompressed text take as strings, and one
+     * byte per byte of compressed text.
+     *
+     * @return the estimated size of this page in bytes
+     */
+    public int weight() {
+        long bytes = heapBytes(this.id);
+        bytes += this.compressed == null ? heapBytes(this.pageText) : this.compressed.length;
+        return (int) Math.min(Integer.MAX_VALUE, OVERHEAD + bytes);
+    }
+
+    /**
+     * Estimate the number of bytes the characters of a string take on the
+     * heap. With compact strings, a string whose characters are all Latin-1
+     * is stored with one byte per character, and any other string with two.
+     *
+     * @param s the string
+     * @return the estimated number of bytes of its characters
+     */
+    private static long heapBytes(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xff) {
+                return 2L * s.length();
+            }
+        }
+        return s.length();
     }
 
     @Override
@@ -29,9 +164,110 @@ public class Page implements Cacheable {
     public boolean equals(Object o) {
         if (o instanceof Page) {
             Page p = (Page) o;
-            return this.id.equals(p.id) && this.pageText.equals(p.pageText);
+            if (!this.id.equals(p.id)) {
+                return false;
+            }
+            if (this.compressed != null && p.compressed != null) {
+                return Arrays.equals(this.compressed, p.compressed);
+            }
+            return this.getPageText().equals(p.getPageText());
         }
 
         return false;
     }
+
+    /**
+     * Compress bytes with Deflate.
+     *
+     * @param input the bytes to compress
+     * @return the compressed bytes
+     */
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress bytes compressed with deflate.
+     *
+     * @param input the compressed bytes
+     * @param length the number of bytes before compression
+     * @return the decompressed bytes
+     * @throws IllegalStateException if input is not the complete Deflate
+     *         encoding of length bytes, such as a truncated one
+     */
+    private static byte[] inflate(byte[] input, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            byte[] output = new byte[length];
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int read = inflater.inflate(output, n, length - n);
+                // all of input has been read, or it needs a preset
+                // dictionary we never use, so no more output will come
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated page text");
+                }
+                n += read;
+            }
+            if (n < length) {
+                throw new DataFormatException("Page text shorter than " + length + " bytes");
+            }
+            return output;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted page text", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Encodes a page as the UTF-8 encoding of its title, followed by either
+     * its compressed text or the UTF-8 encoding of its text.
+     */
+    private static final class PageCodec implements Codec<Page> {
+
+        @Override
+        public byte[] encode(Page page) {
+            byte[] id = page.id.getBytes(StandardCharsets.UTF_8);
+            byte[] text = page.compressed != null
+                    ? page.compressed : page.pageText.getBytes(StandardCharsets.UTF_8);
+
+            ByteBuffer buffer = ByteBuffer.allocate(12 + id.length + text.length);
+            buffer.putInt(id.length).put(id);
+            buffer.putInt(page.compressed != null ? page.encodedLength : -1);
+            buffer.putInt(text.length).put(text);
+            return buffer.array();
+        }
+
+        @Override
+        public Page decode(byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            byte[] id = new byte[buffer.getInt()];
+            buffer.get(id);
+            int encodedLength = buffer.getInt();
+            byte[] text = new byte[buffer.getInt()];
+            buffer.get(text);
+
+            String title = new String(id, StandardCharsets.UTF_8);
+            if (encodedLength < 0) {
+                return new Page(new String(text, StandardCharsets.UTF_8), title, Integer.MAX_VALUE);
+            }
+            return new Page(title, text, encodedLength);
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the rows of a table from a MediaWiki SQL dump, such as
+ * enwiki-latest-pagelinks.sql.gz, without loading it into a database.
+ *
+ * A dump is a mysqldump script that holds each batch of rows in one line of
+ * the form INSERT INTO `table` VALUES (...),(...);. Strings in the rows are
+ * quoted with ' and escaped with \, and every other value is a number or
+ * NULL.
+ */
+public final class SqlDumpReader {
+
+    private SqlDumpReader() {
+    }
+
+    /**
+     * Open a dump file, decompressing it if its name ends with .gz.
+     *
+     * @param file the dump file
+     * @return a stream of the contents of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            return new GZIPInputStream(in, 1 << 16);
+        }
+        return in;
+    }
+
+    /**
+     * Read every row of a table in a dump, in the order of the dump.
+     *
+     * @param file the dump file, which may be compressed with gzip
+     * @param table the name of the table, e.g. "pagelinks"
+     * @param rows is given the values of each row, in the order of the
+     *             columns of the table, with strings unescaped, numbers as
+     *             they are written and NULL as null
+     * @throws IOException if the file cannot be read
+     */
+    public static void read(Path file, String table, Consumer<List<String>> rows)
+            throws IOException {
+        String insert = "INSERT INTO `" + table + "` VALUES ";
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(open(file), StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(insert)) {
+                    readValues(line, insert.length(), rows);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the rows of one INSERT statement.
+     *
+     * @param line the statement
+     * @param start the index in line of the first row
+     * @param rows is given the values of each row
+     */
+    private static void readValues(String line, int start, Consumer<List<String>> rows) {
+        StringBuilder value = new StringBuilder();
+        int i = start;
+        while (i < line.length()) {
+            if (line.charAt(i) != '(') {
+                i++;  // the , between rows or the closing ;
+                continue;
+            }
+            i++;
+
+            List<String> row = new ArrayList<>();
+            while (i < line.length()) {
+                if (line.charAt(i) == '\'') {
+                    value.setLength(0);
+                    i = readString(line, i + 1, value);
+                    row.add(value.toString());
+                } else {
+                    int end = i;
+                    while (end < line.length() && line.charAt(end) != ','
+                            && line.charAt(end) != ')') {
+                        end++;
+                    }
+                    String literal = line.substring(i, end);
+                    row.add(literal.equals("NULL") ? null : literal);
+                    i = end;
+                }
+
+                if (i >= line.length() || line.charAt(i++) == ')') {
+                    break;
+                }
+            }
+            rows.accept(row);
+        }
+    }
+
+    /**
+     * Read a quoted string.
+     *
+     * @param line the statement holding the string
+     * @param i the index in line just after the opening quote
+     * @param value is appended the unescaped string
+     * @return the index in line just after the closing quote
+     */
+    private static int readString(String line, int i, StringBuilder value) {
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                value.append(unescape(line.charAt(i + 1)));
+                i += 2;
+            } else if (c == '\'') {
+                if (i + 1 < line.length() && line.charAt(i + 1) == '\'') {
+                    value.append('\'');
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                value.append(c);
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @param c the character after a \ in a string
+     * @return the character the escape sequence stands for
+     */
+    private static char unescape(char c) {
+        switch (c) {
+            case '0':
+                return '\0';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'Z':
+                return '\u001a';
+            default:
+                return c;
+        }
+    }
+
+}
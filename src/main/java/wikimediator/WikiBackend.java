@@ -0,0 +1,122 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.List;
+
+/**
+ * The source of pages, links, categories and edits that a WikiMediator
+ * answers requests from, such as the Wikipedia API (JwikiBackend) or a local
+ * copy of a Wikipedia dump (DumpBackend).
+ *
+ * Titles include their namespace prefix (e.g. "Category:Canada") except in
+ * the main namespace. Every list returned is new, and may be modified by the
+ * caller. Implementations are thread-safe.
+ */
+public interface WikiBackend {
+
+    /**
+     * Get the text of a page.
+     *
+     * @param title the title of the page
+     * @return the wikitext of the latest revision of the page, or "" if
+     *         there is no page with that title
+     */
+    String getPageText(String title);
+
+    /**
+     * Check whether a page exists.
+     *
+     * @param title the title of the page
+     * @return true if there is a page with that title, false otherwise
+     */
+    boolean exists(String title);
+
+    /**
+     * Get the titles the links on a page lead to.
+     *
+     * @param title the title of the page
+     * @return the titles linked to from the page, or an empty list if there
+     *         is no page with that title
+     */
+    List<String> getLinksOnPage(String title);
+
+    /**
+     * Get the titles the links on a page lead to.
+     *
+     * @param exists true to only include links to pages that exist, false
+     *               to only include links to pages that do not
+     * @param title the title of the page
+     * @return the titles linked to from the page that exist, or do not
+     */
+    List<String> getLinksOnPage(boolean exists, String title);
+
+    /**
+     * Get the pages that link to a page, other than redirects.
+     *
+     * @param title the title of the page
+     * @return the titles of the pages linking to it that are not redirects
+     */
+    List<String> whatLinksHere(String title);
+
+    /**
+     * Get the pages that link to a page.
+     *
+     * @param title the title of the page
+     * @param redirects true to get only the redirects to the page, false to
+     *                  get only the pages linking to it that are not redirects
+     * @return the titles of the pages linking to it
+     */
+    List<String> whatLinksHere(String title, boolean redirects);
+
+    /**
+     * Search for pages in the main namespace.
+     *
+     * @param query the terms to search for
+     * @param limit the maximum number of results
+     * @return the titles of at most limit pages matching query, best first
+     */
+    List<String> search(String query, int limit);
+
+    /**
+     * Get the categories a page is in.
+     *
+     * @param title the title of the page
+     * @return the titles of the categories, including the "Category:" prefix
+     */
+    List<String> getCategoriesOnPage(String title);
+
+    /**
+     * Get the pages in a category.
+     *
+     * @param category the title of the category, including the "Category:"
+     *                 prefix
+     * @return the titles of the pages in the category
+     */
+    List<String> getCategoryMembers(String category);
+
+    /**
+     * Get the user who last edited a page.
+     *
+     * @param title the title of the page
+     * @return the name (or IP address) of the author of the latest revision
+     *         of the page, or null if there is no page with that title
+     */
+    String getLastEditor(String title);
+
+    /**
+     * Get the pages a user has edited.
+     *
+     * @param user the name of the user
+     * @return the title of the page of each edit by the user, newest first,
+     *         repeated for a page edited more than once
+     */
+    List<String> getContribs(String user);
+
+    /**
+     * Get the pages in the main namespace whose titles start with a prefix.
+     *
+     * @param prefix the prefix of the titles, which may be ""
+     * @return the titles starting with prefix, in alphabetical order
+     */
+    List<String> allPages(String prefix);
+
+}
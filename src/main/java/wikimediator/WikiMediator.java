@@ -1,15 +1,22 @@
 package cpen221.mp3.wikimediator;
 
 import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.CacheStats;
 import cpen221.mp3.cache.Cacheable;
+import cpen221.mp3.cache.DiskStore;
+import cpen221.mp3.cache.GetAllResult;
+import cpen221.mp3.cache.HeapPressureSizer;
 import cpen221.mp3.cache.NoSuchCacheElementException;
-import fastily.jwiki.core.NS;
-import fastily.jwiki.core.Wiki;
+import cpen221.mp3.cache.WTinyLfuPolicy;
+import cpen221.mp3.graph.PageGraph;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class WikiMediator {
@@ -18,9 +25,12 @@ public class WikiMediator {
      * WikiMediator Rep Invariant
      *
      * wiki is not null
+     * graph may be null
      * methodList is not null and does not contain null elements
      * cacheObjects is not null and does not contain null elements
      * cache is not null and does not contain null elements
+     * missing is not null
+     * sizer is not null and sizes cache
      *
      *
      * CacheObject Rep Invariant
@@ -32,13 +42,25 @@ public class WikiMediator {
      * ---------------------------------------------------------------------------
      * WikiMediator Abstract Functions
      *
-     * wiki -> an instance of Wiki class for WikiMediator to use
+     * wiki -> the backend that pages, links, categories and edits are
+     *         requested from
+     * graph -> the links between articles stored locally, which getPath and
+     *          getConnectedPages follow instead of requesting them from
+     *          wiki, or null if there is no local copy
      * methodList -> a linked HashMap that takes the function name string as key
      *               and the time that this method is being called
      * cacheObjects -> a list that stores cacheObjects, which is titles, that
      *                 allows methods to call them when needed
      * cache -> a cache that stores Page, the time that such Page is last
      *          accessed, and the number of times such Page has been accessed
+     * sizer -> grows and shrinks the capacity of cache with the occupancy of
+     *          the heap
+     * missing -> the titles recently found not to exist on Wikipedia (with
+     *            MISSING_PAGE prepended) and the queries recently found to
+     *            have no results (with EMPTY_SEARCH prepended)
+     * timeout -> the timeout of each method call in seconds, unless the
+     *            calling thread set its own with withTimeout
+     * requestTimeout -> the timeout set by each thread calling withTimeout
      *
      *
      * CacheObject Abstraction Functions
@@ -46,26 +68,102 @@ public class WikiMediator {
      * s -> a string stored in the cache
      * lastUpdated -> the time the string was most recently updated
      * lastAccessed -> the time the string was most recently accessed
+     *
+     * ---------------------------------------------------------------------------
+     * WikiMediator Thread Safety Arguments
+     *
+     * One WikiMediator may be shared by many threads, such as the clients of
+     * a WikiMediatorServer. cache, missing and sizer are thread-safe, and
+     * wiki only sends independent requests over a thread-safe HTTP client.
+     * methodList, cacheObjects and the CacheObjects in it are only accessed
+     * in synchronized methods, which never call Wikipedia; the methods that
+     * rank them work on copies. requestTimeout is confined to each thread.
+     * timeout is not synchronized, and should be set before the
+     * WikiMediator is shared or replaced by withTimeout.
      */
 
-    private static final int CACHE_CAPACITY = 256;
+    private static final long CACHE_CAPACITY = 64L * 1024 * 1024;  // 64 MiB of pages
+    private static final long CACHE_MIN_CAPACITY = 16L * 1024 * 1024;
+    private static final long CACHE_MAX_CAPACITY =
+            Math.max(CACHE_CAPACITY, Runtime.getRuntime().maxMemory() / 4);
     private static final int CACHE_TIMEOUT = 12 * 60 * 60;  // 12 hours
+    private static final int CACHE_REFRESH_AFTER = 11 * 60 * 60;  // 11 hours
+    private static final int MISSING_CAPACITY = 10000;
+    private static final int MISSING_TIMEOUT = 10 * 60;  // 10 minutes
+    private static final String MISSING_PAGE = "page:";
+    private static final String EMPTY_SEARCH = "search:";
     private final long startTime = System.nanoTime();
 
     public double timeout = Double.POSITIVE_INFINITY;
+    private final ThreadLocal<Double> requestTimeout = new ThreadLocal<>();
 
-    private Wiki wiki = new Wiki("en.wikipedia.org");
+    private final WikiBackend wiki;
+    private final PageGraph graph;
     private LinkedHashMap<String, Long> methodList = new LinkedHashMap<>();
     private List<CacheObject> cacheObjects = new ArrayList<>();
     private Cache<Page> cache;
+    private final Cache<Missing> missing = new Cache<>(MISSING_CAPACITY, MISSING_TIMEOUT);
+    private final HeapPressureSizer sizer;
 
 
     /**
-     * Create a WikiMediator that has a new cache with cache capacity 256,
-     * and timeout value of 12 hours
+     * Create a WikiMediator that has a new cache holding up to 64 MiB of
+     * pages (by their estimated size), and timeout value of 12 hours.
+     * Pages are admitted with W-TinyLFU so that sweeps over many pages that
+     * are requested once do not push out the pages requested all the time.
+     * Pages requested in the last hour before they time out are served from
+     * the cache while they are reloaded in the background.
+     * Titles that do not exist and searches without results are remembered
+     * for 10 minutes, so that requests repeating them do not reach Wikipedia.
+     * The capacity of the cache then follows the occupancy of the heap after
+     * each garbage collection, between 16 MiB and a quarter of the maximum
+     * heap size.
      */
     public WikiMediator() {
-        cache = new Cache<>(CACHE_CAPACITY, CACHE_TIMEOUT);
+        this(new JwikiBackend("en.wikipedia.org"));
+    }
+
+    /**
+     * Create a WikiMediator like WikiMediator() that requests pages, links,
+     * categories and edits from a given backend instead of Wikipedia, such
+     * as a DumpBackend to run without network access.
+     *
+     * @param wiki the backend to answer requests from, not null
+     */
+    public WikiMediator(WikiBackend wiki) {
+        this(wiki, null);
+    }
+
+    /**
+     * Create a WikiMediator like WikiMediator(wiki) that follows links
+     * between articles in a local graph, such as one built from the
+     * pagelinks dump by LinkGraphBuilder, instead of requesting the links
+     * of each page on the way. Titles that are not in the graph are still
+     * looked up through wiki.
+     *
+     * @param wiki the backend to answer requests from, not null
+     * @param graph the links between articles, or null to request them
+     *              from wiki
+     */
+    public WikiMediator(WikiBackend wiki, PageGraph graph) {
+        this.wiki = wiki;
+        this.graph = graph;
+        cache = new Cache<>(CACHE_CAPACITY, CACHE_TIMEOUT, Page::weight, new WTinyLfuPolicy<>());
+        cache.refreshAfterWrite(CACHE_REFRESH_AFTER);
+        sizer = new HeapPressureSizer(cache, CACHE_MIN_CAPACITY, CACHE_MAX_CAPACITY);
+        sizer.start();
+    }
+
+    /**
+     * Create a WikiMediator like WikiMediator(), whose cache writes the pages
+     * it evicts to pageStore and looks for pages there before requesting
+     * them from Wikipedia.
+     *
+     * @param pageStore a store for pages on disk, not used by any other cache
+     */
+    public WikiMediator(DiskStore<Page> pageStore) {
+        this();
+        cache.spillTo(pageStore);
     }
 
 
@@ -85,7 +183,10 @@ public class WikiMediator {
      * Creates a cacheObject that represents 'query' and store it in cacheObjects
      * Store the method name "simpleSearch" in the methodList with the current time stamp
      * For every title that matches the specified query, create a page, which contains its
-     * title and the entire text, and store it in the cache
+     * title and the entire text, and store it in the cache. The titles already in the
+     * cache are looked up together, and the others are loaded together through the
+     * cache, so they are found in its disk store if it has one, and concurrent requests
+     * for the same page share a single fetch from Wikipedia.
      *
      * @param query the string that is being searched
      * @param limit the maximum number of titles that is required to search
@@ -96,44 +197,33 @@ public class WikiMediator {
         long methodStart = System.nanoTime();
         ArrayList<String> listOfSearch = new ArrayList<>();
 
-        this.cacheObjects.add(new CacheObject<>(query));
-        this.methodList.put("simpleSearch", currentTime());
+        addRequest(query);
+        recordMethod("simpleSearch");
 
-        for (String title: wiki.search(query, limit)) {
-            timedOut(methodStart);
+        if (isMissing(EMPTY_SEARCH + query)) {
+            return listOfSearch;
+        }
+        List<String> results = wiki.search(query, limit);
+        if (results.isEmpty() && limit > 0) {
+            recordMissing(EMPTY_SEARCH + query);
+        }
 
-            boolean check = false;
-            for (CacheObject c : this.cacheObjects) {
-                try {
-                    if (cache.get(c.id()).id().equals(title)
-                            && !listOfSearch.contains(title)) {
-                        cache.touch(c.id());
-                        c.update();
-                        listOfSearch.add(title);
-                        check = true;
-                    }
-                } catch (NoSuchCacheElementException nsee) {
-                    // do nothing
-                }
+        GetAllResult<String, Page> cached = this.cache.getAll(results);
+        this.cache.loadAll(cached.misses(), titles -> loadPages(titles, methodStart));
+        for (String title: results) {
+            timedOut(methodStart);
+            if (listOfSearch.contains(title)) {
+                continue;
             }
-            if (!check && !listOfSearch.contains(title)) {
-                listOfSearch.add(title);
-                this.cache.put(new Page(wiki.getPageText(title), title));
+
+            listOfSearch.add(title);
+            if (cached.hits().containsKey(title)) {
+                updateRequest(title);
             }
         }
 
         for (String search: listOfSearch) {
-            boolean exists = false;
-            CacheObject c1 = new CacheObject<>(search);
-            for (CacheObject c: this.cacheObjects) {
-                if (c.equals(c1)) {
-                    exists = true;
-                    break;
-                }
-            }
-            if (!exists) {
-                this.cacheObjects.add(c1);
-            }
+            addRequestIfAbsent(search);
         }
 
         return listOfSearch;
@@ -145,7 +235,9 @@ public class WikiMediator {
      * page that matches `pageTitle`. If no titles matches, return an empty string.
      * Creates a cacheObject that represents 'pageTitle' and store it in cacheObjects
      * Store the method name "getPage" in the methodList with the current time stamp
-     * Create a new Page, which contains the title and the entire content, and store it in cache
+     * If the page is not in the cache, create a new Page, which contains the title and the
+     * entire content, and store it in cache. Concurrent requests for the same page that is
+     * not in the cache share a single fetch from Wikipedia.
      *
      * @param pageTitle the page title that we are getting the page text from
      * @return the entire page text
@@ -158,31 +250,93 @@ public class WikiMediator {
             throw new IllegalArgumentException("Page title cannot be an empty string.");
         }
 
-        boolean exist = false;
-        for (CacheObject c: this.cacheObjects) {
-            timedOut(methodStart);
+        timedOut(methodStart);
+        recordRequest(pageTitle);
 
-            if (c.id().equals(pageTitle)) {
-                exist = true;
-                c.update();
-                try {
-                    this.methodList.put("getPage", currentTime());
-                    return this.cache.get(pageTitle).getPageText();
-                } catch (NoSuchCacheElementException e) {
-                    e.printStackTrace();
-                }
+        recordMethod("getPage");
+        if (isMissing(MISSING_PAGE + pageTitle)) {
+            return "";
+        }
+
+        Page page = this.cache.get(pageTitle, this::loadPage);
+        return page == null ? "" : page.getPageText();
+    }
+
+    /**
+     * Fetch a page from Wikipedia. A page without text is checked for
+     * existence, and remembered as missing if it does not exist.
+     *
+     * @param pageTitle the title of the page
+     * @return a Page holding the title and the entire text of the page, or
+     *         null if there is no page with that title
+     */
+    private Page loadPage(String pageTitle) {
+        String text = wiki.getPageText(pageTitle);
+        if (text.isEmpty() && !pageExists(pageTitle)) {
+            return null;
+        }
+        return new Page(text, pageTitle);
+    }
+
+    /**
+     * Fetch several pages from Wikipedia, as loadPage does for one.
+     *
+     * @param pageTitles the titles of the pages
+     * @param methodStart the time the request fetching them started
+     * @return the pages that exist, by title
+     */
+    private Map<String, Page> loadPages(Set<String> pageTitles, long methodStart) {
+        Map<String, Page> pages = new HashMap<>();
+        for (String title : pageTitles) {
+            timedOut(methodStart);
+            Page page = loadPage(title);
+            if (page != null) {
+                pages.put(title, page);
             }
         }
+        return pages;
+    }
+
+    /**
+     * Check whether a page exists, asking Wikipedia only if it has not been
+     * found missing recently.
+     *
+     * @param pageTitle the title of the page
+     * @return true if the page exists, false otherwise
+     */
+    private boolean pageExists(String pageTitle) {
+        if (isMissing(MISSING_PAGE + pageTitle)) {
+            return false;
+        }
+        if (!this.wiki.exists(pageTitle)) {
+            recordMissing(MISSING_PAGE + pageTitle);
+            return false;
+        }
+        return true;
+    }
 
-        if (!exist) {
-            Page page = new Page(wiki.getPageText(pageTitle), pageTitle);
-            this.methodList.put("getPage", currentTime());
-            this.cacheObjects.add(new CacheObject<>(pageTitle));
-            this.cache.put(page);
-            return page.getPageText();
+    /**
+     * @param key a title or query with MISSING_PAGE or EMPTY_SEARCH prepended
+     * @return true if the title was recently found not to exist, or the query
+     *         to have no results
+     */
+    private boolean isMissing(String key) {
+        try {
+            this.missing.get(key);
+            return true;
+        } catch (NoSuchCacheElementException e) {
+            return false;
         }
+    }
 
-        return null;
+    /**
+     * Remember that a title does not exist or a query has no results, until
+     * the entry times out.
+     *
+     * @param key a title or query with MISSING_PAGE or EMPTY_SEARCH prepended
+     */
+    private void recordMissing(String key) {
+        this.missing.put(new Missing(key));
     }
 
 
@@ -202,8 +356,11 @@ public class WikiMediator {
             throw new IllegalArgumentException();
         }
 
-        this.methodList.put("getConnectedPages", currentTime());
+        recordMethod("getConnectedPages");
 
+        if (this.graph != null && this.graph.contains(pageTitle)) {
+            return this.graph.getConnectedPages(pageTitle, hops);
+        }
         return recursiveGetConnected(new ArrayList<>(), pageTitle, hops);
     }
 
@@ -236,7 +393,7 @@ public class WikiMediator {
             timedOut(methodStart);
 
             int currentHops = hops - 1;
-            ArrayList<String> linksOnPage = wiki.getLinksOnPage(true, pageTitle);
+            List<String> linksOnPage = wiki.getLinksOnPage(true, pageTitle);
             listOfAllTitles.addAll(linksOnPage);
             for (String link: linksOnPage) {
                 listOfAllTitles.addAll(recursiveGetConnected(listOfAllTitles, link, currentHops));
@@ -258,14 +415,14 @@ public class WikiMediator {
      */
     public List<String> zeitgeist(int limit) throws IllegalArgumentException {
         long methodStart = System.nanoTime();
-        List<CacheObject> list = new ArrayList<>(this.cacheObjects);
+        List<CacheObject> list = requestsSnapshot();
         List<String> listOfStrings = new ArrayList<>();
 
         if (limit < 0) {
             throw new IllegalArgumentException();
         }
 
-        this.methodList.put("zeitgeist", currentTime());
+        recordMethod("zeitgeist");
 
         while (listOfStrings.size() < limit && !list.isEmpty()) {
             timedOut(methodStart);
@@ -303,11 +460,11 @@ public class WikiMediator {
     public List<String> trending(int limit) throws IllegalArgumentException {
         long methodStart = System.nanoTime();
         List<String> listOfStrings = new ArrayList<>();
-        List<CacheObject> list = this.cacheObjects.stream()
+        List<CacheObject> list = requestsSnapshot().stream()
                 .filter(x -> Math.abs(currentTime() - x.lastAccess) <= 30 * Math.pow(10, 9))
                 .distinct()
                 .collect(Collectors.toList());
-        this.methodList.put("trending", currentTime());
+        recordMethod("trending");
 
         if (limit < 0) {
             throw new IllegalArgumentException();
@@ -345,12 +502,13 @@ public class WikiMediator {
     public int peakLoad30s() {
         long methodStart = System.nanoTime();
         int max = Integer.MIN_VALUE;
-        this.methodList.put("peakLoad30s", currentTime());
+        recordMethod("peakLoad30s");
+        Map<String, Long> methods = methodsSnapshot();
 
-        for (String methodName: this.methodList.keySet()) {
+        for (String methodName: methods.keySet()) {
             timedOut(methodStart);
-            int numberOfCalls = getCallsInInterval(this.methodList.get(methodName),
-                    this.methodList.get(methodName) + 30 * (long) Math.pow(10, 9));
+            int numberOfCalls = getCallsInInterval(methods, methods.get(methodName),
+                    methods.get(methodName) + 30 * (long) Math.pow(10, 9));
             if (numberOfCalls > max) {
                 max = numberOfCalls;
             }
@@ -360,21 +518,60 @@ public class WikiMediator {
     }
 
 
+    /**
+     * Get the statistics of the page cache, such as how often pages were
+     * found in it, how often the pages that were not were found in its disk
+     * store, and how long fetching the rest took.
+     *
+     * @return a snapshot of the statistics of the page cache
+     */
+    public CacheStats cacheStats() {
+        return this.cache.stats();
+    }
+
+
+    /**
+     * Write the pages in the cache to a snapshot file, so that a WikiMediator
+     * created later (for example after the server restarts) can start with
+     * them through loadCache instead of requesting them from Wikipedia again.
+     *
+     * @param file the file to write, which is replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void saveCache(Path file) throws IOException {
+        this.cache.writeSnapshot(file, Page.CODEC);
+    }
+
+
+    /**
+     * Fill the cache with the pages in a snapshot written by saveCache, each
+     * timing out when it would have in the WikiMediator that wrote it.
+     *
+     * @param file the snapshot to read
+     * @return the number of pages added to the cache
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public int loadCache(Path file) throws IOException {
+        return this.cache.readSnapshot(file, Page.CODEC);
+    }
+
+
     /**
      * Helper method of peakLoad30s that produces the number of all the requests (method calls)
      * in specified time interval
      *
+     * @param methods a copy of methodList
      * @param start the starting time in nanoseconds
      * @param end the ending time in nanoseconds
      * @return number of all the requests that happened between specified start and end time
      */
-    private int getCallsInInterval(long start, long end) {
+    private int getCallsInInterval(Map<String, Long> methods, long start, long end) {
         long methodStart = System.nanoTime();
         int callsCount = 0;
 
-        for (String key: this.methodList.keySet()) {
+        for (String key: methods.keySet()) {
             timedOut(methodStart);
-            if (this.methodList.get(key) >= start && this.methodList.get(key) <= end) {
+            if (methods.get(key) >= start && methods.get(key) <= end) {
                 callsCount++;
             }
         }
@@ -383,6 +580,105 @@ public class WikiMediator {
     }
 
 
+    /**
+     * Record that a method was called now.
+     *
+     * @param methodName the name of the method
+     */
+    private synchronized void recordMethod(String methodName) {
+        this.methodList.put(methodName, currentTime());
+    }
+
+    /**
+     * Record a new request for a string, even if it has been requested before.
+     *
+     * @param s the title or query requested
+     */
+    private synchronized void addRequest(String s) {
+        this.cacheObjects.add(new CacheObject<>(s));
+    }
+
+    /**
+     * Record a request for a string unless it has been requested before.
+     *
+     * @param s the title or query requested
+     */
+    private synchronized void addRequestIfAbsent(String s) {
+        CacheObject<String> request = new CacheObject<>(s);
+        if (!this.cacheObjects.contains(request)) {
+            this.cacheObjects.add(request);
+        }
+    }
+
+    /**
+     * Record another request for a string that has been requested before.
+     *
+     * @param s the title or query requested
+     * @return true if s had been requested before, false otherwise
+     */
+    private synchronized boolean updateRequest(String s) {
+        for (CacheObject c : this.cacheObjects) {
+            if (c.id().equals(s)) {
+                c.update();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record a request for a string, counting it again if it has been
+     * requested before.
+     *
+     * @param s the title or query requested
+     */
+    private synchronized void recordRequest(String s) {
+        if (!updateRequest(s)) {
+            addRequest(s);
+        }
+    }
+
+    /**
+     * Copy the requests recorded so far, so they can be ranked without
+     * holding the lock while other threads record more.
+     *
+     * @return copies of the elements of cacheObjects, in the same order
+     */
+    private synchronized List<CacheObject> requestsSnapshot() {
+        List<CacheObject> copy = new ArrayList<>(this.cacheObjects.size());
+        for (CacheObject<?> c : this.cacheObjects) {
+            copy.add(new CacheObject<>(c));
+        }
+        return copy;
+    }
+
+    /**
+     * Copy the times methods were last called.
+     *
+     * @return a copy of methodList
+     */
+    private synchronized Map<String, Long> methodsSnapshot() {
+        return new LinkedHashMap<>(this.methodList);
+    }
+
+
+    /**
+     * A title or query that was found to have no page or no results.
+     */
+    private static final class Missing implements Cacheable {
+        private final String key;
+
+        private Missing(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String id() {
+            return this.key;
+        }
+    }
+
+
     /**
      * An object that holds the values in the cache along with their
      * associated metadata (number of times that was requested and number of requests)
@@ -405,6 +701,18 @@ public class WikiMediator {
         }
 
 
+        /**
+         * Create a copy of a CacheObject
+         *
+         * @param other the CacheObject to copy
+         */
+        private CacheObject(CacheObject<? extends string> other) {
+            this.s = other.s;
+            this.lastAccess = other.lastAccess;
+            this.numRequests = other.numRequests;
+        }
+
+
         /**
          * Update the number of requests of the cacheObject
          */
@@ -476,11 +784,14 @@ public class WikiMediator {
 
         if (startPage == null || stopPage == null || startPage.equals("") || stopPage.equals("")) {
             throw new IllegalArgumentException("Invalid page");
+        } else if (this.graph != null && this.graph.contains(startPage)
+                && this.graph.contains(stopPage)) {
+            return this.graph.getPath(startPage, stopPage);
+        } else if (!pageExists(startPage) || !pageExists(stopPage)) {
+            return new LinkedList<>();
         } else if (this.wiki.getLinksOnPage(startPage).size() == 0
                 || (this.wiki.whatLinksHere(stopPage).size() == 0
-                && this.wiki.whatLinksHere(stopPage, true).size() == 0)
-                || !this.wiki.exists(startPage)
-                || !this.wiki.exists(stopPage)) {
+                && this.wiki.whatLinksHere(stopPage, true).size() == 0)) {
 
             return new LinkedList<>();
         }
@@ -541,12 +852,15 @@ public class WikiMediator {
 
                 // Get all pages that link (directly or through redirects) to currentPage
                 links = this.wiki.whatLinksHere(currentPage);
+                Set<String> linksSeen = new HashSet<>(links);
                 List<String> redirects = this.wiki.whatLinksHere(currentPage, true);
                 for (String redirect : redirects) {
                     timedOut(methodStart);
-                    links.addAll(this.wiki.whatLinksHere(redirect).stream()
-                            .filter(s -> !links.contains(s))
-                            .collect(Collectors.toList()));
+                    for (String link : this.wiki.whatLinksHere(redirect)) {
+                        if (linksSeen.add(link)) {
+                            links.add(link);
+                        }
+                    }
                 }
             }
 
@@ -586,37 +900,39 @@ public class WikiMediator {
                         return path;
                     }
 
-                    // If the BFS from both pages intersect, find the path
-                    for (String page : pagesForward) {
-                        if (pagesBackward.contains(page)) {
-
-                            // Get path for each half - stick together
-                            LinkedList<String> pathForward = new LinkedList<>();
-                            LinkedList<String> pathBackward = new LinkedList<>();
-                            List<String> path = new LinkedList<>();
-
-                            String pageForward = page;
-                            while (!pageForward.equals(startPage)) {
-                                pathForward.addFirst(pageForward);
-                                pageForward = previousPageForward.get(pageForward);
-                            }
-                            pathForward.addFirst(startPage);
+                    // If the BFS from both pages intersect, find the path; a
+                    // new intersection can only be at the page just visited
+                    HashSet<String> otherVisitedPages = visitedPages == visitedPagesForward
+                            ? visitedPagesBackward : visitedPagesForward;
+                    if (otherVisitedPages.contains(link)) {
+                        String page = link;
+
+                        // Get path for each half - stick together
+                        LinkedList<String> pathForward = new LinkedList<>();
+                        LinkedList<String> pathBackward = new LinkedList<>();
+                        List<String> path = new LinkedList<>();
+
+                        String pageForward = page;
+                        while (!pageForward.equals(startPage)) {
+                            pathForward.addFirst(pageForward);
+                            pageForward = previousPageForward.get(pageForward);
+                        }
+                        pathForward.addFirst(startPage);
 
-                            // to eliminate any issues with redirects, do a modified BFS
-                            // from page to stopPage, following the path given by pathBackward
+                        // to eliminate any issues with redirects, do a modified BFS
+                        // from page to stopPage, following the path given by pathBackward
 
-                            String pageBackward = previousPageBackward.get(page);
-                            while (!pageBackward.equals(stopPage)) {
-                                pathBackward.addLast(pageBackward);
-                                pageBackward = previousPageBackward.get(pageBackward);
-                            }
-                            pathBackward.addLast(stopPage);
+                        String pageBackward = previousPageBackward.get(page);
+                        while (!pageBackward.equals(stopPage)) {
+                            pathBackward.addLast(pageBackward);
+                            pageBackward = previousPageBackward.get(pageBackward);
+                        }
+                        pathBackward.addLast(stopPage);
 
-                            updateForwardPathFromBackwards(pathForward, pathBackward, methodStart);
+                        updateForwardPathFromBackwards(pathForward, pathBackward, methodStart);
 
-                            path.addAll(pathForward);
-                            return path;
-                        }
+                        path.addAll(pathForward);
+                        return path;
                     }
                 }
             }
@@ -771,11 +1087,10 @@ public class WikiMediator {
             String item = ctx.STRING().toString().substring(1, ctx.STRING().toString().length() - 1);
 
             if (ctx.TITLE() != null) {
-                simpleCondition = wiki.allPages(item, false, false, -1, null);
+                simpleCondition = wiki.allPages(item);
             } else if (ctx.AUTHOR() != null) {
-                simpleCondition = wiki.getContribs(item, -1, false)
+                simpleCondition = wiki.getContribs(item)
                         .stream()
-                        .map(x -> x.title)
                         .distinct()
                         .filter(x -> item.equals(wiki.getLastEditor(x)))
                         .collect(Collectors.toList());
@@ -796,6 +1111,30 @@ public class WikiMediator {
         }
     }
 
+    /**
+     * Make a call to this WikiMediator with a timeout that applies only to
+     * the calling thread, so that requests from different clients sharing
+     * one WikiMediator do not change each other's timeouts.
+     *
+     * @param seconds the timeout of the methods called by call, in seconds
+     * @param call the call to make
+     * @param <R> the type of the result of the call
+     * @return the result of the call
+     */
+    public <R> R withTimeout(double seconds, Supplier<R> call) {
+        Double previous = requestTimeout.get();
+        requestTimeout.set(seconds);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                requestTimeout.remove();
+            } else {
+                requestTimeout.set(previous);
+            }
+        }
+    }
+
     /**
      * Kill the thread if it has timed out
      *
@@ -803,6 +1142,8 @@ public class WikiMediator {
      * @throws RuntimeException if the thread has timed out
      */
     private void timedOut(long methodStart) {
+        Double t = requestTimeout.get();
+        double timeout = t == null ? this.timeout : t;
         if (System.nanoTime() < methodStart + (long) (1000000000 * timeout)) {
             throw new RuntimeException();
         }
@@ -1,10 +1,33 @@
 package cpen221.mp3;
 
 import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.CacheStats;
+import cpen221.mp3.cache.GetAllResult;
+import cpen221.mp3.cache.HeapPressureSizer;
+import cpen221.mp3.cache.KeyedCache;
 import cpen221.mp3.cache.NoSuchCacheElementException;
 import cpen221.mp3.wikimediator.Page;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 public class CacheTest {
@@ -195,6 +218,49 @@ public class CacheTest {
         }
     }
 
+    @Test
+    public void testTouchRefreshesTimeout() {
+        Cache<Page> c = new Cache<>(10, 1);
+        Page p1 = new Page("test1", "1");
+        Page p2 = new Page("test2", "2");
+        c.put(p1);
+        c.put(p2);
+
+        try {
+            Thread.sleep(600);
+        } catch (InterruptedException e) {
+            // do nothing
+        }
+
+        assertTrue(c.touch("1"));
+        c.cleanUp();
+
+        try {
+            Thread.sleep(600);
+        } catch (InterruptedException e) {
+            // do nothing
+        }
+
+        try {
+            assertEquals(p1, c.get("1"));
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        boolean exceptionThrown = false;
+        try {
+            c.get("2");
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        } finally {
+            if (!exceptionThrown) {
+                fail("Should have an exception");
+            }
+        }
+
+        assertFalse(c.touch("2"));
+    }
+
     @Test
     public void testUpdate() {
         Cache<Page> c = new Cache<>(1, 1);
@@ -281,6 +347,203 @@ public class CacheTest {
         assertEquals(p3, result2);
     }
 
+    @Test
+    public void testRemoveLeastRequestedManyElements() {
+        Cache<Page> c = new Cache<>(100, 10000);
+        for (int i = 0; i < 100; i++) {
+            c.put(new Page("test" + i, Integer.toString(i)));
+        }
+
+        // access every even page so the odd pages become least recently requested
+        for (int i = 0; i < 100; i += 2) {
+            try {
+                c.get(Integer.toString(i));
+            } catch (NoSuchCacheElementException e) {
+                fail("Should not have an exception");
+            }
+        }
+
+        for (int i = 100; i < 150; i++) {
+            assertTrue(c.put(new Page("test" + i, Integer.toString(i))));
+        }
+
+        for (int i = 0; i < 150; i++) {
+            boolean present = true;
+            try {
+                c.get(Integer.toString(i));
+            } catch (NoSuchCacheElementException e) {
+                present = false;
+            }
+
+            assertEquals(i >= 100 || i % 2 == 0, present);
+        }
+    }
+
+    @Test
+    public void testWeightedCapacity() {
+        Cache<Page> c = new Cache<>(10, 100, p -> p.getPageText().length());
+        Page small1 = new Page("abc", "1");
+        Page small2 = new Page("defg", "2");
+        Page large = new Page("hijklmn", "3");
+        Page huge = new Page("this page is too large", "4");
+
+        assertTrue(c.put(small1));
+        assertTrue(c.put(small2));
+        assertFalse(c.put(huge));
+
+        try {
+            c.get("1");
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        // 3 + 4 + 7 > 10, so the least recently requested page (2) is removed
+        assertTrue(c.put(large));
+
+        boolean exceptionThrown = false;
+        try {
+            assertEquals(small1, c.get("1"));
+            assertEquals(large, c.get("3"));
+            c.get("2");
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        } finally {
+            if (!exceptionThrown) {
+                fail("Expected an exception");
+            }
+        }
+
+        // growing page 3 to 9 leaves no room for page 1
+        assertTrue(c.update(new Page("hijklmnop", "3")));
+        exceptionThrown = false;
+        try {
+            c.get("1");
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        } finally {
+            if (!exceptionThrown) {
+                fail("Expected an exception");
+            }
+        }
+
+        assertFalse(c.update(huge));
+        assertFalse(c.touch("4"));
+
+        // a page updated to more than the cache holds is evicted
+        assertEquals(2, c.stats().evictionCount());
+        assertFalse(c.update(new Page("this page is too large", "3")));
+        assertFalse(c.touch("3"));
+        assertEquals(3, c.stats().evictionCount());
+    }
+
+    @Test
+    public void testBulkOperations() {
+        Cache<Page> c = new Cache<>(3, 100);
+        Page p1 = new Page("test1", "1");
+        Page p2 = new Page("test2", "2");
+        Page p3 = new Page("test3", "3");
+        Page p4 = new Page("test4", "4");
+
+        assertEquals(3, c.putAll(Arrays.asList(p1, p2, p3)));
+        GetAllResult<String, Page> result = c.getAll(Arrays.asList("3", "5", "1", "3"));
+        assertEquals(Arrays.asList("3", "1"), new ArrayList<>(result.hits().keySet()));
+        assertEquals(p1, result.hits().get("1"));
+        assertEquals(Collections.singleton("5"), result.misses());
+
+        // 2 is the least recently requested
+        assertEquals(1, c.putAll(Collections.singletonList(p4)));
+        assertFalse(c.touch("2"));
+
+        c.invalidateAll(Arrays.asList("1", "5"));
+        assertFalse(c.touch("1"));
+        assertTrue(c.touch("3"));
+        assertTrue(c.put(p1));
+
+        c.invalidateAll();
+        result = c.getAll(Arrays.asList("1", "3", "4"));
+        assertTrue(result.hits().isEmpty());
+        assertEquals(3, result.misses().size());
+        assertTrue(c.put(p2));
+    }
+
+    @Test
+    public void testRemovalListener() throws Exception {
+        Cache<Page> c = new Cache<>(2, 1);
+        BlockingQueue<String> removals = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        c.addRemovalListener((id, page, cause) ->
+                removals.add(id + " " + page.getPageText() + " " + cause), executor);
+
+        c.put(new Page("test1", "1"));
+        c.put(new Page("test2", "2"));
+        c.update(new Page("test1 again", "1"));
+        c.put(new Page("test3", "3"));
+        c.invalidateAll(Collections.singleton("3"));
+        assertEquals("1 test1 REPLACED", removals.poll(1, TimeUnit.SECONDS));
+        // updating does not count as a request, so 1 is still the least
+        // recently requested
+        assertEquals("1 test1 again SIZE", removals.poll(1, TimeUnit.SECONDS));
+        assertEquals("3 test3 EXPLICIT", removals.poll(1, TimeUnit.SECONDS));
+
+        Thread.sleep(1010);
+        assertFalse(c.touch("2"));
+        assertEquals("2 test2 EXPIRED", removals.poll(1, TimeUnit.SECONDS));
+        assertNull(removals.poll(100, TimeUnit.MILLISECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testHeapPressureSizer() {
+        Cache<Page> c = new Cache<>(100, 100);
+        for (int i = 0; i < 100; i++) {
+            c.put(new Page("test", Integer.toString(i)));
+        }
+
+        double[] occupancy = {0.9};
+        HeapPressureSizer sizer = new HeapPressureSizer(c, 40, 200, 0.75, 0.5, () -> occupancy[0]);
+        assertEquals(75, sizer.adjust());
+        assertEquals(75, c.weightedSize());
+        assertEquals(56, sizer.adjust());
+        assertEquals(42, sizer.adjust());
+        assertEquals(40, sizer.adjust());
+        assertEquals(40, c.weightedSize());
+        assertEquals(60, c.stats().evictionCount());
+
+        // the most recently stored pages survive
+        assertTrue(c.touch("99"));
+        assertFalse(c.touch("59"));
+
+        occupancy[0] = 0.6;
+        assertEquals(40, sizer.adjust());
+        occupancy[0] = 0.1;
+        assertEquals(50, sizer.adjust());
+        for (int i = 0; i < 10; i++) {
+            sizer.adjust();
+        }
+        assertEquals(200, c.maximumWeight());
+    }
+
+    @Test
+    public void testKeyedCache() {
+        KeyedCache<Integer, List<String>> c = new KeyedCache<>(10, 100, List::size);
+        assertTrue(c.put(1, Arrays.asList("a", "b", "c")));
+        assertTrue(c.put(2, Arrays.asList("d", "e", "f", "g")));
+        assertFalse(c.put(3, Collections.nCopies(11, "h")));
+
+        try {
+            assertEquals(Arrays.asList("a", "b", "c"), c.get(1));
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        // 3 + 4 + 5 > 10, so the least recently requested list (2) is removed
+        assertEquals(Collections.nCopies(5, "i"), c.get(4, id -> Collections.nCopies(5, "i")));
+        assertFalse(c.touch(2));
+        assertTrue(c.update(1, Collections.singletonList("j")));
+        assertTrue(c.touch(1));
+        assertEquals(1, c.stats().evictionCount());
+    }
+
     @Test
     public void testTimeout() {
         Cache<Page> c = new Cache<>(2, 1);
@@ -322,6 +585,240 @@ public class CacheTest {
 
     // concurrent tests
 
+    @Test
+    public void testLoadingGetCoalescesConcurrentMisses() throws InterruptedException {
+        Cache<Page> c = new Cache<>(10, 100);
+        AtomicInteger loads = new AtomicInteger();
+        Page[] results = new Page[8];
+        Thread[] threads = new Thread[results.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> results[index] = c.get("1", id -> {
+                loads.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // do nothing
+                }
+                return new Page("test1", id);
+            }));
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(1, loads.get());
+        for (Page p : results) {
+            assertSame(results[0], p);
+        }
+
+        try {
+            assertSame(results[0], c.get("1"));
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+    }
+
+    @Test
+    public void testBulkLoadSharesInFlightLoads() throws Exception {
+        Cache<Page> c = new Cache<>(10, 100);
+        Page p1 = new Page("test1", "1");
+        c.put(p1);
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread t = new Thread(() -> c.get("2", id -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                // do nothing
+            }
+            return new Page("test2", id);
+        }));
+        t.start();
+        loading.await();
+
+        // only the values neither in the cache nor being loaded are asked for
+        List<Set<String>> requested = new ArrayList<>();
+        Thread r = new Thread(release::countDown);
+        Map<String, Page> values = c.getAll(Arrays.asList("3", "1", "2", "4"), ids -> {
+            requested.add(new HashSet<>(ids));
+            r.start();
+            Map<String, Page> pages = new HashMap<>();
+            pages.put("3", new Page("test3", "3"));
+            return pages;
+        });
+        t.join();
+
+        assertEquals(Collections.singletonList(new HashSet<>(Arrays.asList("3", "4"))), requested);
+        assertEquals(Arrays.asList("3", "1", "2"), new ArrayList<>(values.keySet()));
+        assertSame(p1, values.get("1"));
+        assertEquals(new Page("test2", "2"), values.get("2"));
+        assertTrue(c.touch("3"));
+        assertFalse(c.touch("4"));
+        assertEquals(2, c.stats().loadSuccessCount());
+
+        boolean exceptionThrown = false;
+        try {
+            c.loadAll(Arrays.asList("5", "6"), ids -> {
+                throw new IllegalStateException("upstream failed");
+            });
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+        assertEquals(1, c.stats().loadFailureCount());
+        assertEquals(new Page("test5", "5"), c.get("5", id -> new Page("test" + id, id)));
+    }
+
+    @Test
+    public void testLoadingGetAsync() throws Exception {
+        Cache<Page> c = new Cache<>(10, 100);
+        Page p1 = new Page("test1", "1");
+        c.put(p1);
+
+        assertSame(p1, c.getAsync("1", id -> null).get());
+        assertEquals(new Page("test2", "2"), c.getAsync("2", id -> new Page("test2", id)).get());
+        assertEquals(new Page("test2", "2"), c.get("2"));
+
+        boolean exceptionThrown = false;
+        try {
+            c.get("3", id -> {
+                throw new IllegalStateException("upstream failed");
+            });
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        } finally {
+            if (!exceptionThrown) {
+                fail("Expected an exception");
+            }
+        }
+
+        assertFalse(c.touch("3"));
+        assertNull(c.get("4", id -> null));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        Cache<Page> c = new Cache<>(2, 1);
+        c.put(new Page("test1", "1"));
+        c.put(new Page("test1again", "1"));
+        c.put(new Page("test2", "2"));
+        c.get("1");
+        c.put(new Page("test3", "3"));
+
+        boolean exceptionThrown = false;
+        try {
+            c.get("2");
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        c.get("4", id -> new Page("test" + id, id));
+        try {
+            c.get("5", id -> {
+                throw new IllegalStateException("upstream failed");
+            });
+        } catch (IllegalStateException e) {
+            // counted as a failed load
+        }
+
+        Thread.sleep(1010);
+        c.cleanUp();
+
+        CacheStats stats = c.stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(3, stats.missCount());
+        assertEquals(0.25, stats.hitRate(), 0.001);
+        assertEquals(4, stats.putCount());
+        assertEquals(1, stats.updateCount());
+        assertEquals(2, stats.evictionCount());
+        assertEquals(2, stats.expirationCount());
+        assertEquals(1, stats.loadSuccessCount());
+        assertEquals(1, stats.loadFailureCount());
+        assertTrue(stats.totalLoadTime() > 0);
+        assertTrue(stats.loadTimePercentile(0.5) <= stats.loadTimePercentile(1));
+        assertTrue(stats.lockWaitPercentile(0.99) >= 0);
+    }
+
+    @Test
+    public void testSnapshotKeepsRemainingTimeout() throws Exception {
+        Cache<Page> c = new Cache<>(10, 2);
+        Page p1 = new Page("test1", "1");
+        Page p2 = new Page("test2", "2");
+        c.put(p1);
+        Thread.sleep(1200);
+        c.put(p2);
+        c.get("1");
+
+        Path file = Files.createTempFile("cache", ".snapshot");
+        try {
+            c.writeSnapshot(file, Page.CODEC);
+
+            // "2" was accessed less recently, so it is evicted first
+            Cache<Page> restored = new Cache<>(1, 2);
+            assertEquals(2, restored.readSnapshot(file, Page.CODEC));
+            assertEquals(p1, restored.get("1"));
+            assertFalse(restored.touch("2"));
+
+            Cache<Page> both = new Cache<>(10, 2);
+            assertEquals(2, both.readSnapshot(file, Page.CODEC));
+            Thread.sleep(1000);
+
+            // "1" had less than a second left when the snapshot was written
+            assertEquals(p2, both.get("2"));
+            assertFalse(both.touch("1"));
+
+            Files.write(file, new byte[] {1, 2, 3});
+            boolean exceptionThrown = false;
+            try {
+                both.readSnapshot(file, Page.CODEC);
+            } catch (IOException e) {
+                exceptionThrown = true;
+            }
+            assertTrue(exceptionThrown);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRefreshAfterWriteServesStaleValue() throws Exception {
+        Cache<Page> c = new Cache<>(10, 100);
+        c.refreshAfterWrite(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Page p1 = new Page("test1", "1");
+        c.put(p1);
+
+        Thread.sleep(1010);
+
+        // the reload blocks until released, so the stale value must be served
+        for (int i = 0; i < 5; i++) {
+            assertSame(p1, c.get("1", id -> {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Page("test1 reloaded", id);
+            }));
+        }
+
+        release.countDown();
+        for (int i = 0; i < 100 && c.get("1").equals(p1); i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(new Page("test1 reloaded", "1"), c.get("1"));
+        assertEquals(1, loads.get());
+    }
+
     @Test
     public void testManyThreadsPutGet() {
         Cache<Page> c = new Cache<>(10, 1);
@@ -0,0 +1,246 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.DiskStore;
+import cpen221.mp3.wikimediator.Page;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DiskStoreTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("pages");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testPutGetReopen() throws IOException {
+        long later = System.currentTimeMillis() + 60000;
+        DiskStore<Page> store = new DiskStore<>(directory, 1024 * 1024, Page.CODEC);
+        Page p1 = new Page("test1", "1");
+        Page p1again = new Page("test1again", "1");
+
+        store.put(p1, later);
+        store.put(p1again, later);
+        store.put(new Page("test2", "2"), System.currentTimeMillis() - 1);
+
+        assertEquals(p1again, store.get("1"));
+        assertNull(store.get("2"));
+        assertNull(store.get("3"));
+        assertEquals(1, store.hitCount());
+        assertEquals(2, store.missCount());
+        store.close();
+
+        DiskStore<Page> reopened = new DiskStore<>(directory, 1024 * 1024, Page.CODEC);
+        assertEquals(p1again, reopened.get("1"));
+        assertNull(reopened.get("2"));
+        reopened.close();
+    }
+
+    @Test
+    public void testCompactionAndCapacity() throws IOException {
+        long later = System.currentTimeMillis() + 60000;
+        DiskStore<Page> store = new DiskStore<>(directory, 4096, 256, Page.CODEC);
+
+        // rewriting the same values makes most of each full segment garbage
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 3; i++) {
+                store.put(new Page("round " + round, Integer.toString(i)), later);
+            }
+        }
+        assertEquals(3, store.size());
+        assertTrue(store.sizeInBytes() < 1024);
+        assertEquals(new Page("round 49", "0"), store.get("0"));
+
+        // many distinct values do not fit, so the oldest are dropped
+        for (int i = 0; i < 200; i++) {
+            store.put(new Page("value", "v" + i), later);
+        }
+        assertTrue(store.sizeInBytes() <= 4096);
+        assertNull(store.get("v0"));
+        assertEquals(new Page("value", "v199"), store.get("v199"));
+        store.close();
+    }
+
+    @Test
+    public void testCacheSpillsEvictedPages() throws IOException {
+        DiskStore<Page> store = new DiskStore<>(directory, 1024 * 1024, Page.CODEC);
+        Cache<Page> c = new Cache<>(2, 100);
+        c.spillTo(store, Runnable::run);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            c.get(Integer.toString(i), id -> {
+                loads.incrementAndGet();
+                return new Page("test" + id, id);
+            });
+        }
+        assertEquals(5, loads.get());
+        assertEquals(3, store.size());
+
+        // "0" was evicted to disk, so it is not loaded again
+        assertEquals(new Page("test0", "0"), c.get("0", id -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(5, loads.get());
+        assertEquals(1, store.hitCount());
+        assertEquals(6, c.stats().missCount());
+        assertEquals(0, c.stats().hitCount());
+        assertEquals(1, c.stats().l2HitCount());
+        assertEquals(5, c.stats().l2MissCount());
+
+        // the page moved back to the cache, so the store no longer has it
+        assertNull(store.get("0"));
+        store.close();
+    }
+
+    @Test
+    public void testBulkLoadFindsSpilledPages() throws IOException {
+        DiskStore<Page> store = new DiskStore<>(directory, 1024 * 1024, Page.CODEC);
+        Cache<Page> c = new Cache<>(2, 100);
+        c.spillTo(store, Runnable::run);
+        for (int i = 0; i < 4; i++) {
+            c.put(new Page("test" + i, Integer.toString(i)));
+        }
+        assertEquals(2, store.size());
+
+        // "0" and "1" were evicted to disk, so only "4" is loaded
+        List<String> loaded = new ArrayList<>();
+        Map<String, Page> pages = c.getAll(Arrays.asList("0", "1", "4"), ids -> {
+            loaded.addAll(ids);
+            return Collections.singletonMap("4", new Page("test4", "4"));
+        });
+        assertEquals(Collections.singletonList("4"), loaded);
+        assertEquals(3, pages.size());
+        assertEquals(new Page("test0", "0"), pages.get("0"));
+        assertEquals(2, store.hitCount());
+        assertEquals(1, c.stats().loadSuccessCount());
+        store.close();
+    }
+
+    @Test
+    public void testInvalidateRemovesSpilledPages() throws IOException {
+        DiskStore<Page> store = new DiskStore<>(directory, 1024 * 1024, Page.CODEC);
+        Cache<Page> c = new Cache<>(1, 100);
+        List<Runnable> writes = new ArrayList<>();
+        c.spillTo(store, writes::add);
+        AtomicInteger loads = new AtomicInteger();
+
+        // "0" is written to the store, and "1" is waiting to be written
+        c.put(new Page("test0", "0"));
+        c.put(new Page("test1", "1"));
+        writes.remove(0).run();
+        c.put(new Page("test2", "2"));
+        assertEquals(new Page("test0", "0"), store.get("0"));
+
+        c.invalidateAll(Arrays.asList("0", "1"));
+        for (Runnable write : writes) {
+            write.run();
+        }
+        assertEquals(0, store.size());
+        for (String id : Arrays.asList("0", "1")) {
+            assertEquals(new Page("new" + id, id), c.get(id, key -> {
+                loads.incrementAndGet();
+                return new Page("new" + key, key);
+            }));
+        }
+        assertEquals(2, loads.get());
+
+        // invalidating everything empties the store too
+        writes.clear();
+        c.put(new Page("test3", "3"));
+        writes.forEach(Runnable::run);
+        assertTrue(store.size() > 0);
+        c.invalidateAll();
+        assertEquals(0, store.size());
+        assertNull(c.get("1", id -> null));
+        store.close();
+    }
+
+    @Test
+    public void testEvictedPagesWaitingToBeWritten() throws IOException {
+        DiskStore<Page> store = new DiskStore<>(directory, 1024 * 1024, Page.CODEC);
+        Cache<Page> c = new Cache<>(1, 100);
+        List<Runnable> writes = new ArrayList<>();
+        c.spillTo(store, writes::add);
+
+        // evicting does not write, but the evicted page is still found
+        assertTrue(c.put(new Page("test0", "0")));
+        assertTrue(c.put(new Page("test1", "1")));
+        assertEquals(1, writes.size());
+        assertEquals(0, store.size());
+        assertEquals(new Page("test0", "0"), c.get("0", id -> null));
+        assertEquals(0, store.hitCount() + store.missCount());
+        assertEquals(1, c.stats().l2HitCount());
+
+        // "0" is back in the cache, so only "1" is written
+        for (Runnable write : new ArrayList<>(writes)) {
+            write.run();
+        }
+        assertEquals(new Page("test1", "1"), store.get("1"));
+        assertNull(store.get("0"));
+        store.close();
+    }
+
+    @Test
+    public void testRecoverStopsAtCorruptRecord() throws IOException {
+        long later = System.currentTimeMillis() + 60000;
+        DiskStore<Page> store = new DiskStore<>(directory, 1024 * 1024, Page.CODEC);
+        store.put(new Page("test1", "1"), later);
+        long firstRecord = store.sizeInBytes();
+        store.put(new Page("test2", "2"), later);
+        store.put(new Page("test3", "3"), later);
+        store.close();
+
+        // flip a byte of the second value, and add a zero-filled tail as a
+        // crash while growing the file could leave
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow(AssertionError::new);
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[(int) firstRecord + 30] ^= 1;
+        byte[] padded = Arrays.copyOf(bytes, bytes.length + 64);
+        Files.write(segment, padded);
+
+        DiskStore<Page> reopened = new DiskStore<>(directory, 1024 * 1024, Page.CODEC);
+        assertEquals(new Page("test1", "1"), reopened.get("1"));
+        assertNull(reopened.get("2"));
+        assertNull(reopened.get("3"));
+        assertEquals(firstRecord, reopened.sizeInBytes());
+
+        // the store appends after the last good record
+        reopened.put(new Page("test4", "4"), later);
+        reopened.close();
+        DiskStore<Page> again = new DiskStore<>(directory, 1024 * 1024, Page.CODEC);
+        assertEquals(new Page("test4", "4"), again.get("4"));
+        assertEquals(2, again.size());
+        again.close();
+    }
+
+}
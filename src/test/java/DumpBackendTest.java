@@ -0,0 +1,151 @@
+package cpen221.mp3;
+
+import cpen221.mp3.wikimediator.DumpBackend;
+import cpen221.mp3.wikimediator.SqlDumpReader;
+import cpen221.mp3.wikimediator.WikiMediator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class DumpBackendTest {
+
+    private static final String PAGES =
+            "<mediawiki>\n"
+            + "  <siteinfo>\n"
+            + "    <namespaces>\n"
+            + "      <namespace key=\"0\" case=\"first-letter\" />\n"
+            + "      <namespace key=\"14\" case=\"first-letter\">Category</namespace>\n"
+            + "    </namespaces>\n"
+            + "  </siteinfo>\n"
+            + "  <page>\n"
+            + "    <title>Canada</title><ns>0</ns><id>1</id>\n"
+            + "    <revision><id>10</id><timestamp>2020-01-01T00:00:00Z</timestamp>\n"
+            + "      <contributor><username>Alice</username><id>7</id></contributor>\n"
+            + "      <text>Canada is a country.</text></revision>\n"
+            + "    <revision><id>11</id><timestamp>2020-02-01T00:00:00Z</timestamp>\n"
+            + "      <contributor><username>Bob</username><id>8</id></contributor>\n"
+            + "      <text>Canada is a country in North America. Its capital is [[Ottawa]].</text>"
+            + "</revision>\n"
+            + "  </page>\n"
+            + "  <page>\n"
+            + "    <title>Ottawa</title><ns>0</ns><id>2</id>\n"
+            + "    <revision><id>12</id><timestamp>2020-03-01T00:00:00Z</timestamp>\n"
+            + "      <contributor><username>Alice</username><id>7</id></contributor>\n"
+            + "      <text>Ottawa is the capital of [[Canada]].</text></revision>\n"
+            + "  </page>\n"
+            + "  <page>\n"
+            + "    <title>Canadian</title><ns>0</ns><id>3</id>\n"
+            + "    <redirect title=\"Canada\" />\n"
+            + "    <revision><id>13</id><timestamp>2019-01-01T00:00:00Z</timestamp>\n"
+            + "      <contributor><ip>10.0.0.1</ip></contributor>\n"
+            + "      <text>#REDIRECT [[Canada]]</text></revision>\n"
+            + "  </page>\n"
+            + "  <page>\n"
+            + "    <title>Category:Countries in North America</title><ns>14</ns><id>4</id>\n"
+            + "    <revision><id>14</id><timestamp>2019-01-01T00:00:00Z</timestamp>\n"
+            + "      <contributor><username>Bob</username><id>8</id></contributor>\n"
+            + "      <text></text></revision>\n"
+            + "  </page>\n"
+            + "</mediawiki>\n";
+
+    private static final String PAGE_LINKS =
+            "-- MySQL dump\n"
+            + "INSERT INTO `pagelinks` VALUES (1,0,'Ottawa',0),(1,0,'O\\'Leary_(town)',0),"
+            + "(2,0,'Canada',0),(3,0,'Canada',0);\n"
+            + "INSERT INTO `pagelinks` VALUES (99,0,'Canada',0);\n";
+
+    private static final String CATEGORY_LINKS =
+            "INSERT INTO `categorylinks` VALUES (1,'Countries_in_North_America','CANADA',"
+            + "'2020-01-01 00:00:00','','uppercase','page');\n";
+
+    private static DumpBackend backend;
+    private static Path pageLinks;
+
+    @BeforeClass
+    public static void writeDump() throws IOException {
+        Path dir = Files.createTempDirectory("dump");
+        Path pages = dir.resolve("pages-articles.xml.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(pages))) {
+            out.write(PAGES.getBytes(StandardCharsets.UTF_8));
+        }
+        pageLinks = dir.resolve("pagelinks.sql");
+        Files.write(pageLinks, PAGE_LINKS.getBytes(StandardCharsets.UTF_8));
+        Path categoryLinks = dir.resolve("categorylinks.sql");
+        Files.write(categoryLinks, CATEGORY_LINKS.getBytes(StandardCharsets.UTF_8));
+
+        backend = new DumpBackend(pages, pageLinks, categoryLinks);
+    }
+
+    @Test
+    public void testSqlDumpReader() throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        SqlDumpReader.read(pageLinks, "pagelinks", rows::add);
+
+        assertEquals(5, rows.size());
+        assertEquals(Arrays.asList("1", "0", "O'Leary_(town)", "0"), rows.get(1));
+        assertEquals(Arrays.asList("99", "0", "Canada", "0"), rows.get(4));
+    }
+
+    @Test
+    public void testPages() {
+        assertTrue(backend.exists("Canada"));
+        assertTrue(backend.exists("Category:Countries_in_North_America"));
+        assertFalse(backend.exists("Toronto"));
+        assertEquals("Ottawa is the capital of [[Canada]].", backend.getPageText("Ottawa"));
+        assertTrue(backend.getPageText("Canada").contains("North America"));
+        assertEquals("", backend.getPageText("Toronto"));
+
+        assertEquals(Arrays.asList("Canada", "Canadian"), backend.allPages("Can"));
+        assertEquals(Arrays.asList("Canada", "Ottawa"), backend.search("canada", 10));
+        assertEquals(Collections.singletonList("Canada"), backend.search("canada", 1));
+    }
+
+    @Test
+    public void testLinks() {
+        assertEquals(Arrays.asList("Ottawa", "O'Leary (town)"), backend.getLinksOnPage("Canada"));
+        assertEquals(Collections.singletonList("Ottawa"), backend.getLinksOnPage(true, "Canada"));
+        assertEquals(Collections.singletonList("O'Leary (town)"),
+                backend.getLinksOnPage(false, "Canada"));
+        assertEquals(Collections.singletonList("Ottawa"), backend.whatLinksHere("Canada"));
+        assertEquals(Collections.singletonList("Canadian"), backend.whatLinksHere("Canada", true));
+        assertTrue(backend.getLinksOnPage("Toronto").isEmpty());
+    }
+
+    @Test
+    public void testCategoriesAndEdits() {
+        assertEquals(Collections.singletonList("Category:Countries in North America"),
+                backend.getCategoriesOnPage("Canada"));
+        assertEquals(Collections.singletonList("Canada"),
+                backend.getCategoryMembers("Category:Countries in North America"));
+
+        assertEquals("Bob", backend.getLastEditor("Canada"));
+        assertEquals("10.0.0.1", backend.getLastEditor("Canadian"));
+        assertNull(backend.getLastEditor("Toronto"));
+        assertEquals(Arrays.asList("Ottawa", "Canada"), backend.getContribs("Alice"));
+        assertEquals(Arrays.asList("Canada", "Category:Countries in North America"),
+                backend.getContribs("Bob"));
+    }
+
+    @Test
+    public void testWikiMediatorOffline() {
+        WikiMediator wm = new WikiMediator(backend);
+
+        assertEquals(backend.getPageText("Canada"), wm.getPage("Canada"));
+        assertEquals("", wm.getPage("Toronto"));
+        assertEquals(Arrays.asList("Canada", "Ottawa"), wm.simpleSearch("Canada", 5));
+        assertEquals(Collections.singletonList("Ottawa"), wm.getConnectedPages("Canada", 1));
+    }
+
+}
@@ -0,0 +1,334 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.ArcPolicy;
+import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.EvictionPolicy;
+import cpen221.mp3.cache.FifoPolicy;
+import cpen221.mp3.cache.LfuPolicy;
+import cpen221.mp3.cache.LruPolicy;
+import cpen221.mp3.cache.NoSuchCacheElementException;
+import cpen221.mp3.cache.WTinyLfuPolicy;
+import cpen221.mp3.wikimediator.Page;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class EvictionPolicyTest {
+
+    @Test
+    public void testLruPolicy() {
+        EvictionPolicy<String> policy = new LruPolicy<>();
+        assertNull(policy.victim());
+
+        policy.recordInsert("1");
+        policy.recordInsert("2");
+        policy.recordInsert("3");
+        policy.recordAccess("1");
+        assertEquals("2", policy.victim());
+
+        policy.recordRemoval("2");
+        assertEquals("3", policy.victim());
+
+        policy.recordRemoval("3");
+        policy.recordRemoval("1");
+        assertNull(policy.victim());
+    }
+
+    @Test
+    public void testFifoPolicy() {
+        EvictionPolicy<String> policy = new FifoPolicy<>();
+        policy.recordInsert("1");
+        policy.recordInsert("2");
+        policy.recordAccess("1");
+        assertEquals("1", policy.victim());
+
+        policy.recordRemoval("1");
+        assertEquals("2", policy.victim());
+        policy.recordRemoval("2");
+        assertNull(policy.victim());
+    }
+
+    @Test
+    public void testLfuPolicy() {
+        EvictionPolicy<String> policy = new LfuPolicy<>();
+        assertNull(policy.victim());
+
+        policy.recordInsert("1");
+        policy.recordInsert("2");
+        policy.recordInsert("3");
+        policy.recordAccess("1");
+        policy.recordAccess("1");
+        policy.recordAccess("3");
+        assertEquals("2", policy.victim());
+
+        policy.recordRemoval("2");
+        assertEquals("3", policy.victim());
+
+        // ties go to the least recently requested
+        policy.recordAccess("3");
+        policy.recordInsert("4");
+        policy.recordAccess("4");
+        policy.recordAccess("4");
+        assertEquals("1", policy.victim());
+
+        policy.recordRemoval("1");
+        policy.recordRemoval("3");
+        policy.recordRemoval("4");
+        assertNull(policy.victim());
+    }
+
+    @Test
+    public void testArcPolicy() {
+        Cache<Page> c = new Cache<>(4, 3600, new ArcPolicy<>());
+        for (int i = 0; i < 4; i++) {
+            c.put(new Page("", Integer.toString(i)));
+        }
+        try {
+            c.get("0");
+            c.get("1");
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        // values requested twice survive a sweep over new values
+        for (int i = 4; i < 20; i++) {
+            c.put(new Page("", Integer.toString(i)));
+        }
+        assertTrue(c.touch("0"));
+        assertTrue(c.touch("1"));
+        assertFalse(c.touch("2"));
+
+        // inserting recently evicted values grows the recency side again
+        for (int round = 0; round < 3; round++) {
+            for (int i = 16; i < 20; i++) {
+                c.put(new Page("", Integer.toString(i)));
+            }
+        }
+        assertTrue(c.touch("19"));
+    }
+
+    @Test
+    public void testArcPolicyOnlyRemembersEvictions() {
+        EvictionPolicy<String> policy = new ArcPolicy<>();
+        policy.recordInsert("a");
+        policy.recordInsert("b");
+        assertEquals("a", policy.victim());
+
+        // an invalidated value put back is new to T1, and the target size
+        // of T1 stays 0, so the oldest value in T1 is still the victim
+        policy.recordRemoval("a");
+        policy.recordInsert("a");
+        assertEquals("b", policy.victim());
+
+        // an evicted value put back is found in B1, which moves it to T2 and
+        // grows the target size of T1 to fit the rest of T1
+        policy.recordEviction("b");
+        policy.recordInsert("b");
+        assertEquals("b", policy.victim());
+    }
+
+    @Test
+    public void testWTinyLfuKeepsFrequentValues() {
+        Cache<Page> c = new Cache<>(10, 3600, new WTinyLfuPolicy<>());
+        for (int i = 0; i < 10; i++) {
+            c.put(new Page("hot", "hot" + i));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++) {
+                try {
+                    c.get("hot" + i);
+                } catch (NoSuchCacheElementException e) {
+                    fail("Should not have an exception");
+                }
+            }
+        }
+
+        // a sweep over values that are only requested once, while the hot
+        // values keep being requested
+        int hotHits = 0;
+        for (int i = 0; i < 1000; i++) {
+            c.put(new Page("cold", "cold" + i));
+            if (i % 20 == 19) {
+                for (int j = 0; j < 10; j++) {
+                    try {
+                        c.get("hot" + j);
+                        hotHits++;
+                    } catch (NoSuchCacheElementException e) {
+                        c.put(new Page("hot", "hot" + j));
+                    }
+                }
+            }
+        }
+
+        // 50 rounds of 10 requests; LRU would miss every one of them
+        assertTrue(hotHits >= 400);
+    }
+
+    @Test
+    public void testHitRateOnScanPollutedTrace() {
+        List<String> trace = scanPollutedTrace(new Random(221), 200000);
+
+        double lru = hitRate(new Cache<>(500, 3600, new LruPolicy<>()), trace);
+        double tinyLfu = hitRate(new Cache<>(500, 3600, new WTinyLfuPolicy<>()), trace);
+
+        assertTrue(tinyLfu > lru);
+    }
+
+    @Test
+    public void testPolicyHitRates() {
+        Map<String, Supplier<EvictionPolicy<String>>> policies = new LinkedHashMap<>();
+        policies.put("LRU", LruPolicy::new);
+        policies.put("FIFO", FifoPolicy::new);
+        policies.put("LFU", LfuPolicy::new);
+        policies.put("ARC", ArcPolicy::new);
+        policies.put("W-TinyLFU", WTinyLfuPolicy::new);
+
+        // on skewed requests, with or without scans, policies that count
+        // requests beat LRU, which beats FIFO
+        for (List<String> trace : Arrays.asList(zipfTrace(new Random(221), 100000),
+                scanPollutedTrace(new Random(221), 100000))) {
+            Map<String, Double> rates = hitRates(policies, trace);
+            assertTrue(rates.get("FIFO") < rates.get("LRU"));
+            assertTrue(rates.get("LFU") > rates.get("LRU") + 0.05);
+            assertTrue(rates.get("ARC") > rates.get("LRU") + 0.05);
+            assertTrue(rates.get("W-TinyLFU") > rates.get("LRU") + 0.05);
+        }
+
+        // a loop larger than the cache defeats LRU and FIFO entirely
+        Map<String, Double> rates = hitRates(policies, loopTrace(600, 100000));
+        assertEquals(0, rates.get("LRU"), 0.001);
+        assertEquals(0, rates.get("FIFO"), 0.001);
+        assertTrue(rates.get("W-TinyLFU") > 0.5);
+    }
+
+    /**
+     * Replay a trace against a cache of 500 values for each of several
+     * policies.
+     *
+     * @param policies creates each policy, by name
+     * @param trace the identifiers requested, in order
+     * @return the fraction of requests that hit, by the name of the policy
+     */
+    private static Map<String, Double> hitRates(Map<String, Supplier<EvictionPolicy<String>>> policies,
+                                                List<String> trace) {
+        Map<String, Double> rates = new HashMap<>();
+        for (Map.Entry<String, Supplier<EvictionPolicy<String>>> policy : policies.entrySet()) {
+            rates.put(policy.getKey(), hitRate(new Cache<>(500, 3600, policy.getValue().get()), trace));
+        }
+        return rates;
+    }
+
+    /**
+     * Replay a trace against a cache, putting each value that misses.
+     *
+     * @param c the cache to replay against
+     * @param trace the identifiers requested, in order
+     * @return the fraction of requests that hit
+     */
+    static double hitRate(Cache<Page> c, List<String> trace) {
+        int hits = 0;
+        for (String id : trace) {
+            try {
+                c.get(id);
+                hits++;
+            } catch (NoSuchCacheElementException e) {
+                c.put(new Page("", id));
+            }
+        }
+        return (double) hits / trace.size();
+    }
+
+    /**
+     * Generate requests for popular pages (following a Zipf distribution over
+     * 5000 titles) interrupted every 5000 requests by a sweep over 1000 titles
+     * that are never requested again, like a getConnectedPages call.
+     *
+     * @param random the source of randomness
+     * @param length the number of requests
+     * @return the identifiers requested, in order
+     */
+    static List<String> scanPollutedTrace(Random random, int length) {
+        double[] cdf = zipfCdf(5000, 0.9);
+        List<String> trace = new ArrayList<>(length);
+        int sweep = 0;
+
+        while (trace.size() < length) {
+            if (trace.size() % 5000 == 4999) {
+                for (int i = 0; i < 1000 && trace.size() < length; i++) {
+                    trace.add("sweep" + sweep + "-" + i);
+                }
+                sweep++;
+            } else {
+                int rank = Arrays.binarySearch(cdf, random.nextDouble());
+                trace.add("page" + (rank < 0 ? -rank - 1 : rank));
+            }
+        }
+
+        return trace;
+    }
+
+    /**
+     * Generate requests for titles following a Zipf distribution over 5000
+     * titles.
+     *
+     * @param random the source of randomness
+     * @param length the number of requests
+     * @return the identifiers requested, in order
+     */
+    static List<String> zipfTrace(Random random, int length) {
+        double[] cdf = zipfCdf(5000, 0.9);
+        List<String> trace = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            int rank = Arrays.binarySearch(cdf, random.nextDouble());
+            trace.add("page" + (rank < 0 ? -rank - 1 : rank));
+        }
+        return trace;
+    }
+
+    /**
+     * Generate requests that cycle through the same titles in order, like
+     * repeated getConnectedPages calls on one page.
+     *
+     * @param titles the number of titles in the loop
+     * @param length the number of requests
+     * @return the identifiers requested, in order
+     */
+    static List<String> loopTrace(int titles, int length) {
+        List<String> trace = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            trace.add("page" + i % titles);
+        }
+        return trace;
+    }
+
+    /**
+     * Compute the cumulative distribution of a Zipf distribution.
+     *
+     * @param n the number of items
+     * @param skew the exponent of the distribution
+     * @return cdf where cdf[i] is the probability of picking an item of rank
+     *         at most i
+     */
+    private static double[] zipfCdf(int n, double skew) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            cdf[i] = total;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+}
@@ -0,0 +1,27 @@
+package cpen221.mp3.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testGrowingKeepsFrequencies() {
+        FrequencySketch sketch = new FrequencySketch();
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("hot".hashCode());
+        }
+        sketch.increment("warm".hashCode());
+        assertEquals(5, sketch.frequency("hot".hashCode()));
+
+        // grows several times over, as it does while a cache warms up
+        for (int size = 32; size <= 1 << 16; size <<= 1) {
+            sketch.ensureCapacity(size);
+            assertEquals(5, sketch.frequency("hot".hashCode()));
+        }
+        assertEquals(1, sketch.frequency("warm".hashCode()));
+        assertEquals(0, sketch.frequency("cold".hashCode()));
+    }
+
+}
@@ -0,0 +1,55 @@
+package cpen221.mp3.cache;
+
+import org.junit.Test;
+
+import javax.management.Notification;
+
+import static org.junit.Assert.*;
+
+public class HeapPressureSizerTest {
+
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+    private static final class Value implements Cacheable {
+        private final String id;
+
+        private Value(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String id() {
+            return this.id;
+        }
+    }
+
+    @Test
+    public void testShrinksOncePerReading() {
+        Cache<Value> c = new Cache<>(100, 100);
+        double[] occupancy = {0.9};
+        HeapPressureSizer sizer = new HeapPressureSizer(c, 10, 200, 0.75, 0.5, () -> occupancy[0]);
+
+        // young collections leave the old generation's reading as it was
+        for (int i = 0; i < 5; i++) {
+            sizer.handleNotification(new Notification(GC_NOTIFICATION, this, i), null);
+        }
+        assertEquals(75, c.maximumWeight());
+
+        occupancy[0] = 0.85;
+        sizer.handleNotification(new Notification(GC_NOTIFICATION, this, 5), null);
+        sizer.handleNotification(new Notification(GC_NOTIFICATION, this, 6), null);
+        assertEquals(56, c.maximumWeight());
+
+        // other notifications are ignored
+        occupancy[0] = 0.8;
+        sizer.handleNotification(new Notification("other", this, 7), null);
+        assertEquals(56, c.maximumWeight());
+
+        // adjusting explicitly always acts, and counts as the last reading
+        occupancy[0] = 0.1;
+        assertEquals(70, sizer.adjust());
+        sizer.handleNotification(new Notification(GC_NOTIFICATION, this, 8), null);
+        assertEquals(70, c.maximumWeight());
+    }
+
+}
@@ -0,0 +1,121 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.LongKeyCache;
+import cpen221.mp3.cache.NoSuchCacheElementException;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongKeyCacheTest {
+
+    @Test
+    public void testPutGet() {
+        LongKeyCache<String> c = new LongKeyCache<>(100, 100);
+        assertTrue(c.put(12, "Vancouver"));
+        assertTrue(c.put(12, "Vancouver, BC"));
+        assertTrue(c.put(-7, "negative"));
+
+        try {
+            assertEquals("Vancouver, BC", c.get(12));
+            assertEquals("negative", c.get(-7));
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+        assertEquals(2, c.size());
+
+        boolean exceptionThrown = false;
+        try {
+            c.get(13);
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        LongKeyCache<String> c0 = new LongKeyCache<>(0, 1);
+        assertFalse(c0.put(1, "one"));
+    }
+
+    @Test
+    public void testRemoveLeastRequested() {
+        LongKeyCache<String> c = new LongKeyCache<>(2, 10000);
+        c.put(1, "one");
+        c.put(2, "two");
+
+        try {
+            c.get(1);
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        // should get 2 removed from cache
+        c.put(3, "three");
+        assertTrue(c.touch(1));
+        assertTrue(c.touch(3));
+        assertFalse(c.touch(2));
+        assertEquals(1, c.stats().evictionCount());
+    }
+
+    @Test
+    public void testTouchUpdateTimeout() {
+        LongKeyCache<String> c = new LongKeyCache<>(10, 1);
+        c.put(1, "one");
+
+        assertTrue(c.update(1, "uno"));
+        assertFalse(c.update(3, "three"));
+        assertTrue(c.touch(1));
+        assertFalse(c.touch(2));
+        assertEquals("uno", c.get(1, id -> "loaded"));
+
+        try {
+            Thread.sleep(1010);
+        } catch (InterruptedException e) {
+            // do nothing
+        }
+
+        assertFalse(c.touch(1));
+        assertEquals(0, c.size());
+        assertEquals("loaded", c.get(1, id -> "loaded"));
+        assertNull(c.get(2, id -> null));
+        assertEquals(1, c.size());
+    }
+
+    @Test
+    public void testMatchesHashMapUnderChurn() {
+        // 200 keys share 64 entries, so most puts evict and shift entries
+        // back in the table
+        LongKeyCache<Long> c = new LongKeyCache<>(64, 3600);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(221);
+
+        for (int i = 0; i < 100000; i++) {
+            long id = random.nextInt(200) * 1024L;
+            if (random.nextBoolean()) {
+                c.put(id, (long) i);
+                expected.put(id, (long) i);
+            } else {
+                try {
+                    assertEquals(expected.get(id), c.get(id));
+                } catch (NoSuchCacheElementException e) {
+                    expected.remove(id);
+                }
+            }
+            assertTrue(c.size() <= 64);
+        }
+
+        int present = 0;
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            try {
+                assertEquals(e.getValue(), c.get(e.getKey()));
+                present++;
+            } catch (NoSuchCacheElementException ex) {
+                // evicted
+            }
+        }
+        assertEquals(c.size(), present);
+    }
+
+}
@@ -0,0 +1,124 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.LruPolicy;
+import cpen221.mp3.cache.NoSuchCacheElementException;
+import cpen221.mp3.cache.OffHeapCache;
+import cpen221.mp3.wikimediator.Page;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OffHeapCacheTest {
+
+    @Test
+    public void testPutGet() {
+        OffHeapCache<Page> c = new OffHeapCache<>(1024 * 1024, 100, Page.CODEC);
+        Page p1 = new Page("test1", "1");
+        Page p1again = new Page("test1again", "1");
+        Page large = new Page(repeat("[[Link]] Café text\n", 5000), "Large");
+
+        assertTrue(c.put(p1));
+        assertTrue(c.put(p1again));
+        assertTrue(c.put(large));
+        assertTrue(large.isCompressed());
+
+        try {
+            assertEquals(p1again, c.get("1"));
+            assertEquals(large, c.get("Large"));
+            assertNotSame(large, c.get("Large"));
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        boolean exceptionThrown = false;
+        try {
+            c.get("2");
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        OffHeapCache<Page> c0 = new OffHeapCache<>(0, 1, Page.CODEC);
+        assertFalse(c0.put(p1));
+    }
+
+    @Test
+    public void testEvictionReturnsBlocks() {
+        // 8 blocks of 64 bytes, each page takes 2 of them
+        OffHeapCache<Page> c = new OffHeapCache<>(512, 64, 100, Page.CODEC, new LruPolicy<>());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(c.put(new Page(repeat("x", 80), Integer.toString(i))));
+        }
+        assertEquals(512, c.usedBytes());
+
+        try {
+            c.get("0");
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        // should get "1" removed, and its blocks reused
+        assertTrue(c.put(new Page(repeat("y", 80), "4")));
+        assertEquals(4, c.size());
+        assertEquals(512, c.usedBytes());
+
+        boolean exceptionThrown = false;
+        try {
+            assertEquals(new Page(repeat("x", 80), "0"), c.get("0"));
+            assertEquals(new Page(repeat("y", 80), "4"), c.get("4"));
+            c.get("1");
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        // larger than the whole arena
+        assertFalse(c.put(new Page(repeat("z", 1000), "5")));
+        assertFalse(c.update(new Page(repeat("z", 1000), "4")));
+        assertEquals(3, c.size());
+        assertEquals(384, c.usedBytes());
+    }
+
+    @Test
+    public void testTouchUpdateTimeout() {
+        OffHeapCache<Page> c = new OffHeapCache<>(1024 * 1024, 1, Page.CODEC);
+        Page p1 = new Page("test1", "1");
+        Page p2 = new Page("test1 but not really", "1");
+        c.put(p1);
+
+        assertTrue(c.update(p2));
+        assertFalse(c.update(new Page("test3", "3")));
+        assertTrue(c.touch("1"));
+        assertFalse(c.touch("2"));
+
+        try {
+            assertEquals(p2, c.get("1"));
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        try {
+            Thread.sleep(1010);
+        } catch (InterruptedException e) {
+            // do nothing
+        }
+
+        boolean exceptionThrown = false;
+        try {
+            c.get("1");
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+        assertEquals(0, c.usedBytes());
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+}
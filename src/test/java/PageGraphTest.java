@@ -0,0 +1,162 @@
+package cpen221.mp3;
+
+import cpen221.mp3.graph.LinkGraph;
+import cpen221.mp3.graph.LinkGraphBuilder;
+import cpen221.mp3.graph.PageGraph;
+import cpen221.mp3.wikimediator.JwikiBackend;
+import cpen221.mp3.wikimediator.WikiMediator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class PageGraphTest {
+
+    private static final String PAGES =
+            "INSERT INTO `page` VALUES (1,0,'Canada',0,0,0.1,'20200101000000',NULL,11,100,'wikitext',NULL),"
+            + "(2,0,'Ottawa',0,0,0.2,'20200101000000',NULL,12,100,'wikitext',NULL),"
+            + "(3,0,'Toronto',0,0,0.3,'20200101000000',NULL,13,100,'wikitext',NULL);\n"
+            + "INSERT INTO `page` VALUES (4,0,'Canadian',1,0,0.4,'20200101000000',NULL,14,20,'wikitext',NULL),"
+            + "(5,14,'Countries',0,0,0.5,'20200101000000',NULL,15,0,'wikitext',NULL),"
+            + "(6,0,'Ontario',0,0,0.6,'20200101000000',NULL,16,100,'wikitext',NULL);\n";
+
+    private static final String PAGE_LINKS =
+            "INSERT INTO `pagelinks` VALUES (1,0,'Ottawa',0),(1,0,'Toronto',0),(1,14,'Countries',0),"
+            + "(1,0,'Nowhere',0),(2,0,'Ontario',0),(6,0,'Toronto',0),(3,0,'Canada',0),"
+            + "(4,0,'Canada',0),(99,0,'Canada',0),(5,0,'Canada',14),(6,0,'Canadian',0);\n";
+
+    private static final String REDIRECTS =
+            "INSERT INTO `redirect` VALUES (4,0,'Canada','',''),(5,0,'Nowhere','','');\n";
+
+    private static Path dir;
+    private static PageGraph graph;
+
+    @BeforeClass
+    public static void buildGraph() throws IOException {
+        dir = Files.createTempDirectory("graph");
+        Path pages = dir.resolve("page.sql.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(pages))) {
+            out.write(PAGES.getBytes(StandardCharsets.UTF_8));
+        }
+        Path pageLinks = dir.resolve("pagelinks.sql");
+        Files.write(pageLinks, PAGE_LINKS.getBytes(StandardCharsets.UTF_8));
+        Path redirects = dir.resolve("redirect.sql");
+        Files.write(redirects, REDIRECTS.getBytes(StandardCharsets.UTF_8));
+
+        LinkGraphBuilder.build(pages, pageLinks, redirects, dir);
+        graph = PageGraph.open(dir);
+    }
+
+    @Test
+    public void testLinkGraph() {
+        LinkGraph links = graph.links();
+        assertEquals(5, links.nodeCount());
+        assertEquals(7, links.edgeCount());
+        assertEquals("Canada", graph.titles().title(0));
+        assertEquals(3, graph.titles().id("Ottawa"));
+        assertEquals(-1, graph.titles().id("Countries"));
+
+        int canada = graph.titles().id("Canada");
+        assertEquals(2, links.degree(canada));
+        assertArrayEquals(new int[] {graph.titles().id("Ottawa"), graph.titles().id("Toronto")},
+                links.neighbors(canada));
+        assertEquals(Arrays.asList("Ottawa", "Toronto"), graph.getLinksOnPage("Canada"));
+        assertEquals(Collections.singletonList("Canada"), graph.getLinksOnPage("Canadian"));
+        assertTrue(graph.getLinksOnPage("Nowhere").isEmpty());
+    }
+
+    @Test
+    public void testInLinks() {
+        // Ontario links to Canada through the redirect Canadian, and the
+        // link from Canadian itself is folded away
+        assertEquals(Arrays.asList("Ontario", "Toronto"), graph.whatLinksHere("Canada"));
+        assertTrue(graph.whatLinksHere("Canadian").isEmpty());
+        assertEquals(Collections.singletonList("Ottawa"), graph.whatLinksHere("Ontario"));
+        assertEquals(5, graph.inLinks().nodeCount());
+        assertEquals(6, graph.inLinks().edgeCount());
+    }
+
+    @Test
+    public void testTraversal() {
+        assertEquals(Arrays.asList("Ottawa", "Ontario", "Canada"),
+                graph.getPath("Ottawa", "Canada"));
+        assertEquals(Arrays.asList("Toronto", "Canada", "Ottawa", "Ontario"),
+                graph.getPath("Toronto", "Ontario"));
+        assertEquals(Collections.singletonList("Canada"), graph.getPath("Canada", "Canada"));
+        assertTrue(graph.getPath("Canada", "Canadian").isEmpty());
+        assertTrue(graph.getPath("Canada", "Nowhere").isEmpty());
+
+        assertEquals(Collections.singletonList("Ottawa"), graph.getConnectedPages("Ottawa", 0));
+        assertEquals(Arrays.asList("Ontario", "Toronto", "Canadian"),
+                graph.getConnectedPages("Ottawa", 2));
+        assertEquals(Arrays.asList("Ottawa", "Toronto", "Ontario", "Canada"),
+                graph.getConnectedPages("Canada", 2));
+    }
+
+    @Test
+    public void testTraversalsShareFinders() throws Exception {
+        // a single PathFinder, so traversals wait for each other
+        PageGraph shared = new PageGraph(graph.titles(), graph.links(), graph.inLinks(), 1);
+        List<String> expected = Arrays.asList("Toronto", "Canada", "Ottawa", "Ontario");
+        AtomicInteger wrong = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 200; j++) {
+                    if (!expected.equals(shared.getPath("Toronto", "Ontario"))
+                            || shared.getConnectedPages("Canada", 2).size() != 4) {
+                        wrong.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, wrong.get());
+
+        boolean exceptionThrown = false;
+        try {
+            new PageGraph(graph.titles(), graph.links(), graph.inLinks(), 0);
+        } catch (IllegalArgumentException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+    }
+
+    @Test
+    public void testWikiMediatorWithGraph() {
+        // both pages are in the graph, so no request reaches Wikipedia
+        WikiMediator wm = new WikiMediator(new JwikiBackend("en.wikipedia.org"), graph);
+        assertEquals(Arrays.asList("Ottawa", "Ontario", "Canada"), wm.getPath("Ottawa", "Canada"));
+        assertEquals(Arrays.asList("Ontario", "Toronto", "Canadian"),
+                wm.getConnectedPages("Ottawa", 2));
+    }
+
+    @Test
+    public void testOpenInvalidFile() throws IOException {
+        Path file = dir.resolve("invalid.csr");
+        Files.write(file, new byte[] {'C', 'S', 'R', '1', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+
+        boolean exceptionThrown = false;
+        try {
+            LinkGraph.open(file);
+        } catch (IOException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+    }
+
+}
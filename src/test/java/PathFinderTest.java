@@ -0,0 +1,146 @@
+package cpen221.mp3;
+
+import cpen221.mp3.graph.LinkGraph;
+import cpen221.mp3.graph.LinkGraphBuilder;
+import cpen221.mp3.graph.PageGraph;
+import cpen221.mp3.graph.PathFinder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PathFinderTest {
+
+    private static final int PAGES = 300;
+    private static final int LINKS = 600;
+
+    private static PageGraph graph;
+
+    @BeforeClass
+    public static void buildGraph() throws IOException {
+        Random random = new Random(221);
+        StringBuilder pages = new StringBuilder("INSERT INTO `page` VALUES ");
+        for (int i = 1; i <= PAGES; i++) {
+            pages.append(i == 1 ? "" : ",").append('(').append(i).append(",0,'Page_").append(i)
+                    .append("',0,0,0.1,'20200101000000',NULL,1,100,'wikitext',NULL)");
+        }
+        StringBuilder links = new StringBuilder("INSERT INTO `pagelinks` VALUES ");
+        for (int i = 0; i < LINKS; i++) {
+            links.append(i == 0 ? "" : ",").append('(').append(1 + random.nextInt(PAGES))
+                    .append(",0,'Page_").append(1 + random.nextInt(PAGES)).append("',0)");
+        }
+
+        Path dir = Files.createTempDirectory("graph");
+        Path pageDump = dir.resolve("page.sql");
+        Files.write(pageDump, (pages + ";\n").getBytes(StandardCharsets.UTF_8));
+        Path pageLinksDump = dir.resolve("pagelinks.sql");
+        Files.write(pageLinksDump, (links + ";\n").getBytes(StandardCharsets.UTF_8));
+
+        LinkGraphBuilder.build(pageDump, pageLinksDump, dir);
+        graph = PageGraph.open(dir);
+    }
+
+    @Test
+    public void testShortestPaths() {
+        LinkGraph links = graph.links();
+        PathFinder finder = new PathFinder(links, graph.inLinks());
+        int found = 0;
+
+        // one finder answers every query, so each must leave it clean
+        for (int start = 0; start < PAGES; start += 7) {
+            int[] distances = distances(links, start);
+            for (int stop = 0; stop < PAGES; stop += 3) {
+                int[] path = finder.path(start, stop);
+                if (distances[stop] < 0) {
+                    assertEquals(0, path.length);
+                    continue;
+                }
+
+                found++;
+                assertEquals(distances[stop] + 1, path.length);
+                assertEquals(start, path[0]);
+                assertEquals(stop, path[path.length - 1]);
+                for (int i = 1; i < path.length; i++) {
+                    final int target = path[i];
+                    assertTrue(Arrays.stream(links.neighbors(path[i - 1])).anyMatch(t -> t == target));
+                }
+            }
+        }
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void testConnected() {
+        LinkGraph links = graph.links();
+        PathFinder finder = new PathFinder(links, graph.inLinks());
+
+        for (int start = 0; start < PAGES; start += 11) {
+            int[] distances = distances(links, start);
+            int[] reached = finder.connected(start, 2);
+
+            int expected = 0;
+            for (int node = 0; node < PAGES; node++) {
+                if (node != start && distances[node] >= 1 && distances[node] <= 2) {
+                    expected++;
+                }
+            }
+            // nearest first, with start counted only where a link leads back
+            int previous = 1;
+            int others = 0;
+            for (int node : reached) {
+                if (node != start) {
+                    assertTrue(distances[node] >= previous && distances[node] <= 2);
+                    previous = distances[node];
+                    others++;
+                }
+            }
+            assertEquals(expected, others);
+            assertEquals(reached.length, Arrays.stream(reached).distinct().count());
+        }
+    }
+
+    @Test
+    public void testInvalidNode() {
+        PathFinder finder = new PathFinder(graph.links(), graph.inLinks());
+        boolean exceptionThrown = false;
+        try {
+            finder.path(0, PAGES);
+        } catch (IndexOutOfBoundsException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+        assertEquals(1, finder.path(0, 0).length);
+    }
+
+    /**
+     * @return the number of links on a shortest path from start to each
+     *         node, or -1 for nodes that cannot be reached
+     */
+    private static int[] distances(LinkGraph links, int start) {
+        int[] distances = new int[links.nodeCount()];
+        Arrays.fill(distances, -1);
+        distances[start] = 0;
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int node = queue.remove();
+            for (int target : links.neighbors(node)) {
+                if (distances[target] < 0) {
+                    distances[target] = distances[node] + 1;
+                    queue.add(target);
+                }
+            }
+        }
+        return distances;
+    }
+
+}
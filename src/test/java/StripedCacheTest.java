@@ -0,0 +1,190 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.GetAllResult;
+import cpen221.mp3.cache.NoSuchCacheElementException;
+import cpen221.mp3.cache.StripedCache;
+import cpen221.mp3.wikimediator.Page;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class StripedCacheTest {
+
+    // sequential tests
+
+    @Test
+    public void testPutGet() {
+        StripedCache<Page> c = new StripedCache<>(100, 100);
+        Page p1 = new Page("test1", "1");
+        Page p1again = new Page("test1again", "1");
+
+        assertTrue(c.put(p1));
+        assertTrue(c.put(p1again));
+
+        try {
+            assertEquals(p1again, c.get("1"));
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        boolean exceptionThrown = false;
+        try {
+            c.get("2");
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        StripedCache<Page> c0 = new StripedCache<>(0, 1);
+        assertFalse(c0.put(p1));
+    }
+
+    @Test
+    public void testTouchUpdateTimeout() {
+        StripedCache<Page> c = new StripedCache<>(10, 1);
+        Page p1 = new Page("test1", "1");
+        Page p2 = new Page("test1 but not really", "1");
+        c.put(p1);
+
+        assertTrue(c.update(p2));
+        assertFalse(c.update(new Page("test3", "3")));
+        assertTrue(c.touch("1"));
+        assertFalse(c.touch("2"));
+
+        try {
+            assertEquals(p2, c.get("1"));
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        try {
+            Thread.sleep(1010);
+        } catch (InterruptedException e) {
+            // do nothing
+        }
+
+        boolean exceptionThrown = false;
+        try {
+            c.get("1");
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+    }
+
+    @Test
+    public void testRemoveLeastRequestedSingleSegment() {
+        StripedCache<Page> c = new StripedCache<>(2, 10000, 1);
+        Page p1 = new Page("test1", "1");
+        Page p2 = new Page("test2", "2");
+        Page p3 = new Page("test3", "3");
+
+        c.put(p1);
+        c.put(p2);
+
+        try {
+            c.get(p2.id());
+            c.get(p1.id());
+        } catch (NoSuchCacheElementException e) {
+            fail("Should not have an exception");
+        }
+
+        // should get p2 removed from cache
+        c.put(p3);
+
+        boolean exceptionThrown = false;
+        try {
+            assertEquals(p1, c.get(p1.id()));
+            assertEquals(p3, c.get(p3.id()));
+            c.get(p2.id());
+        } catch (NoSuchCacheElementException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+    }
+
+    @Test
+    public void testCapacityIsRespected() {
+        StripedCache<Page> c = new StripedCache<>(256, 100, 16);
+        for (int i = 0; i < 10000; i++) {
+            c.put(new Page("test", Integer.toString(i)));
+        }
+
+        int present = 0;
+        for (int i = 0; i < 10000; i++) {
+            try {
+                c.get(Integer.toString(i));
+                present++;
+            } catch (NoSuchCacheElementException e) {
+                // evicted
+            }
+        }
+
+        assertTrue(present <= 256);
+        assertTrue(present > 0);
+    }
+
+    @Test
+    public void testBulkOperations() {
+        StripedCache<Page> c = new StripedCache<>(1000, 100, 4);
+        List<Page> pages = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            pages.add(new Page("test", Integer.toString(i)));
+            ids.add(Integer.toString(i));
+        }
+
+        assertEquals(100, c.putAll(pages));
+        ids.add("missing");
+        GetAllResult<String, Page> result = c.getAll(ids);
+        assertEquals(100, result.hits().size());
+        assertEquals(pages.get(42), result.hits().get("42"));
+        assertEquals(Collections.singleton("missing"), result.misses());
+
+        c.invalidateAll(ids.subList(0, 50));
+        result = c.getAll(ids);
+        assertEquals(50, result.hits().size());
+        assertFalse(result.hits().containsKey("0"));
+        assertTrue(result.hits().containsKey("50"));
+
+        c.invalidateAll();
+        assertTrue(c.getAll(ids).hits().isEmpty());
+        assertTrue(c.put(pages.get(0)));
+    }
+
+    // concurrent tests
+
+    @Test
+    public void testManyThreadsPutGet() throws InterruptedException {
+        StripedCache<Page> c = new StripedCache<>(10000, 100);
+        int threads = 8;
+        AtomicLong misses = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            int offset = i * 100;
+            new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    Page p = new Page("test" + j, Integer.toString(offset + j % 100));
+                    c.put(p);
+                    try {
+                        c.get(p.id());
+                    } catch (NoSuchCacheElementException e) {
+                        misses.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+
+        done.await();
+        assertEquals(0, misses.get());
+    }
+
+}
@@ -0,0 +1,69 @@
+package cpen221.mp3.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+    /* the span of a bucket in the finest level of the wheel */
+    private static final long FINEST = 1L << 20;
+
+    private static final class Timer extends TimerWheel.Node<Timer> {
+        private long expiredAt = -1;
+
+        private Timer(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    @Test
+    public void testLongTimeoutsExpireOnTime() {
+        long start = TimeUnit.SECONDS.toNanos(1000);
+        TimerWheel<Timer> wheel = new TimerWheel<>(start);
+        List<Timer> timers = new ArrayList<>();
+        for (long seconds : new long[] {1, 5, 70, 3600, 5 * 3600, 12 * 3600, 12 * 3600 + 17}) {
+            Timer timer = new Timer(start + TimeUnit.SECONDS.toNanos(seconds) + 12345);
+            timers.add(timer);
+            wheel.schedule(timer);
+        }
+
+        long step = TimeUnit.MILLISECONDS.toNanos(25);
+        long end = start + TimeUnit.HOURS.toNanos(13);
+        for (long now = start; now <= end; now += step) {
+            long time = now;
+            wheel.advance(now, timer -> timer.expiredAt = time);
+        }
+
+        for (Timer timer : timers) {
+            assertTrue(timer.expiredAt >= timer.deadline);
+            assertTrue("expired " + (timer.expiredAt - timer.deadline) + "ns late",
+                    timer.expiredAt < timer.deadline + FINEST + step);
+        }
+    }
+
+    @Test
+    public void testRescheduleAndDeschedule() {
+        TimerWheel<Timer> wheel = new TimerWheel<>(0);
+        Timer kept = new Timer(TimeUnit.MINUTES.toNanos(10));
+        Timer removed = new Timer(TimeUnit.MINUTES.toNanos(10));
+        wheel.schedule(kept);
+        wheel.schedule(removed);
+        wheel.deschedule(removed);
+
+        kept.deadline = TimeUnit.SECONDS.toNanos(2);
+        wheel.reschedule(kept);
+        wheel.advance(TimeUnit.SECONDS.toNanos(1), timer -> timer.expiredAt = 1);
+        assertEquals(-1, kept.expiredAt);
+
+        wheel.advance(TimeUnit.SECONDS.toNanos(2) + FINEST, timer -> timer.expiredAt = 2);
+        assertEquals(2, kept.expiredAt);
+        wheel.advance(TimeUnit.MINUTES.toNanos(20), timer -> timer.expiredAt = 3);
+        assertEquals(-1, removed.expiredAt);
+    }
+
+}
@@ -0,0 +1,105 @@
+package cpen221.mp3;
+
+import cpen221.mp3.graph.TitleDictionary;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TitleDictionaryTest {
+
+    @Test
+    public void testLookup() throws IOException {
+        Path file = Files.createTempFile("titles", ".dict");
+        List<String> titles = Arrays.asList("Ottawa", "Canada", "Canadian", "Canada (disambiguation)",
+                "Ôttawa", "Zürich", "東京", "Emoji 😀", "Canad", "", "😀", "Ａ");
+        TitleDictionary.write(file, titles);
+        TitleDictionary dictionary = TitleDictionary.open(file);
+
+        assertEquals(titles.size(), dictionary.size());
+        assertEquals(0, dictionary.id(""));
+        assertEquals("Canad", dictionary.title(1));
+        assertEquals("Canada", dictionary.title(2));
+        // sorted by UTF-8 bytes, where 😀 comes after Ａ although its first
+        // UTF-16 char comes before Ａ
+        assertEquals("Ａ", dictionary.title(titles.size() - 2));
+        assertEquals("😀", dictionary.title(titles.size() - 1));
+        for (String title : titles) {
+            assertEquals(title, dictionary.title(dictionary.id(title)));
+        }
+
+        assertEquals(-1, dictionary.id("Canada "));
+        assertEquals(-1, dictionary.id("A"));
+        assertEquals(-1, dictionary.id("￿"));
+
+        boolean exceptionThrown = false;
+        try {
+            dictionary.title(titles.size());
+        } catch (IndexOutOfBoundsException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+    }
+
+    @Test
+    public void testManyTitles() throws IOException {
+        Random random = new Random(221);
+        Set<String> set = new HashSet<>();
+        while (set.size() < 10000) {
+            StringBuilder title = new StringBuilder("List of ");
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                title.append((char) ('a' + random.nextInt(4)));
+            }
+            set.add(title.toString());
+        }
+        List<String> titles = new ArrayList<>(set);
+        Collections.sort(titles);
+
+        Path file = Files.createTempFile("titles", ".dict");
+        TitleDictionary.write(file, set);
+        TitleDictionary dictionary = TitleDictionary.open(file);
+
+        // ASCII titles sort the same by UTF-8 bytes and by String
+        assertEquals(titles.size(), dictionary.size());
+        for (int i = 0; i < titles.size(); i++) {
+            assertEquals(titles.get(i), dictionary.title(i));
+            assertEquals(i, dictionary.id(titles.get(i)));
+        }
+        assertEquals(-1, dictionary.id("List of e"));
+        assertTrue(Files.size(file) < titles.size() * 8L);
+    }
+
+    @Test
+    public void testInvalid() throws IOException {
+        Path file = Files.createTempFile("titles", ".dict");
+        boolean exceptionThrown = false;
+        try {
+            TitleDictionary.write(file, Arrays.asList("Canada", "Ottawa", "Canada"));
+        } catch (IllegalArgumentException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        Files.write(file, "not a dictionary, but long enough".getBytes(StandardCharsets.UTF_8));
+        exceptionThrown = false;
+        try {
+            TitleDictionary.open(file);
+        } catch (IOException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+    }
+
+}
@@ -81,4 +81,40 @@ public class WikiMediatorServerTest {
             ioe.printStackTrace();
         }
     }
+
+    @Test
+    public void testSharedWikiMediator() throws Exception {
+        WikiMediator wm = new WikiMediator();
+        WikiMediatorServer wms = new WikiMediatorServer(PORT_NUMBER + 1, 2, wm);
+        Thread server = new Thread(() -> {
+            try {
+                wms.serve();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        // two clients on separate connections request the same page; the
+        // second is served from the cache filled by the first
+        Request request = new Request("1", "getPage", null, null, 0, "Canada", 0, null, null);
+        String json = new Gson().toJson(new Request[] {request});
+        for (int i = 0; i < 2; i++) {
+            try (Socket socket = new Socket("localhost", PORT_NUMBER + 1)) {
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
+                out.print(json);
+                out.flush();
+                socket.shutdownOutput();
+
+                // the server closes the connection once it has handled the requests
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                while (in.readLine() != null) { }
+            }
+        }
+
+        Assert.assertEquals(1, wm.cacheStats().missCount());
+        Assert.assertEquals(1, wm.cacheStats().hitCount());
+        Assert.assertEquals(1, wm.zeitgeist(1).size());
+    }
 }
@@ -8,6 +8,7 @@ import fastily.jwiki.core.NS;
 import fastily.jwiki.core.Wiki;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -22,6 +23,19 @@ public class WikiMediatorTest {
         assertFalse(wm.getPage("The Dark Knight (film)").isEmpty());
     }
 
+    @Test
+    public void testMissingPage() {
+        WikiMediator wm = new WikiMediator();
+        String title = "Xq This Page Does Not Exist 8c1f";
+
+        assertEquals("", wm.getPage(title));
+        // answered from the negative cache
+        assertEquals("", wm.getPage(title));
+        assertTrue(wm.getPath("Carrot", title).isEmpty());
+        assertTrue(wm.simpleSearch("xqzzqx8c1fqqzx", 5).isEmpty());
+        assertTrue(wm.simpleSearch("xqzzqx8c1fqqzx", 5).isEmpty());
+    }
+
     @Test
     public void testPage() {
         Page p1 = new Page("Canada", "Canada");
@@ -35,6 +49,65 @@ public class WikiMediatorTest {
         assertFalse(b2);
     }
 
+    @Test
+    public void testPageWeight() {
+        Page small = new Page("abc", "1");
+        Page large = new Page(new String(new char[100000]), "2", Integer.MAX_VALUE);
+        Page wide = new Page("東".repeat(100000), "3", Integer.MAX_VALUE);
+
+        // Latin-1 text takes one byte per character in a compact string
+        assertTrue(small.weight() > 0);
+        assertTrue(large.weight() >= 100000 && large.weight() < 200000);
+        assertTrue(wide.weight() >= 200000);
+    }
+
+    @Test
+    public void testPageCompression() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("{{Infobox}} '''Café''' [[Link ").append(i % 50).append("]]\n");
+        }
+        String text = sb.toString();
+
+        Page compressed = new Page(text, "1");
+        Page uncompressed = new Page(text, "1", Integer.MAX_VALUE);
+        Page small = new Page("abc", "2");
+
+        assertTrue(compressed.isCompressed());
+        assertFalse(uncompressed.isCompressed());
+        assertFalse(small.isCompressed());
+        assertEquals(text, compressed.getPageText());
+        assertEquals(uncompressed, compressed);
+        assertEquals(compressed, new Page(text, "1"));
+        assertTrue(compressed.weight() * 4 < uncompressed.weight());
+    }
+
+    @Test
+    public void testTruncatedPageText() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("[[Link ").append(i).append("]]\n");
+        }
+        byte[] bytes = Page.CODEC.encode(new Page(sb.toString(), "1"));
+
+        // keep the first half of the compressed text, as a torn write would
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(4 + buffer.getInt(0) + 4);
+        int textLength = buffer.getInt();
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - textLength / 2);
+        ByteBuffer.wrap(truncated).putInt(buffer.position() - 4, textLength - textLength / 2);
+
+        Page page = Page.CODEC.decode(truncated);
+        assertTrue(page.isCompressed());
+        boolean exceptionThrown = false;
+        try {
+            page.getPageText();
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+    }
+
     @Test
     public void testSimpleSearch() {
         WikiMediator wm = new WikiMediator();